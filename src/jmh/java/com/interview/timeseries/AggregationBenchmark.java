@@ -0,0 +1,81 @@
+package com.interview.timeseries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation kernel throughput in values per second on one core, over a column of 1M doubles read in
+ * runs of a chunk's length, as aggregations feed them. {@code sequentialSum} is the single running
+ * total the kernels replace. The vector kernels need the {@code -Pvector} build, which also passes
+ * {@code --add-modules jdk.incubator.vector} to the forked JVMs; without it their runs fail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+
+    private static final int VALUES = 1 << 20;
+    private static final int RUN = Chunk.CAPACITY;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    private AggregationKernels impl;
+    private double[] values;
+
+    @Setup
+    public void generate() {
+        impl = kernels.equals("vector") ? AggregationKernels.vectorKernels() : new AggregationKernels();
+        Random random = new Random(42);
+        values = new double[VALUES];
+        for (int i = 0; i < VALUES; i++) values[i] = random.nextDouble() * 100;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double sum() {
+        double sum = 0;
+        for (int i = 0; i < VALUES; i += RUN) sum += impl.sum(values, i, i + RUN);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double min() {
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i < VALUES; i += RUN) min = Math.min(min, impl.min(values, i, i + RUN));
+        return min;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double max() {
+        double max = -Double.MAX_VALUE;
+        for (int i = 0; i < VALUES; i += RUN) max = Math.max(max, impl.max(values, i, i + RUN));
+        return max;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double sequentialSum() {
+        double sum = 0;
+        for (int i = 0; i < VALUES; i++) sum += values[i];
+        return sum;
+    }
+}
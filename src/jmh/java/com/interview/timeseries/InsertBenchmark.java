@@ -0,0 +1,113 @@
+package com.interview.timeseries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput in samples per second, single and batched, into a fresh store per iteration.
+ * Samples replay the sample-data workload in time order, shifted forward on every pass, so each
+ * insert appends a new sample rather than hitting the duplicate check. Building the DataPoints is
+ * part of the measured work, as it is for a client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class InsertBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"true", "false"})
+    public boolean wal;
+
+    @Param({"1", "4"})
+    public int shards;
+
+    private Workload workload;
+    private Path directory;
+    private TimeSeriesStoreImpl store;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        workload = Workload.generate(1_000_000);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws Exception {
+        directory = Workload.newDirectory("insert-bench");
+        store = Workload.open(new StoreConfig()
+                .setDataDirectory(directory)
+                .setWalEnabled(wal)
+                .setShardCount(shards));
+        next = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws Exception {
+        store.shutdown();
+        Workload.delete(directory);
+    }
+
+    @Benchmark
+    public boolean insert() {
+        return store.insert(workload.point(next++));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean insertBatch() {
+        List<DataPoint> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) batch.add(workload.point(next++));
+        return store.insertBatch(batch);
+    }
+
+    /**
+     * Single inserts through the ingestion queue, waiting for every batch of them to be applied.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insertAsync() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++) futures[i] = store.insertAsync(workload.point(next++));
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * Batches of one series given as columns, the primitive variant of insertBatch.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean insertSeriesBatch() {
+        long[] timestamps = new long[BATCH];
+        double[] values = new double[BATCH];
+        long first = workload.startTime() + next / BATCH * BATCH * Workload.INTERVAL_MS;
+        for (int i = 0; i < BATCH; i++) {
+            timestamps[i] = first + i * Workload.INTERVAL_MS;
+            values[i] = workload.values[(int) ((next + i) % workload.size())];
+        }
+        int series = (int) (next / BATCH % Workload.HOSTS);
+        next += BATCH;
+        return store.insertBatch("cpu.usage", workload.tags.get(series * 10), timestamps, values);
+    }
+}
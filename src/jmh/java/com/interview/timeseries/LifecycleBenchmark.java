@@ -0,0 +1,124 @@
+package com.interview.timeseries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the store's maintenance operations, each measured once per invocation on a store holding
+ * the sample-data workload: a cleanup that expires three quarters of the data, and a restart that
+ * recovers the persisted data.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class LifecycleBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"500000"})
+        public int points;
+
+        Workload workload;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            workload = Workload.generate(points);
+        }
+    }
+
+    /**
+     * A store whose retention covers only the last quarter of the workload, refilled before every cleanup.
+     */
+    @State(Scope.Thread)
+    public static class Expiring {
+        private Path directory;
+        private TimeSeriesStoreImpl store;
+
+        @Setup(Level.Invocation)
+        public void fill(Data data) throws Exception {
+            Workload workload = data.workload;
+            long blockMs = Math.max(Workload.HOUR / 4, workload.spanMs / 16);
+            directory = Workload.newDirectory("cleanup-bench");
+            store = Workload.open(new StoreConfig()
+                    .setDataDirectory(directory)
+                    .setWalEnabled(false)
+                    .setBlockDurationMs(blockMs)
+                    .setRetentionMs(workload.spanMs / 4));
+            for (int i = 0; i < workload.size(); i++) store.insert(workload.point(i));
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws Exception {
+            store.shutdown();
+            Workload.delete(directory);
+        }
+    }
+
+    /**
+     * A store persisted by a clean shutdown, reopened by every restart.
+     */
+    @State(Scope.Thread)
+    public static class Persisted {
+        @Param({"false", "true"})
+        public boolean lazyRecovery;
+
+        private Path directory;
+        private StoreConfig config;
+        private TimeSeriesStoreImpl reopened;
+
+        @Setup(Level.Trial)
+        public void persist(Data data) throws Exception {
+            directory = Workload.newDirectory("restart-bench");
+            config = new StoreConfig().setDataDirectory(directory).setLazyRecovery(lazyRecovery);
+            TimeSeriesStoreImpl store = Workload.open(config);
+            for (int i = 0; i < data.workload.size(); i++) store.insert(data.workload.point(i));
+            store.shutdown();
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() {
+            // Wait for a lazy recovery to finish so the next restart starts from the same files
+            reopened.awaitRecovery();
+            reopened.shutdown();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws Exception {
+            Workload.delete(directory);
+        }
+    }
+
+    /**
+     * Drops the expired blocks and checkpoints the rest, as the periodic cleanup does.
+     */
+    @Benchmark
+    public long cleanup(Expiring expiring) {
+        expiring.store.runCleanupNow();
+        return expiring.store.pointCount();
+    }
+
+    /**
+     * Opens the persisted store until it accepts queries: all data loaded, or with lazy recovery, the newest block.
+     */
+    @Benchmark
+    public TimeSeriesStoreImpl restart(Persisted persisted) {
+        persisted.reopened = Workload.open(persisted.config);
+        return persisted.reopened;
+    }
+}
@@ -0,0 +1,96 @@
+package com.interview.timeseries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Line-protocol parsing throughput in lines per second, through a 32 KB buffer as a connection reads
+ * them, into a store that discards the samples. Run with {@code -prof gc} to see the allocation per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class LineProtocolBenchmark {
+
+    private static final int LINES = 10_000;
+
+    private byte[] input;
+    private ByteBuffer buffer;
+    private LineProtocolParser parser;
+    private TimeSeriesStore discard;
+
+    @Setup
+    public void generate() {
+        Workload workload = Workload.generate(LINES);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            lines.append(workload.metrics[i]);
+            workload.tags.get(i).forEach((k, v) -> lines.append(',').append(k).append('=').append(v));
+            lines.append(' ').append(workload.values[i]).append(' ').append(workload.timestamps[i]).append('\n');
+        }
+        input = lines.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocate(32 * 1024);
+        parser = new LineProtocolParser(new LongAdder(), new LongAdder());
+        discard = new TimeSeriesStore() {
+            @Override
+            public boolean insert(DataPoint datapoint) {
+                return true;
+            }
+
+            @Override
+            public boolean insertBatch(String metric, Map<String, String> tags, long[] timestamps, double[] values) {
+                return true;
+            }
+
+            @Override
+            public List<DataPoint> query(String metric, long startTime, long endTime, Map<String, String> tagFilters) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean initialize() {
+                return true;
+            }
+
+            @Override
+            public boolean shutdown() {
+                return true;
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long parse() {
+        for (int offset = 0; offset < input.length; ) {
+            int n = Math.min(buffer.remaining(), input.length - offset);
+            buffer.put(input, offset, n);
+            offset += n;
+            buffer.flip();
+            parser.parse(buffer, 0);
+            buffer.compact();
+            parser.flush(discard);
+        }
+        return parser.lines();
+    }
+}
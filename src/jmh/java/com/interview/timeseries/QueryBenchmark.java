@@ -0,0 +1,99 @@
+package com.interview.timeseries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency over a store loaded with the sample-data workload (350 series, 12 hours at 15 second
+ * intervals by default). The filter parameter sets the tag-filter selectivity: one host matches 1 of
+ * 35 series per metric, a service about 1 in 8, a datacenter about 1 in 5, none all of them. The window
+ * parameter contrasts a selective last-hour query with a wide query over all the data. The cacheBytes
+ * parameter enables the query result cache, as a dashboard repeating the same query would hit it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class QueryBenchmark {
+
+    @Param({"1000000"})
+    public int points;
+
+    @Param({"host", "service", "datacenter", "none"})
+    public String filter;
+
+    @Param({"3600000", "0"})
+    public long windowMs;
+
+    @Param({"0", "268435456"})
+    public long cacheBytes;
+
+    private Path directory;
+    private TimeSeriesStoreImpl store;
+    private Map<String, String> filters;
+    private long start;
+    private long end;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        Workload workload = Workload.generate(points);
+        directory = Workload.newDirectory("query-bench");
+        store = Workload.open(new StoreConfig().setDataDirectory(directory).setWalEnabled(false)
+                .setQueryCacheBytes(cacheBytes));
+        for (int i = 0; i < workload.size(); i++) store.insert(workload.point(i));
+
+        Map<String, String> tags = workload.tags.get(0);
+        filters = "none".equals(filter) ? Collections.emptyMap() : Map.of(filter, tags.get(filter));
+        end = workload.endTime();
+        start = windowMs == 0 ? workload.startTime() : end - windowMs;
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        store.shutdown();
+        Workload.delete(directory);
+    }
+
+    @Benchmark
+    public List<DataPoint> query() {
+        return store.query("cpu.usage", start, end, filters);
+    }
+
+    /**
+     * Streams the same result without materializing it.
+     */
+    @Benchmark
+    public void queryCursor(Blackhole blackhole) {
+        try (QueryCursor cursor = store.queryCursor("cpu.usage", start, end, filters)) {
+            while (cursor.hasNext()) blackhole.consume(cursor.next());
+        }
+    }
+
+    /**
+     * Averages the matching series into one-minute buckets.
+     */
+    @Benchmark
+    public List<AggregateSeries> aggregate() {
+        return store.aggregate("cpu.usage", start, end, filters, 60_000, Aggregator.AVG, Collections.emptyList());
+    }
+}
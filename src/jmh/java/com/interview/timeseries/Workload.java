@@ -0,0 +1,93 @@
+package com.interview.timeseries;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Columnar copy of the {@link SampleData} workload, shaped like generate_sample_data.py output,
+ * plus helpers to open and remove the throwaway stores benchmarks run against.
+ */
+final class Workload {
+
+    static final long HOUR = 60L * 60 * 1000;
+    static final long INTERVAL_MS = 15_000;
+    static final int HOSTS = 35;
+
+    final long[] timestamps;
+    final String[] metrics;
+    final double[] values;
+    final List<Map<String, String>> tags;
+
+    // Time covered by the workload; a replay shifted by it continues where the last one ended
+    final long spanMs;
+
+    private Workload(List<DataPoint> points) {
+        int n = points.size();
+        timestamps = new long[n];
+        metrics = new String[n];
+        values = new double[n];
+        tags = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            DataPoint dp = points.get(i);
+            timestamps[i] = dp.getTimestamp();
+            metrics[i] = dp.getMetric();
+            values[i] = dp.getValue();
+            tags.add(dp.getTags());
+        }
+        spanMs = timestamps[n - 1] - timestamps[0] + INTERVAL_MS;
+    }
+
+    /**
+     * Generates {@code points} samples of {@link #HOSTS} hosts at a 15 second interval, ending now.
+     */
+    static Workload generate(int points) {
+        long span = (long) points / (HOSTS * 10) * INTERVAL_MS;
+        return new Workload(SampleData.synthesize(points, HOSTS, System.currentTimeMillis() - span, INTERVAL_MS));
+    }
+
+    int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return The i-th sample of the workload replayed endlessly, each pass shifted past the previous one.
+     */
+    DataPoint point(long i) {
+        int k = (int) (i % timestamps.length);
+        long shift = i / timestamps.length * spanMs;
+        return new DataPoint(timestamps[k] + shift, metrics[k], values[k], tags.get(k));
+    }
+
+    long startTime() {
+        return timestamps[0];
+    }
+
+    long endTime() {
+        return timestamps[timestamps.length - 1] + 1;
+    }
+
+    static TimeSeriesStoreImpl open(StoreConfig config) {
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        if (!store.initialize()) throw new IllegalStateException("Store failed to initialize");
+        return store;
+    }
+
+    static Path newDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix);
+    }
+
+    static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Result of an aggregation query for one group: the aggregated value of every non-empty time bucket,
+ * in time order. Buckets are aligned to multiples of the bucket width since the epoch.
+ */
+public class AggregateSeries {
+    private final String metric;
+    private final Map<String, String> groupTags;
+    private final long[] bucketStarts;
+    private final double[] values;
+
+    AggregateSeries(String metric, Map<String, String> groupTags, long[] bucketStarts, double[] values) {
+        this.metric = metric;
+        this.groupTags = groupTags;
+        this.bucketStarts = bucketStarts;
+        this.values = values;
+    }
+
+    /**
+     * @return The metric name.
+     */
+    public String getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return The values of the group-by tags shared by this group; empty without group-by.
+     *         A series lacking a group-by tag is grouped under an empty value.
+     */
+    public Map<String, String> getGroupTags() {
+        return groupTags;
+    }
+
+    /**
+     * @return The number of non-empty buckets.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return The start time of the i-th bucket, in milliseconds since the epoch.
+     */
+    public long getTimestamp(int i) {
+        return bucketStarts[i];
+    }
+
+    /**
+     * @return The aggregated value of the i-th bucket.
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateSeries{" +
+                "metric='" + metric + '\'' +
+                ", groupTags=" + groupTags +
+                ", bucketStarts=" + Arrays.toString(bucketStarts) +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+package com.interview.timeseries;
+
+/**
+ * Reductions over a run of a primitive value column, and binary searches over a sorted timestamp
+ * column, for aggregations fed whole chunks at a time.
+ *
+ * The scalar kernels keep four independent accumulators, so consecutive additions and comparisons do
+ * not wait on each other; the JIT does not vectorize floating-point reductions itself, since that
+ * reorders them. Sums therefore add in a different order than one running total would, and may differ
+ * from it in the last bits. With the optional Vector API build on the classpath (see build.gradle) and
+ * {@code -Dtimeseries.vectorKernels=true}, {@code VectorAggregationKernels} replaces them.
+ */
+class AggregationKernels {
+
+    // System property selecting the Vector API kernels
+    static final String VECTOR_PROPERTY = "timeseries.vectorKernels";
+
+    private static final String VECTOR_CLASS = "com.interview.timeseries.VectorAggregationKernels";
+
+    private static final AggregationKernels INSTANCE = load(Boolean.getBoolean(VECTOR_PROPERTY));
+
+    /**
+     * @return The kernels selected at startup.
+     */
+    static AggregationKernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The Vector API kernels if asked for and available, the scalar ones otherwise.
+     */
+    static AggregationKernels load(boolean vector) {
+        if (vector) {
+            try {
+                return vectorKernels();
+            } catch (IllegalStateException e) {
+                System.err.println(e.getMessage() + "; using the scalar aggregation kernels");
+            }
+        }
+        return new AggregationKernels();
+    }
+
+    /**
+     * @throws IllegalStateException if the Vector API kernels are not built in or the JVM lacks the
+     *         jdk.incubator.vector module.
+     */
+    static AggregationKernels vectorKernels() {
+        try {
+            return (AggregationKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Vector API kernels unavailable: " + e, e);
+        }
+    }
+
+    /**
+     * @return The sum of the values in [from, to).
+     */
+    double sum(double[] values, int from, int to) {
+        double s0 = 0;
+        double s1 = 0;
+        double s2 = 0;
+        double s3 = 0;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < to; i++) s0 += values[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @return The smallest of the values in [from, to), which must not be empty. As with a running
+     *         comparison, NaN is only returned if the first value is NaN.
+     */
+    double min(double[] values, int from, int to) {
+        double m0 = values[from];
+        double m1 = m0;
+        double m2 = m0;
+        double m3 = m0;
+        int i = from + 1;
+        for (; i + 3 < to; i += 4) {
+            m0 = values[i] < m0 ? values[i] : m0;
+            m1 = values[i + 1] < m1 ? values[i + 1] : m1;
+            m2 = values[i + 2] < m2 ? values[i + 2] : m2;
+            m3 = values[i + 3] < m3 ? values[i + 3] : m3;
+        }
+        for (; i < to; i++) m0 = values[i] < m0 ? values[i] : m0;
+        m0 = m1 < m0 ? m1 : m0;
+        m2 = m3 < m2 ? m3 : m2;
+        return m2 < m0 ? m2 : m0;
+    }
+
+    /**
+     * @return The largest of the values in [from, to), which must not be empty. As with a running
+     *         comparison, NaN is only returned if the first value is NaN.
+     */
+    double max(double[] values, int from, int to) {
+        double m0 = values[from];
+        double m1 = m0;
+        double m2 = m0;
+        double m3 = m0;
+        int i = from + 1;
+        for (; i + 3 < to; i += 4) {
+            m0 = values[i] > m0 ? values[i] : m0;
+            m1 = values[i + 1] > m1 ? values[i + 1] : m1;
+            m2 = values[i + 2] > m2 ? values[i + 2] : m2;
+            m3 = values[i + 3] > m3 ? values[i + 3] : m3;
+        }
+        for (; i < to; i++) m0 = values[i] > m0 ? values[i] : m0;
+        m0 = m1 > m0 ? m1 : m0;
+        m2 = m3 > m2 ? m3 : m2;
+        return m2 > m0 ? m2 : m0;
+    }
+
+    /**
+     * @return The index of the first timestamp in [from, to) not below the given one, or to if none is.
+     */
+    static int lowerBound(long[] timestamps, int from, int to, long timestamp) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the same index as {@link #lowerBound} by galloping from the start of the range first, so
+     * a short run costs a few comparisons rather than a search of the whole range.
+     */
+    static int runEnd(long[] timestamps, int from, int to, long timestamp) {
+        int step = 1;
+        int lo = from;
+        while (lo + step < to && timestamps[lo + step] < timestamp) {
+            lo += step;
+            step <<= 1;
+        }
+        return lowerBound(timestamps, lo, Math.min(to, lo + step), timestamp);
+    }
+}
@@ -0,0 +1,41 @@
+package com.interview.timeseries;
+
+/**
+ * Function applied to the samples of each time bucket by {@link TimeSeriesStore#aggregate}.
+ * Percentiles are exact and use the nearest-rank method.
+ */
+public enum Aggregator {
+    SUM,
+    AVG,
+    MIN,
+    MAX,
+    COUNT,
+    P50(0.50),
+    P90(0.90),
+    P95(0.95),
+    P99(0.99);
+
+    private final double quantile;
+
+    Aggregator() {
+        this(Double.NaN);
+    }
+
+    Aggregator(double quantile) {
+        this.quantile = quantile;
+    }
+
+    /**
+     * @return true if this aggregator needs every sample value of a bucket, not just running totals.
+     */
+    public boolean isPercentile() {
+        return !Double.isNaN(quantile);
+    }
+
+    /**
+     * @return The quantile in (0, 1] computed by a percentile aggregator, or NaN for the others.
+     */
+    public double getQuantile() {
+        return quantile;
+    }
+}
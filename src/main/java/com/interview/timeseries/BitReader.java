@@ -0,0 +1,43 @@
+package com.interview.timeseries;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MSB-first bit source over a region of a ByteBuffer. Uses absolute reads only,
+ * so many readers can share the same (heap, direct or mapped) buffer.
+ */
+final class BitReader {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private long bitPosition;
+
+    BitReader(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    boolean readBit() {
+        int b = buffer.get(offset + (int) (bitPosition >>> 3));
+        int shift = 7 - (int) (bitPosition & 7);
+        bitPosition++;
+        return ((b >>> shift) & 1) != 0;
+    }
+
+    /**
+     * Reads {@code n} bits (at most 64) as an unsigned value.
+     */
+    long readBits(int n) {
+        long result = 0;
+        while (n > 0) {
+            int bitOffset = (int) (bitPosition & 7);
+            int available = 8 - bitOffset;
+            int take = Math.min(available, n);
+            int b = buffer.get(offset + (int) (bitPosition >>> 3)) & 0xFF;
+            result = (result << take) | ((b >>> (available - take)) & ((1 << take) - 1));
+            bitPosition += take;
+            n -= take;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Growable, MSB-first bit sink used by the chunk encoder.
+ */
+final class BitWriter {
+
+    private byte[] buffer;
+    private int byteCount;
+
+    // Pending bits not yet written to the buffer; only the lowest pendingBits bits are meaningful
+    private long pending;
+    private int pendingBits;
+
+    BitWriter(int initialBytes) {
+        buffer = new byte[Math.max(16, initialBytes)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the lowest {@code n} bits of the value, most significant first.
+     */
+    void writeBits(long value, int n) {
+        if (n > 32) {
+            writeBits(value >>> 32, n - 32);
+            writeBits(value, 32);
+            return;
+        }
+        pending = (pending << n) | (value & ((1L << n) - 1));
+        pendingBits += n;
+        while (pendingBits >= 8) {
+            pendingBits -= 8;
+            put((byte) (pending >>> pendingBits));
+        }
+    }
+
+    /**
+     * @return The bits written so far, padded with zero bits to a whole byte.
+     */
+    byte[] toByteArray() {
+        byte[] out = Arrays.copyOf(buffer, byteCount + (pendingBits > 0 ? 1 : 0));
+        if (pendingBits > 0) out[byteCount] = (byte) (pending << (8 - pendingBits));
+        return out;
+    }
+
+    private void put(byte b) {
+        if (byteCount == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        buffer[byteCount++] = b;
+    }
+}
@@ -0,0 +1,156 @@
+package com.interview.timeseries;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The samples of a set of series within one fixed-duration time block, each held as a {@link Series}.
+ * Blocks are created on the first sample that falls into them and dropped as a whole once expired.
+ *
+ * With off-heap chunks, the sealed chunks of a block live in its {@link ChunkArena}, which is freed when
+ * the block is dropped. Readers and writers then {@link #acquire()} the block first, so the arena is only
+ * freed once the last of them {@link #release() released} it.
+ */
+final class Block {
+
+    private final long startTime;
+    private final long endTime;
+    private final long[] rollupWidthsMs;
+
+    // Off-heap memory of the sealed chunks; null when they are kept on the heap
+    private final ChunkArena arena;
+
+    // One for the partition holding the block until it is dropped, plus one per current reader or writer
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    // Stores series ID -> the series' samples within this block
+    private final ConcurrentMap<Integer, Series> series = new ConcurrentHashMap<>();
+
+    Block(long startTime, long endTime, long[] rollupWidthsMs, boolean offHeap) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.rollupWidthsMs = rollupWidthsMs;
+        this.arena = offHeap ? new ChunkArena() : null;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Takes a reference to the block's chunk memory. Always succeeds for heap blocks.
+     *
+     * @return false if the block was dropped and its memory freed.
+     */
+    boolean acquire() {
+        if (arena == null) return true;
+        int current;
+        do {
+            current = references.get();
+            if (current == 0) return false;
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Drops a reference taken by {@link #acquire()}, or the partition's own once the block is dropped.
+     * The last one frees the arena.
+     */
+    void release() {
+        if (arena != null && references.decrementAndGet() == 0) arena.free();
+    }
+
+    /**
+     * Wraps a cursor over this block's chunks, acquired by the caller, so the reference is released once
+     * the cursor is exhausted or closed. Heap blocks need no reference, so their cursors are returned as is.
+     */
+    ChunkIterator guard(ChunkIterator samples) {
+        return arena == null ? samples : new GuardedIterator(samples);
+    }
+
+    /**
+     * Returns the samples of the series within this block, creating an empty holder if needed.
+     */
+    Series seriesFor(SeriesRef ref) {
+        Series s = series.get(ref.getId());
+        if (s != null) return s;
+        return series.computeIfAbsent(ref.getId(), id -> new Series(id, ref.getKey(), rollupWidthsMs, arena));
+    }
+
+    /**
+     * @return The samples of the series with the given ID within this block, or null if it has none.
+     */
+    Series get(int seriesId) {
+        return series.get(seriesId);
+    }
+
+    Collection<Series> series() {
+        return series.values();
+    }
+
+    /**
+     * @return The number of samples held by this block.
+     */
+    long pointCount() {
+        long count = 0;
+        for (Series s : series.values()) count += s.pointCount();
+        return count;
+    }
+
+    /**
+     * @return The estimated bytes of sample data held by this block: sealed chunks at their encoded size,
+     *         samples not sealed yet at 16 bytes each.
+     */
+    long dataBytes() {
+        long bytes = 0;
+        for (Series s : series.values()) bytes += s.sealedBytes() + 16 * (s.pointCount() - s.sealedPointCount());
+        return bytes;
+    }
+
+    /**
+     * @return The bytes of direct memory held by this block's chunks.
+     */
+    long offHeapBytes() {
+        return arena == null ? 0 : arena.allocatedBytes();
+    }
+
+    private final class GuardedIterator implements ChunkIterator {
+        private final ChunkIterator samples;
+        private boolean released;
+
+        GuardedIterator(ChunkIterator samples) {
+            this.samples = samples;
+        }
+
+        @Override
+        public boolean next() {
+            if (released) return false;
+            if (samples.next()) return true;
+            close();
+            return false;
+        }
+
+        @Override
+        public long timestamp() {
+            return samples.timestamp();
+        }
+
+        @Override
+        public double value() {
+            return samples.value();
+        }
+
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+            release();
+        }
+    }
+}
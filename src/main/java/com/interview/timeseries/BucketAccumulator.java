@@ -0,0 +1,216 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Running per-bucket state of an aggregation over [startTime, endTime) for one group.
+ * Keeps count, sum, min and max per bucket in flat arrays. Fed raw samples, percentile aggregators also
+ * keep the sample values of each bucket; fed rollup buckets, they merge the buckets' quantile sketches.
+ * A bucket fed both, such as the one a retention-clamped start falls into, adds its raw samples to its
+ * sketch, so its percentile covers all of them. Not thread-safe.
+ */
+final class BucketAccumulator implements SampleConsumer {
+
+    // Upper bound on buckets per query, so a tiny bucket width cannot allocate unbounded arrays
+    static final int MAX_BUCKETS = 1_000_000;
+
+    private static final AggregationKernels KERNELS = AggregationKernels.get();
+
+    // Samples of a bucket below which a run is added sample by sample rather than with the kernels
+    private static final int SHORT_RUN = 16;
+
+    private final long bucketWidthMs;
+    private final long firstBucket;
+    private final long[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxs;
+
+    // Sample values per bucket, only kept for percentile aggregators fed raw samples, until the bucket has a sketch
+    private final double[][] samples;
+
+    // Merged rollup sketches per bucket, plus the raw samples of the bucket, for percentile aggregators fed rollups
+    private final QuantileSketch[] sketches;
+
+    BucketAccumulator(long startTime, long endTime, long bucketWidthMs, boolean percentiles) {
+        this.bucketWidthMs = bucketWidthMs;
+        this.firstBucket = Math.floorDiv(startTime, bucketWidthMs);
+        int buckets = bucketCount(startTime, endTime, bucketWidthMs);
+        this.counts = new long[buckets];
+        this.sums = new double[buckets];
+        this.mins = new double[buckets];
+        this.maxs = new double[buckets];
+        this.samples = percentiles ? new double[buckets][] : null;
+        this.sketches = percentiles ? new QuantileSketch[buckets] : null;
+    }
+
+    /**
+     * Returns the number of epoch-aligned buckets overlapping [startTime, endTime).
+     *
+     * @throws IllegalArgumentException if the width is not positive or the range needs too many buckets.
+     */
+    static int bucketCount(long startTime, long endTime, long bucketWidthMs) {
+        if (bucketWidthMs <= 0) throw new IllegalArgumentException("Bucket width must be positive: " + bucketWidthMs);
+        long buckets = Math.floorDiv(endTime - 1, bucketWidthMs) - Math.floorDiv(startTime, bucketWidthMs) + 1;
+        if (buckets > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Query spans " + buckets + " buckets, more than " + MAX_BUCKETS);
+        }
+        return (int) buckets;
+    }
+
+    @Override
+    public void accept(long timestamp, double value) {
+        add((int) (Math.floorDiv(timestamp, bucketWidthMs) - firstBucket), value);
+    }
+
+    private void add(int i, double value) {
+        long n = counts[i]++;
+        if (n == 0) {
+            sums[i] = value;
+            mins[i] = value;
+            maxs[i] = value;
+        } else {
+            sums[i] += value;
+            if (value < mins[i]) mins[i] = value;
+            if (value > maxs[i]) maxs[i] = value;
+        }
+        if (samples != null) {
+            if (sketches[i] != null) {
+                sketches[i].add(value);
+                return;
+            }
+            double[] values = samples[i];
+            if (values == null) {
+                values = samples[i] = new double[8];
+            } else if (n == values.length) {
+                values = samples[i] = Arrays.copyOf(values, values.length * 2);
+            }
+            values[(int) n] = value;
+        }
+    }
+
+    /**
+     * Splits the run at bucket boundaries, found by searching the timestamps, and reduces each bucket's
+     * share of the values with the aggregation kernels. Buckets getting only a few samples of the run
+     * take them one by one instead, as the kernels would not pay for their setup.
+     */
+    @Override
+    public void acceptAll(long[] timestamps, double[] values, int from, int to) {
+        while (from < to) {
+            long bucket = Math.floorDiv(timestamps[from], bucketWidthMs);
+            long next = (bucket + 1) * bucketWidthMs;
+            int i = (int) (bucket - firstBucket);
+            if (to - from > SHORT_RUN && timestamps[from + SHORT_RUN] < next) {
+                int end = AggregationKernels.runEnd(timestamps, from + SHORT_RUN, to, next);
+                addRun(i, values, from, end);
+                from = end;
+            } else {
+                for (; from < to && timestamps[from] < next; from++) add(i, values[from]);
+            }
+        }
+    }
+
+    private void addRun(int i, double[] values, int from, int to) {
+        double sum = KERNELS.sum(values, from, to);
+        double min = KERNELS.min(values, from, to);
+        double max = KERNELS.max(values, from, to);
+        long n = counts[i];
+        if (n == 0) {
+            sums[i] = sum;
+            mins[i] = min;
+            maxs[i] = max;
+        } else {
+            sums[i] += sum;
+            if (min < mins[i]) mins[i] = min;
+            if (max > maxs[i]) maxs[i] = max;
+        }
+        counts[i] = n + to - from;
+        if (samples != null && sketches[i] != null) {
+            for (int j = from; j < to; j++) sketches[i].add(values[j]);
+        } else if (samples != null) {
+            double[] kept = samples[i];
+            int needed = (int) n + to - from;
+            if (kept == null) {
+                kept = samples[i] = new double[Math.max(8, needed)];
+            } else if (needed > kept.length) {
+                kept = samples[i] = Arrays.copyOf(kept, Math.max(needed, kept.length * 2));
+            }
+            System.arraycopy(values, from, kept, (int) n, to - from);
+        }
+    }
+
+    /**
+     * Adds a pre-aggregated rollup bucket, which must lie within a single bucket of this accumulator.
+     */
+    void merge(long bucketStart, long count, double sum, double min, double max, QuantileSketch sketch) {
+        if (count == 0) return;
+        int i = (int) (Math.floorDiv(bucketStart, bucketWidthMs) - firstBucket);
+        long n = counts[i];
+        if (n == 0) {
+            sums[i] = sum;
+            mins[i] = min;
+            maxs[i] = max;
+        } else {
+            sums[i] += sum;
+            if (min < mins[i]) mins[i] = min;
+            if (max > maxs[i]) maxs[i] = max;
+        }
+        counts[i] = n + count;
+        if (sketches != null) {
+            if (sketches[i] == null) {
+                sketches[i] = new QuantileSketch();
+                // Raw samples already in the bucket move into its sketch
+                if (samples[i] != null) {
+                    for (int j = 0; j < n; j++) sketches[i].add(samples[i][j]);
+                    samples[i] = null;
+                }
+            }
+            sketches[i].merge(sketch);
+        }
+    }
+
+    /**
+     * Builds the result from the non-empty buckets.
+     */
+    AggregateSeries toResult(String metric, Map<String, String> groupTags, Aggregator aggregator) {
+        int nonEmpty = 0;
+        for (long count : counts) if (count > 0) nonEmpty++;
+        long[] bucketStarts = new long[nonEmpty];
+        double[] values = new double[nonEmpty];
+        int j = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            bucketStarts[j] = (firstBucket + i) * bucketWidthMs;
+            values[j++] = value(i, aggregator);
+        }
+        return new AggregateSeries(metric, groupTags, bucketStarts, values);
+    }
+
+    private double value(int i, Aggregator aggregator) {
+        switch (aggregator) {
+            case SUM:
+                return sums[i];
+            case AVG:
+                return sums[i] / counts[i];
+            case MIN:
+                return mins[i];
+            case MAX:
+                return maxs[i];
+            case COUNT:
+                return counts[i];
+            default:
+                if (sketches[i] != null) return sketches[i].quantile(aggregator.getQuantile());
+                return percentile(samples[i], (int) counts[i], aggregator.getQuantile());
+        }
+    }
+
+    /**
+     * Returns the nearest-rank percentile of the first n values, sorting them in place.
+     */
+    static double percentile(double[] values, int n, double quantile) {
+        Arrays.sort(values, 0, n);
+        int rank = (int) Math.ceil(quantile * n);
+        return values[Math.max(0, rank - 1)];
+    }
+}
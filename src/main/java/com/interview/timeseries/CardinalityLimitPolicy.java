@@ -0,0 +1,25 @@
+package com.interview.timeseries;
+
+/**
+ * What the store does with a sample that would create a series over the limits set by
+ * {@link StoreConfig#setMaxSeries} and {@link StoreConfig#setMaxSeriesPerMetric}.
+ */
+public enum CardinalityLimitPolicy {
+    /**
+     * Rejects the sample; the insert returns false.
+     */
+    REJECT,
+
+    /**
+     * Drops the sample's tag whose key has the most distinct values in the metric and adds the sample to
+     * the series of the remaining tags. That series is subject to the limits too: if it cannot be created,
+     * the next tag is dropped, and once no tags are left the sample goes to the overflow series.
+     */
+    DROP_TAG,
+
+    /**
+     * Adds the sample to the metric's overflow series, tagged {@code __overflow__=true},
+     * which is exempt from the limits.
+     */
+    OVERFLOW
+}
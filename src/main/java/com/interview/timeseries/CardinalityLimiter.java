@@ -0,0 +1,193 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the store's series limits and keeps per-metric cardinality estimates. Shared by all shards,
+ * so the limits hold store-wide. Only consulted when a key has no series yet, so inserts into
+ * existing series never touch it.
+ */
+final class CardinalityLimiter {
+
+    static final String OVERFLOW_TAG = "__overflow__";
+
+    // Tag keys per metric whose distinct values are estimated; further keys are not tracked
+    private static final int MAX_TRACKED_TAG_KEYS = 64;
+
+    private final StoreConfig config;
+
+    // Number of series held across all metrics
+    private final AtomicInteger series = new AtomicInteger();
+
+    // Stores metric -> its series count and estimates
+    private final ConcurrentMap<String, MetricStats> metrics = new ConcurrentHashMap<>();
+
+    CardinalityLimiter(StoreConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Records an attempt to create a series for the key and checks, without reserving anything,
+     * whether it fits the limits. Lets a shard skip interning keys that would be rejected anyway.
+     */
+    boolean hasRoom(SeriesKey key) {
+        MetricStats stats = stats(key.getMetric());
+        stats.observe(key);
+        return series.get() < config.getMaxSeries() && stats.series.get() < stats.maxSeries;
+    }
+
+    /**
+     * Reserves room for a new series of the key, unless it is limited and that would exceed a limit.
+     */
+    boolean admit(SeriesKey key, boolean limited) {
+        MetricStats stats = stats(key.getMetric());
+        if (series.incrementAndGet() > config.getMaxSeries() && limited) {
+            series.decrementAndGet();
+            return false;
+        }
+        if (stats.series.incrementAndGet() > stats.maxSeries && limited) {
+            stats.series.decrementAndGet();
+            series.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts an insert whose own key was refused a series by a limit.
+     */
+    void refused(SeriesKey key) {
+        stats(key.getMetric()).limited.increment();
+    }
+
+    /**
+     * Frees the room of a series that was removed.
+     */
+    void release(SeriesKey key) {
+        series.decrementAndGet();
+        stats(key.getMetric()).series.decrementAndGet();
+    }
+
+    /**
+     * Returns the key to add a sample to after the given key was refused a series, as the configured
+     * policy decides, or null to reject the sample. Only series of the overflow key (see
+     * {@link #isOverflow}) skip the limits, so a refused key's fallback may be refused in turn:
+     * DROP_TAG then drops another tag, and once no tags are left falls through to the overflow series.
+     */
+    SeriesKey fallback(SeriesKey key) {
+        if (isOverflow(key)) return null;
+        switch (config.getCardinalityLimitPolicy()) {
+            case OVERFLOW:
+                return overflow(key);
+            case DROP_TAG:
+                if (key.getTags().isEmpty()) return overflow(key);
+                MetricStats stats = stats(key.getMetric());
+                String drop = null;
+                long dropEstimate = -1;
+                for (String tagKey : key.getTags().keySet()) {
+                    HyperLogLog values = stats.tagValues.get(tagKey);
+                    long estimate = values == null ? 0 : values.estimate();
+                    if (estimate > dropEstimate) {
+                        drop = tagKey;
+                        dropEstimate = estimate;
+                    }
+                }
+                Map<String, String> tags = new HashMap<>(key.getTags());
+                tags.remove(drop);
+                return SeriesKey.probe(key.getMetric(), tags);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return Whether the key is its metric's overflow series, the one series exempt from the limits.
+     */
+    static boolean isOverflow(SeriesKey key) {
+        return key.getTags().size() == 1 && "true".equals(key.getTags().get(OVERFLOW_TAG));
+    }
+
+    private static SeriesKey overflow(SeriesKey key) {
+        return SeriesKey.probe(key.getMetric(), Collections.singletonMap(OVERFLOW_TAG, "true"));
+    }
+
+    /**
+     * @return The number of series held across all metrics.
+     */
+    int seriesCount() {
+        return series.get();
+    }
+
+    /**
+     * @return The statistics of every metric seen, the one with the most estimated series first.
+     */
+    List<MetricCardinality> snapshot() {
+        List<MetricCardinality> out = new ArrayList<>(metrics.size());
+        for (Map.Entry<String, MetricStats> entry : metrics.entrySet()) {
+            MetricStats stats = entry.getValue();
+            Map<String, Long> tagValues = new TreeMap<>();
+            stats.tagValues.forEach((tagKey, values) -> tagValues.put(tagKey, values.estimate()));
+            out.add(new MetricCardinality(entry.getKey(), stats.series.get(), stats.distinct.estimate(),
+                    stats.limited.sum(), Collections.unmodifiableMap(tagValues)));
+        }
+        out.sort(Comparator.comparingLong(MetricCardinality::getEstimatedSeries).reversed());
+        return out;
+    }
+
+    void clear() {
+        series.set(0);
+        metrics.clear();
+    }
+
+    private MetricStats stats(String metric) {
+        MetricStats stats = metrics.get(metric);
+        if (stats != null) return stats;
+        return metrics.computeIfAbsent(metric, m -> new MetricStats(config.getMaxSeriesPerMetric(m)));
+    }
+
+    private static final class MetricStats {
+        private final int maxSeries;
+
+        // Number of series of the metric held
+        private final AtomicInteger series = new AtomicInteger();
+
+        // Distinct tag sets inserts asked for
+        private final HyperLogLog distinct = new HyperLogLog();
+
+        // Stores tag key -> distinct values it was given
+        private final ConcurrentMap<String, HyperLogLog> tagValues = new ConcurrentHashMap<>();
+
+        // Inserts refused a new series by a limit
+        private final LongAdder limited = new LongAdder();
+
+        MetricStats(int maxSeries) {
+            this.maxSeries = maxSeries;
+        }
+
+        void observe(SeriesKey key) {
+            // Summing the tag hashes makes the series hash independent of the tags' iteration order
+            long tagsHash = 0;
+            for (Map.Entry<String, String> tag : key.getTags().entrySet()) {
+                long keyHash = HyperLogLog.hash(tag.getKey());
+                long valueHash = HyperLogLog.hash(tag.getValue());
+                tagsHash += HyperLogLog.combine(keyHash, valueHash);
+                HyperLogLog values = tagValues.get(tag.getKey());
+                if (values == null && tagValues.size() < MAX_TRACKED_TAG_KEYS) {
+                    values = tagValues.computeIfAbsent(tag.getKey(), k -> new HyperLogLog());
+                }
+                if (values != null) values.addHash(valueHash);
+            }
+            distinct.addHash(HyperLogLog.combine(tagsHash, key.getTags().size()));
+        }
+    }
+}
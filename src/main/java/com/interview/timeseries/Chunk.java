@@ -0,0 +1,205 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * A run of samples of one series stored column-wise in primitive arrays, sorted by timestamp.
+ * Raw chunks serve as the open head chunk of a series; once full they are sealed into a {@link GorillaChunk}.
+ * Only the owning series appends to a chunk (under its lock); readers see a consistent prefix
+ * by reading {@link #size()} once and never looking past it.
+ */
+final class Chunk {
+
+    // Number of samples after which a chunk is closed and a new one is started
+    static final int CAPACITY = 512;
+
+    private final long[] timestamps;
+    private final double[] values;
+
+    // Published after the arrays are written, so readers never see a half-written sample
+    private volatile int count;
+
+    Chunk() {
+        this(CAPACITY);
+    }
+
+    Chunk(int capacity) {
+        this(new long[capacity], new double[capacity], 0);
+    }
+
+    private Chunk(long[] timestamps, double[] values, int count) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.count = count;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= timestamps.length;
+    }
+
+    long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    double getValue(int i) {
+        return values[i];
+    }
+
+    long minTime() {
+        return timestamps[0];
+    }
+
+    long maxTime() {
+        return timestamps[count - 1];
+    }
+
+    /**
+     * Appends a sample. The caller guarantees the chunk is not full and the timestamp is not
+     * smaller than {@link #maxTime()}.
+     */
+    void append(long timestamp, double value) {
+        int n = count;
+        timestamps[n] = timestamp;
+        values[n] = value;
+        count = n + 1;
+    }
+
+    /**
+     * Returns true if a sample with exactly this timestamp and value is present.
+     */
+    boolean contains(long timestamp, double value) {
+        int n = count;
+        long bits = Double.doubleToLongBits(value);
+        for (int i = lowerBound(timestamp, n); i < n && timestamps[i] == timestamp; i++) {
+            if (Double.doubleToLongBits(values[i]) == bits) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp >= the given one.
+     */
+    int lowerBound(long timestamp) {
+        return lowerBound(timestamp, count);
+    }
+
+    private int lowerBound(long timestamp, int n) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[mid] < timestamp) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Feeds the samples in [startTime, endTime) present at the time of the call to the consumer as one
+     * run, its bounds found by binary search. The consumer must not modify the columns.
+     *
+     * @return the number of samples fed.
+     */
+    int scan(long startTime, long endTime, SampleConsumer consumer) {
+        int n = count;
+        int from = lowerBound(startTime, n);
+        int to = lowerBound(endTime, n);
+        if (from < to) consumer.acceptAll(timestamps, values, from, to);
+        return to - from;
+    }
+
+    /**
+     * Returns a cursor over the samples present at the time of the call.
+     */
+    ChunkIterator iterator() {
+        return iterator(0, count);
+    }
+
+    /**
+     * Returns a cursor over the samples in [from, to).
+     */
+    ChunkIterator iterator(int from, int to) {
+        return new ChunkIterator() {
+            private int index = from - 1;
+
+            @Override
+            public boolean next() {
+                return ++index < to;
+            }
+
+            @Override
+            public long timestamp() {
+                return timestamps[index];
+            }
+
+            @Override
+            public double value() {
+                return values[index];
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of this chunk with the sample inserted at its sorted position.
+     * Used for out-of-order samples, so readers holding this chunk are unaffected.
+     */
+    Chunk withInserted(long timestamp, double value) {
+        int n = count;
+        int pos = lowerBound(timestamp + 1, n);
+        int capacity = Math.max(timestamps.length, n + 1);
+        long[] ts = new long[capacity];
+        double[] vs = new double[capacity];
+        System.arraycopy(timestamps, 0, ts, 0, pos);
+        System.arraycopy(values, 0, vs, 0, pos);
+        ts[pos] = timestamp;
+        vs[pos] = value;
+        System.arraycopy(timestamps, pos, ts, pos + 1, n - pos);
+        System.arraycopy(values, pos, vs, pos + 1, n - pos);
+        return new Chunk(ts, vs, n + 1);
+    }
+
+    /**
+     * Returns a copy of this chunk with the samples in [from, to) of another sorted chunk merged in.
+     * Like {@link #withInserted}, merged samples go after samples of this chunk with equal timestamps.
+     */
+    Chunk withMerged(Chunk other, int from, int to) {
+        int n = count;
+        int total = n + to - from;
+        long[] ts = new long[Math.max(CAPACITY, total)];
+        double[] vs = new double[ts.length];
+        int i = 0;
+        int j = from;
+        int k = 0;
+        while (i < n && j < to) {
+            if (other.timestamps[j] < timestamps[i]) {
+                ts[k] = other.timestamps[j];
+                vs[k++] = other.values[j++];
+            } else {
+                ts[k] = timestamps[i];
+                vs[k++] = values[i++];
+            }
+        }
+        for (; i < n; i++, k++) {
+            ts[k] = timestamps[i];
+            vs[k] = values[i];
+        }
+        for (; j < to; j++, k++) {
+            ts[k] = other.timestamps[j];
+            vs[k] = other.values[j];
+        }
+        return new Chunk(ts, vs, total);
+    }
+
+    /**
+     * Returns a copy holding the samples in [from, to), with room to append up to {@link #CAPACITY}.
+     */
+    Chunk slice(int from, int to) {
+        int capacity = Math.max(CAPACITY, to - from);
+        return new Chunk(Arrays.copyOfRange(timestamps, from, from + capacity),
+                Arrays.copyOfRange(values, from, from + capacity), to - from);
+    }
+}
@@ -0,0 +1,97 @@
+package com.interview.timeseries;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap memory for the encoded chunks of one time block: direct ByteBuffer slabs filled by bump
+ * allocation. Chunks are never freed one by one; the whole arena is freed when its block expires.
+ * Space of chunks replaced by late inserts is only reclaimed then.
+ *
+ * Slabs start small and double up to {@link #MAX_SLAB_BYTES}, so blocks holding few samples stay small.
+ * Freeing releases the native memory right away where the JVM allows it, and otherwise leaves it to
+ * the collector of the (few, small) slab objects.
+ */
+final class ChunkArena {
+
+    static final int MIN_SLAB_BYTES = 64 * 1024;
+    static final int MAX_SLAB_BYTES = 1024 * 1024;
+
+    // sun.misc.Unsafe and its invokeCleaner(ByteBuffer) method, or null if unavailable
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    // Slabs allocated so far, the last one being filled; guarded by this
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private ByteBuffer current;
+    private long allocatedBytes;
+    private boolean freed;
+
+    /**
+     * Copies the encoded bytes of a chunk into the arena.
+     *
+     * @return the same chunk backed by the arena.
+     */
+    synchronized GorillaChunk copyOf(GorillaChunk chunk) {
+        if (freed) throw new IllegalStateException("Chunk arena was freed");
+        ByteBuffer bytes = chunk.encodedBytes();
+        int length = bytes.remaining();
+        if (current == null || current.remaining() < length) {
+            int size = current == null ? MIN_SLAB_BYTES : Math.min(current.capacity() * 2, MAX_SLAB_BYTES);
+            current = ByteBuffer.allocateDirect(Math.max(size, length));
+            slabs.add(current);
+            allocatedBytes += current.capacity();
+        }
+        int offset = current.position();
+        current.put(bytes);
+        return new GorillaChunk(current, offset, length, chunk.size(), chunk.minTime(), chunk.maxTime());
+    }
+
+    /**
+     * @return The bytes of direct memory held by this arena.
+     */
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Releases the native memory of every slab. No chunk of this arena may be read afterwards.
+     */
+    synchronized void free() {
+        if (freed) return;
+        freed = true;
+        for (ByteBuffer slab : slabs) release(slab);
+        slabs.clear();
+        current = null;
+        allocatedBytes = 0;
+    }
+
+    private static void release(ByteBuffer slab) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, slab);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the collector, which frees the memory once the slab is unreachable
+        }
+    }
+}
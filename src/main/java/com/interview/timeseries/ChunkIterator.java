@@ -0,0 +1,31 @@
+package com.interview.timeseries;
+
+/**
+ * Forward-only cursor over the samples of a chunk, without boxing or DataPoint allocation.
+ */
+interface ChunkIterator {
+
+    /**
+     * Advances to the next sample.
+     *
+     * @return false once the chunk is exhausted.
+     */
+    boolean next();
+
+    /**
+     * @return The timestamp of the current sample.
+     */
+    long timestamp();
+
+    /**
+     * @return The value of the current sample.
+     */
+    double value();
+
+    /**
+     * Releases what the cursor holds if it is abandoned before being exhausted. Exhausted cursors
+     * have released it already.
+     */
+    default void close() {
+    }
+}
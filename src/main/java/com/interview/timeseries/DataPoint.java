@@ -1,5 +1,6 @@
 package com.interview.timeseries;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -25,7 +26,18 @@ public class DataPoint {
         this.timestamp = timestamp;
         this.metric = metric;
         this.value = value;
-        this.tags = tags != null ? new HashMap<>(tags) : new HashMap<>();
+        this.tags = tags != null ? Collections.unmodifiableMap(new HashMap<>(tags)) : Collections.emptyMap();
+    }
+
+    /**
+     * Builds a DataPoint for a sample read back from a series. The series' immutable tag map is
+     * shared instead of copied, since every sample of the series carries the same tags.
+     */
+    DataPoint(long timestamp, double value, SeriesKey key) {
+        this.timestamp = timestamp;
+        this.metric = key.getMetric();
+        this.value = value;
+        this.tags = key.getTags();
     }
 
     /**
@@ -50,7 +62,8 @@ public class DataPoint {
     }
 
     /**
-     * @return A copy of the tags associated with this data point.
+     * @return The tags associated with this data point, as an unmodifiable map. Data points returned by
+     *         queries share it with every other sample of their series.
      */
     public Map<String, String> getTags() {
         return tags;
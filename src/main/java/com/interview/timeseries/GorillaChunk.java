@@ -0,0 +1,213 @@
+package com.interview.timeseries;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable, bit-packed chunk using the Gorilla encoding: timestamps as delta-of-deltas and
+ * values as XOR against the previous value. Regular intervals with slowly changing values
+ * compress to a few bits per sample.
+ *
+ * The encoded bits live in a ByteBuffer so a chunk can be backed by heap, direct or mapped memory.
+ */
+final class GorillaChunk {
+
+    private final ByteBuffer data;
+    private final int offset;
+    private final int length;
+    private final int count;
+    private final long minTime;
+    private final long maxTime;
+
+    GorillaChunk(ByteBuffer data, int offset, int length, int count, long minTime, long maxTime) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.count = count;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Encodes the samples of a raw chunk. The chunk must not be empty.
+     */
+    static GorillaChunk encode(Chunk chunk) {
+        int n = chunk.size();
+        BitWriter out = new BitWriter(n * 2);
+
+        long prevTimestamp = chunk.getTimestamp(0);
+        long prevDelta = 0;
+        long prevBits = Double.doubleToRawLongBits(chunk.getValue(0));
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        out.writeBits(prevTimestamp, 64);
+        out.writeBits(prevBits, 64);
+
+        for (int i = 1; i < n; i++) {
+            long timestamp = chunk.getTimestamp(i);
+            long delta = timestamp - prevTimestamp;
+            writeDeltaOfDelta(out, delta - prevDelta);
+            prevTimestamp = timestamp;
+            prevDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(chunk.getValue(i));
+            long xor = bits ^ prevBits;
+            prevBits = bits;
+            if (xor == 0) {
+                out.writeBit(false);
+                continue;
+            }
+            out.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                // The meaningful bits fit in the previous window: reuse it
+                out.writeBit(false);
+                out.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                out.writeBit(true);
+                out.writeBits(leading, 5);
+                out.writeBits(meaningful - 1, 6);
+                out.writeBits(xor >>> trailing, meaningful);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+
+        byte[] bytes = out.toByteArray();
+        return new GorillaChunk(ByteBuffer.wrap(bytes), 0, bytes.length, n, chunk.minTime(), chunk.maxTime());
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.writeBit(false);
+        } else if (dod >= -63 && dod <= 64) {
+            out.writeBits(0b10, 2);
+            out.writeBits(dod + 63, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            out.writeBits(0b110, 3);
+            out.writeBits(dod + 255, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(dod + 2047, 12);
+        } else {
+            out.writeBits(0b1111, 4);
+            out.writeBits(dod, 64);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    long minTime() {
+        return minTime;
+    }
+
+    long maxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return The number of bytes of encoded sample data.
+     */
+    int sizeInBytes() {
+        return length;
+    }
+
+    /**
+     * @return A read-only view of the encoded bytes, positioned at their start.
+     */
+    ByteBuffer encodedBytes() {
+        ByteBuffer bytes = data.duplicate();
+        bytes.limit(offset + length).position(offset);
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a streaming decoder over the samples of this chunk.
+     */
+    ChunkIterator iterator() {
+        return new Decoder();
+    }
+
+    /**
+     * Decodes this chunk into the scratch columns and feeds the samples in [startTime, endTime) to the
+     * consumer as one run, its bounds found by binary search.
+     *
+     * @return the number of samples fed.
+     */
+    int scan(long startTime, long endTime, SampleConsumer consumer, SampleBuffer scratch) {
+        scratch.clear();
+        ChunkIterator it = iterator();
+        while (it.next()) scratch.add(it.timestamp(), it.value());
+        long[] timestamps = scratch.timestamps();
+        int n = scratch.size();
+        int from = minTime >= startTime ? 0 : AggregationKernels.lowerBound(timestamps, 0, n, startTime);
+        int to = maxTime < endTime ? n : AggregationKernels.lowerBound(timestamps, from, n, endTime);
+        if (from < to) consumer.acceptAll(timestamps, scratch.values(), from, to);
+        return to - from;
+    }
+
+    /**
+     * Decodes this chunk back into a raw chunk, e.g. to merge a late sample into it.
+     */
+    Chunk decode() {
+        Chunk chunk = new Chunk(Math.max(count, Chunk.CAPACITY));
+        ChunkIterator it = iterator();
+        while (it.next()) chunk.append(it.timestamp(), it.value());
+        return chunk;
+    }
+
+    /**
+     * Streaming Gorilla decoder. Holds only the previous sample's state.
+     */
+    private final class Decoder implements ChunkIterator {
+        private final BitReader in = new BitReader(data, offset);
+        private int index;
+        private long timestamp;
+        private long delta;
+        private long bits;
+        private int leading;
+        private int trailing;
+
+        @Override
+        public boolean next() {
+            if (index >= count) return false;
+            if (index++ == 0) {
+                timestamp = in.readBits(64);
+                bits = in.readBits(64);
+                return true;
+            }
+            delta += readDeltaOfDelta();
+            timestamp += delta;
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = (int) in.readBits(5);
+                    int meaningful = (int) in.readBits(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                bits ^= in.readBits(64 - leading - trailing) << trailing;
+            }
+            return true;
+        }
+
+        private long readDeltaOfDelta() {
+            if (!in.readBit()) return 0;
+            if (!in.readBit()) return in.readBits(7) - 63;
+            if (!in.readBit()) return in.readBits(9) - 255;
+            if (!in.readBit()) return in.readBits(12) - 2047;
+            return in.readBits(64);
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double value() {
+            return Double.longBitsToDouble(bits);
+        }
+    }
+}
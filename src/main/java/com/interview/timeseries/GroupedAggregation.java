@@ -0,0 +1,63 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bucket accumulators of one aggregation query, one per group of series sharing the values of the
+ * group-by tags. Groups are kept ordered by those values, so results come back in a stable order.
+ * Not thread-safe.
+ */
+final class GroupedAggregation {
+
+    private final long startTime;
+    private final long endTime;
+    private final long bucketWidthMs;
+    private final Aggregator aggregator;
+    private final List<String> groupBy;
+    private final Map<List<String>, BucketAccumulator> groups = new TreeMap<>(GroupedAggregation::compare);
+
+    /**
+     * @throws IllegalArgumentException if the bucket width is not positive or the range needs too many buckets.
+     */
+    GroupedAggregation(long startTime, long endTime, long bucketWidthMs, Aggregator aggregator, List<String> groupBy) {
+        BucketAccumulator.bucketCount(startTime, endTime, bucketWidthMs);
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.bucketWidthMs = bucketWidthMs;
+        this.aggregator = aggregator;
+        this.groupBy = groupBy == null ? Collections.emptyList() : groupBy;
+    }
+
+    /**
+     * Returns the accumulator of the group the given tags belong to. A missing tag groups as an empty value.
+     */
+    BucketAccumulator accumulatorFor(Map<String, String> tags) {
+        List<String> group = new ArrayList<>(groupBy.size());
+        for (String tag : groupBy) group.add(tags.getOrDefault(tag, ""));
+        return groups.computeIfAbsent(group, g ->
+                new BucketAccumulator(startTime, endTime, bucketWidthMs, aggregator.isPercentile()));
+    }
+
+    List<AggregateSeries> results(String metric) {
+        List<AggregateSeries> results = new ArrayList<>(groups.size());
+        for (Map.Entry<List<String>, BucketAccumulator> group : groups.entrySet()) {
+            Map<String, String> groupTags = new LinkedHashMap<>();
+            for (int i = 0; i < groupBy.size(); i++) groupTags.put(groupBy.get(i), group.getKey().get(i));
+            results.add(group.getValue().toResult(metric, Collections.unmodifiableMap(groupTags), aggregator));
+        }
+        return results;
+    }
+
+    private static int compare(List<String> a, List<String> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int c = a.get(i).compareTo(b.get(i));
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+}
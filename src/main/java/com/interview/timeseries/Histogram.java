@@ -0,0 +1,85 @@
+package com.interview.timeseries;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative longs, such as latencies in nanoseconds, in the style of
+ * HdrHistogram: every power of two is split into 2^{@link #SUB_BUCKET_BITS} linear sub-buckets,
+ * so any recorded value is reported within 1 / 2^{@link #SUB_BUCKET_BITS} (3%) of its true value.
+ * Counts are striped by thread, so writers on different threads rarely share a cache line.
+ */
+final class Histogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Records a value; negative values count as zero.
+     */
+    void record(long value) {
+        value = Math.max(0, value);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        stripes[stripe].incrementAndGet(index(value));
+        sum.add(value);
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The counts recorded so far. Concurrent records may or may not be included.
+     */
+    HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) counts[i] += stripe.get(i);
+        }
+        return new HistogramSnapshot(counts, sum.sum());
+    }
+
+    /**
+     * Returns the bucket of a value: values below {@link #SUB_BUCKETS} have their own bucket; above,
+     * the position of the highest set bit picks the power of two and the bits after it the sub-bucket.
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return The smallest value counted in the bucket.
+     */
+    static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * @return The largest value counted in the bucket.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        return lowestValue(index) + (1L << shift) - 1;
+    }
+}
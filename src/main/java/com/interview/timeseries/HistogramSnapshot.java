@@ -0,0 +1,87 @@
+package com.interview.timeseries;
+
+/**
+ * Distribution of the values recorded by one of the store's histograms, such as latencies in
+ * nanoseconds. Values are counted in buckets no wider than 3% of their values, so percentiles are
+ * reported within 3% of a recorded value.
+ */
+public class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    HistogramSnapshot(long[] counts, long sum) {
+        this.counts = counts;
+        this.sum = sum;
+        long total = 0;
+        for (long c : counts) total += c;
+        this.count = total;
+    }
+
+    /**
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of the values recorded.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The mean of the values recorded, or NaN if there are none.
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    /**
+     * Returns the nearest-rank percentile, as the highest value of the bucket holding it, or 0 if no values
+     * were recorded.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        for (int i = 0; i < counts.length; i++) {
+            rank -= counts[i];
+            if (rank <= 0) return Histogram.highestValue(i);
+        }
+        return getMax();
+    }
+
+    /**
+     * @return The highest value recorded, to the histogram's precision, or 0 if no values were recorded.
+     */
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) return Histogram.highestValue(i);
+        }
+        return 0;
+    }
+
+    /**
+     * @return The values recorded after the earlier snapshot of the same histogram was taken.
+     */
+    HistogramSnapshot since(HistogramSnapshot earlier) {
+        long[] delta = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) delta[i] = counts[i] - earlier.counts[i];
+        return new HistogramSnapshot(delta, sum - earlier.sum);
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{" +
+                "count=" + count +
+                ", mean=" + getMean() +
+                ", p50=" + getPercentile(50) +
+                ", p99=" + getPercentile(99) +
+                ", max=" + getMax() +
+                '}';
+    }
+}
@@ -0,0 +1,273 @@
+package com.interview.timeseries;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP endpoint over the JDK's built-in server, answering JSON:
+ * <ul>
+ *   <li>{@code GET /query?metric=&start=&end=[&offset=][&limit=][&tag.<key>=<value>...]} streams the
+ *   matching samples in time order from a cursor.</li>
+ *   <li>{@code GET /aggregate?metric=&start=&end=&bucket=[&fn=avg][&groupBy=<key>,...][&tag.<key>=<value>...]}
+ *   returns one series of buckets per group.</li>
+ *   <li>{@code POST /write} takes a body in the line protocol of {@link LineProtocolParser}.</li>
+ * </ul>
+ * Times are in milliseconds since the epoch. Bad parameters answer 400 with an {@code error} message.
+ */
+final class HttpEndpoint {
+
+    // Prefix of the parameters holding tag filters
+    private static final String TAG_PREFIX = "tag.";
+
+    private final TimeSeriesStore store;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int bufferBytes;
+    private final LongAdder lines;
+    private final LongAdder malformed;
+
+    HttpEndpoint(TimeSeriesStore store, InetSocketAddress address, int threads, int bufferBytes,
+                 LongAdder lines, LongAdder malformed) throws IOException {
+        this.store = store;
+        this.bufferBytes = bufferBytes;
+        this.lines = lines;
+        this.malformed = malformed;
+        this.server = HttpServer.create(address, 1024);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "http-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/query", exchange -> handle(exchange, "GET", this::query));
+        server.createContext("/aggregate", exchange -> handle(exchange, "GET", this::aggregate));
+        server.createContext("/write", exchange -> handle(exchange, "POST", this::write));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops taking requests and waits up to a second for the ones being served.
+     */
+    void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                sendError(exchange, 405, "Method not allowed: " + exchange.getRequestMethod());
+                return;
+            }
+            handler.handle(exchange, params(exchange.getRequestURI().getRawQuery()));
+        } catch (RuntimeException e) {
+            if (responseStarted(exchange)) {
+                // Failed while streaming: the 200 already went out, so the cut-off body is all the client gets
+                e.printStackTrace();
+            } else if (e instanceof IllegalArgumentException) {
+                sendError(exchange, 400, e.getMessage());
+            } else {
+                e.printStackTrace();
+                sendError(exchange, 500, String.valueOf(e.getMessage()));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void query(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String metric = required(params, "metric");
+        long start = longParam(params, "start");
+        long end = longParam(params, "end");
+        long offset = longParam(params, "offset", 0L);
+        long limit = longParam(params, "limit", Long.MAX_VALUE);
+        Map<String, String> tagFilters = tagFilters(params);
+
+        // Opened before the response starts, so a query the store refuses still gets an error status
+        try (QueryCursor cursor = store.queryCursor(metric, start, end, tagFilters, offset, limit);
+             JsonWriter json = startJson(exchange)) {
+            json.beginObject().name("metric").value(metric).name("points").beginArray();
+            while (cursor.hasNext()) {
+                DataPoint dp = cursor.next();
+                json.beginObject()
+                        .name("timestamp").value(dp.getTimestamp())
+                        .name("value").value(dp.getValue());
+                writeTags(json, "tags", dp.getTags());
+                json.endObject();
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    private void aggregate(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String metric = required(params, "metric");
+        long start = longParam(params, "start");
+        long end = longParam(params, "end");
+        long bucket = longParam(params, "bucket");
+        Aggregator aggregator;
+        try {
+            aggregator = Aggregator.valueOf(params.getOrDefault("fn", "avg").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown aggregator: " + params.get("fn"));
+        }
+        String groupBy = params.get("groupBy");
+        List<String> groupKeys = groupBy == null || groupBy.isEmpty()
+                ? new ArrayList<>() : Arrays.asList(groupBy.split(","));
+
+        List<AggregateSeries> results =
+                store.aggregate(metric, start, end, tagFilters(params), bucket, aggregator, groupKeys);
+        try (JsonWriter json = startJson(exchange)) {
+            json.beginObject().name("metric").value(metric).name("series").beginArray();
+            for (AggregateSeries series : results) {
+                json.beginObject();
+                writeTags(json, "groupTags", series.getGroupTags());
+                json.name("points").beginArray();
+                for (int i = 0; i < series.size(); i++) {
+                    json.beginArray().value(series.getTimestamp(i)).value(series.getValue(i)).endArray();
+                }
+                json.endArray().endObject();
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    /**
+     * Parses the body as it arrives, inserting each buffer's samples before reading on. Lines that do
+     * not parse are skipped, as are samples the store rejects; the response is 204 if there were none,
+     * 400 otherwise, with the malformed lines and the samples of series batches the store did not fully
+     * accept counted.
+     */
+    private void write(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LineProtocolParser parser = new LineProtocolParser(lines, malformed);
+        ByteBuffer buffer = ByteBuffer.allocate(bufferBytes);
+        long now = System.currentTimeMillis();
+        try (InputStream body = exchange.getRequestBody()) {
+            ReadableByteChannel channel = Channels.newChannel(body);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                parser.parse(buffer, now);
+                buffer.compact();
+                parser.flush(store);
+            }
+            buffer.flip();
+            parser.finish(buffer, now);
+            parser.flush(store);
+        }
+        if (parser.malformed() > 0 || parser.rejected() > 0) {
+            sendError(exchange, 400, parser.malformed() + " malformed lines skipped, " + parser.rejected()
+                    + " of " + parser.lines() + " samples in series batches not fully accepted");
+        } else {
+            exchange.sendResponseHeaders(204, -1);
+        }
+    }
+
+    /**
+     * @return true once the response headers were sent, after which no error status can be.
+     */
+    private static boolean responseStarted(HttpExchange exchange) {
+        return exchange.getResponseCode() != -1;
+    }
+
+    private static JsonWriter startJson(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // Chunked, so large results stream without being held in memory
+        exchange.sendResponseHeaders(200, 0);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        JsonWriter json = new JsonWriter(writer);
+        // Sample values may be NaN or infinite
+        json.setLenient(true);
+        return json;
+    }
+
+    private static void writeTags(JsonWriter json, String name, Map<String, String> tags) throws IOException {
+        json.name(name).beginObject();
+        for (Map.Entry<String, String> tag : tags.entrySet()) json.name(tag.getKey()).value(tag.getValue());
+        json.endObject();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, 0);
+        try (JsonWriter json = new JsonWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+    }
+
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static Map<String, String> tagFilters(Map<String, String> params) {
+        Map<String, String> filters = new HashMap<>();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (param.getKey().startsWith(TAG_PREFIX)) {
+                filters.put(param.getKey().substring(TAG_PREFIX.length()), param.getValue());
+            }
+        }
+        return filters;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) throw new IllegalArgumentException("Missing parameter: " + name);
+        return value;
+    }
+
+    private static long longParam(Map<String, String> params, String name) {
+        String value = required(params, name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+
+    private static long longParam(Map<String, String> params, String name, long defaultValue) {
+        return params.containsKey(name) ? longParam(params, name) : defaultValue;
+    }
+}
@@ -0,0 +1,69 @@
+package com.interview.timeseries;
+
+/**
+ * HyperLogLog estimate of the number of distinct values added, given as 64-bit hashes from
+ * {@link #hash(String)}, with a standard error of about 1.04 / sqrt(2^{@link #PRECISION}), i.e. 1.6%,
+ * in a fixed 4 KB of registers. Adding a value that was seen before never changes the estimate.
+ * Thread-safe.
+ */
+final class HyperLogLog {
+
+    static final int PRECISION = 12;
+
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    synchronized void addHash(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Rank of the first set bit in the remaining bits; a sentinel bit bounds it
+        int rank = Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1;
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    /**
+     * @return The estimated number of distinct values added.
+     */
+    synchronized long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        // Linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns a 64-bit hash of the string: FNV-1a over its chars, finished with the MurmurHash3 mixer
+     * so that both the register index and the rank bits are well distributed.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * @return A hash combining two hashes, for values made of several strings.
+     */
+    static long combine(long h1, long h2) {
+        return mix(h1 * 31 + h2);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e7f20af6aL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
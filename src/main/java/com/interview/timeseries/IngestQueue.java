@@ -0,0 +1,200 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue behind the store's asynchronous inserts. Each writer thread owns an {@link IngestRing};
+ * inserts of one series, points and batch shares alike, always go to the same ring, so its samples are
+ * applied in the order they were queued. Writers take what their ring holds, up to {@link #MAX_BATCH}
+ * requests, and hand it to the store to apply as one batch. When a ring is full, the configured
+ * {@link OverloadPolicy} decides. Writer threads start with the first request.
+ */
+final class IngestQueue {
+
+    // Most requests a writer applies in one batch
+    static final int MAX_BATCH = 4096;
+
+    // How long a producer blocked on a full ring, or an idle writer, parks before looking again
+    private static final long PARK_NANOS = 50_000;
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+
+    /**
+     * One queued insert into a single series: a point, or the series' share of a batch, sorted by time.
+     */
+    static final class Request {
+        final SeriesKey key;
+        final DataPoint point;
+        final SampleBuffer samples;
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Request(SeriesKey key, DataPoint point) {
+            this.key = key;
+            this.point = point;
+            this.samples = null;
+        }
+
+        Request(SeriesKey key, SampleBuffer samples) {
+            this.key = key;
+            this.point = null;
+            this.samples = samples;
+        }
+
+        int size() {
+            return point != null ? 1 : samples.size();
+        }
+
+        long oldestTimestamp() {
+            return point != null ? point.getTimestamp() : samples.timestamps()[0];
+        }
+    }
+
+    private final Writer[] writers;
+    private final OverloadPolicy policy;
+    private final Consumer<List<Request>> apply;
+    private final StoreMetrics metrics;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // Producers between their closed check and their offer; close() waits for them
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    IngestQueue(int capacity, int threads, OverloadPolicy policy, Consumer<List<Request>> apply, StoreMetrics metrics) {
+        this.policy = policy;
+        this.apply = apply;
+        this.metrics = metrics;
+        this.writers = new Writer[Math.max(1, threads)];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Writer(new IngestRing<>(Math.max(1, capacity / writers.length)), i);
+        }
+    }
+
+    /**
+     * Queues a request on the ring of the writer the hash picks.
+     *
+     * @return the request's future, completed by a writer once applied, or failed if the request was
+     *         refused or evicted by the overload policy or the queue is closed.
+     */
+    CompletableFuture<Boolean> submit(Request request, int hash) {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            for (Writer writer : writers) writer.thread.start();
+        }
+        submitting.incrementAndGet();
+        try {
+            if (closed) {
+                request.future.completeExceptionally(new RejectedExecutionException("Store is shut down"));
+                return request.future;
+            }
+            Writer writer = writers[Math.floorMod(hash ^ (hash >>> 16), writers.length)];
+            if (!writer.ring.offer(request) && !handleOverload(writer, request)) return request.future;
+            writer.wake();
+            return request.future;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Applies the overload policy to a request that found its ring full.
+     *
+     * @return true if the request was queued after all.
+     */
+    private boolean handleOverload(Writer writer, Request request) {
+        switch (policy) {
+            case REJECT:
+                metrics.ingestRejected.increment();
+                request.future.completeExceptionally(new RejectedExecutionException("Ingestion queue is full"));
+                return false;
+            case DROP_OLDEST:
+                do {
+                    Request oldest = writer.ring.poll();
+                    if (oldest != null) {
+                        metrics.ingestDropped.increment();
+                        oldest.future.completeExceptionally(
+                                new RejectedExecutionException("Dropped from a full ingestion queue"));
+                    }
+                } while (!writer.ring.offer(request));
+                return true;
+            default:
+                long begin = System.nanoTime();
+                do {
+                    if (closed) {
+                        request.future.completeExceptionally(new RejectedExecutionException("Store is shut down"));
+                        return false;
+                    }
+                    writer.wake();
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                } while (!writer.ring.offer(request));
+                metrics.ingestBlockedTime.recordSince(begin);
+                return true;
+        }
+    }
+
+    /**
+     * @return The number of requests queued across all rings.
+     */
+    long depth() {
+        long depth = 0;
+        for (Writer writer : writers) depth += writer.ring.size();
+        return depth;
+    }
+
+    /**
+     * Refuses further requests and waits until the writers have applied every queued one.
+     */
+    void close() throws InterruptedException {
+        closed = true;
+        while (submitting.get() > 0) Thread.onSpinWait();
+        if (!started.get()) return;
+        for (Writer writer : writers) {
+            writer.wake();
+            writer.thread.join();
+        }
+    }
+
+    private final class Writer implements Runnable {
+        private final IngestRing<Request> ring;
+        private final Thread thread;
+        private volatile boolean parked;
+
+        Writer(IngestRing<Request> ring, int index) {
+            this.ring = ring;
+            this.thread = new Thread(this, "ingest-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void wake() {
+            if (parked) LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            List<Request> batch = new ArrayList<>();
+            while (true) {
+                if (ring.drainTo(batch, MAX_BATCH) > 0) {
+                    metrics.ingestBatchSize.record(batch.size());
+                    try {
+                        apply.accept(batch);
+                    } catch (RuntimeException e) {
+                        for (Request request : batch) request.future.completeExceptionally(e);
+                    }
+                    batch.clear();
+                    continue;
+                }
+                // Producers count themselves before checking closed, so none can queue after this
+                if (closed && submitting.get() == 0 && ring.isEmpty()) return;
+                // Flagged before the last look, so a producer offering after it sees the flag and wakes us
+                parked = true;
+                if (ring.isEmpty() && !closed) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                parked = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.interview.timeseries;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer in the style of Dmitry Vyukov's queue: every slot carries a sequence
+ * number telling producers and consumers whose turn it is, so a producer claims a slot with one CAS on
+ * the tail and publishes it with one ordered write. Many producers offer; one writer thread drains.
+ * Polling is CAS-based as well, which lets a producer evict the oldest element when the ring is full.
+ */
+final class IngestRing<E> {
+
+    private final Object[] items;
+    private final int mask;
+
+    // Per slot: its index while free for the producer at that position, index + 1 once filled
+    private final AtomicLongArray sequences;
+
+    // Next position to offer to, and next position to poll from
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     */
+    IngestRing(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        items = new Object[size];
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    /**
+     * @return false if the ring is full.
+     */
+    boolean offer(E item) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[index] = item;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return The oldest element, or null if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E item = (E) items[index];
+                    items[index] = null;
+                    sequences.lazySet(index, position + items.length);
+                    return item;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Moves up to max elements, oldest first, to the list.
+     *
+     * @return the number of elements moved.
+     */
+    int drainTo(List<? super E> out, int max) {
+        int n = 0;
+        E item;
+        while (n < max && (item = poll()) != null) {
+            out.add(item);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return The number of elements held, exact when no offer or poll is in progress.
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(items.length, tail.get() - head.get()));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
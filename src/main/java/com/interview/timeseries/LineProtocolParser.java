@@ -0,0 +1,385 @@
+package com.interview.timeseries;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parses the line protocol straight out of a byte buffer, one sample per line:
+ * <pre>
+ * metric[,tag=value...] value [timestamp]
+ * </pre>
+ * The timestamp is in milliseconds since the epoch, and defaults to the time the line was read. Names
+ * cannot contain commas, spaces or '='; empty lines and lines starting with '#' are skipped.
+ *
+ * The bytes before the first space name the series. Each distinct series prefix is decoded into strings
+ * once and kept, so for a client sending the same series over and over, parsing a line allocates
+ * nothing: the prefix is matched byte for byte against the cached one, and the value and timestamp are
+ * read as numbers in place. Samples are gathered per series and inserted in one batch per series by
+ * {@link #flush(TimeSeriesStore)}. One parser serves one connection; it is not thread-safe.
+ */
+final class LineProtocolParser {
+
+    // Most series prefixes cached; further series are decoded on every line
+    private static final int MAX_CACHED_SERIES = 4096;
+
+    // Powers of ten exactly representable as doubles
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Open-addressed table of cached series, sized a power of two and at most half full
+    private Entry[] table = new Entry[64];
+    private int cached;
+
+    // Series with samples waiting for the next flush
+    private final List<Entry> pending = new ArrayList<>();
+
+    // Set by the number parsers when the bytes are not a number
+    private boolean invalid;
+
+    // True while discarding the rest of a line longer than the buffer
+    private boolean skipping;
+
+    private long lines;
+    private long malformed;
+    private long rejected;
+    private final LongAdder totalLines;
+    private final LongAdder totalMalformed;
+
+    /**
+     * @param totalLines Counts the samples parsed, across parsers.
+     * @param totalMalformed Counts the lines skipped as malformed, across parsers.
+     */
+    LineProtocolParser(LongAdder totalLines, LongAdder totalMalformed) {
+        this.totalLines = totalLines;
+        this.totalMalformed = totalMalformed;
+    }
+
+    /**
+     * Parses the complete lines between the buffer's position and limit, and moves the position to the
+     * start of the incomplete line left, if any. If the buffer is full and holds no line end, the line
+     * is too long: it is counted as malformed and discarded up to its end.
+     *
+     * @param now The timestamp of samples given without one.
+     */
+    void parse(ByteBuffer buffer, long now) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        if (skipping) {
+            int end = indexOf(buffer, position, limit, (byte) '\n');
+            if (end < 0) {
+                buffer.position(limit);
+                return;
+            }
+            skipping = false;
+            position = end + 1;
+        }
+        int end;
+        while ((end = indexOf(buffer, position, limit, (byte) '\n')) >= 0) {
+            parseLine(buffer, position, end, now);
+            position = end + 1;
+        }
+        if (limit - position == buffer.capacity()) {
+            countMalformed();
+            skipping = true;
+            position = limit;
+        }
+        buffer.position(position);
+    }
+
+    /**
+     * Parses what is left in the buffer as a last line without a line end, at the end of the input.
+     */
+    void finish(ByteBuffer buffer, long now) {
+        parse(buffer, now);
+        if (!skipping && buffer.hasRemaining()) parseLine(buffer, buffer.position(), buffer.limit(), now);
+        skipping = false;
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Inserts the samples parsed since the last flush, in one batch per series.
+     *
+     * @return The number of samples in batches the store did not fully accept, for example because
+     *         samples were too late or over a series limit; some of them may have been inserted.
+     */
+    long flush(TimeSeriesStore store) {
+        long flushRejected = 0;
+        for (Entry series : pending) {
+            SampleBuffer samples = series.samples;
+            int n = samples.size();
+            if (!store.insertBatch(series.metric, series.tags,
+                    Arrays.copyOf(samples.timestamps(), n), Arrays.copyOf(samples.values(), n))) {
+                flushRejected += n;
+            }
+            samples.clear();
+            series.pending = false;
+        }
+        pending.clear();
+        rejected += flushRejected;
+        return flushRejected;
+    }
+
+    /**
+     * @return The number of samples this parser has read.
+     */
+    long lines() {
+        return lines;
+    }
+
+    /**
+     * @return The number of lines this parser has skipped as malformed.
+     */
+    long malformed() {
+        return malformed;
+    }
+
+    /**
+     * @return The number of samples this parser has flushed in batches the store did not fully accept.
+     */
+    long rejected() {
+        return rejected;
+    }
+
+    private void parseLine(ByteBuffer buffer, int from, int to, long now) {
+        if (to > from && buffer.get(to - 1) == '\r') to--;
+        from = skipSpaces(buffer, from, to);
+        if (from == to || buffer.get(from) == '#') return;
+
+        int prefixEnd = indexOf(buffer, from, to, (byte) ' ');
+        Entry series = prefixEnd < 0 ? null : series(buffer, from, prefixEnd);
+        if (series == null) {
+            countMalformed();
+            return;
+        }
+        int valueFrom = skipSpaces(buffer, prefixEnd, to);
+        int valueTo = tokenEnd(buffer, valueFrom, to);
+        invalid = false;
+        double value = parseDouble(buffer, valueFrom, valueTo);
+        long timestamp = now;
+        int timestampFrom = skipSpaces(buffer, valueTo, to);
+        int timestampTo = tokenEnd(buffer, timestampFrom, to);
+        if (timestampFrom < timestampTo) timestamp = parseLong(buffer, timestampFrom, timestampTo);
+        if (invalid || skipSpaces(buffer, timestampTo, to) != to) {
+            countMalformed();
+            return;
+        }
+
+        series.samples.add(timestamp, value);
+        if (!series.pending) {
+            series.pending = true;
+            pending.add(series);
+        }
+        lines++;
+        totalLines.increment();
+    }
+
+    private void countMalformed() {
+        malformed++;
+        totalMalformed.increment();
+    }
+
+    /**
+     * @return The cached series the prefix in [from, to) names, a new one if it is not cached, or
+     *         null if the prefix is not a valid series name.
+     */
+    private Entry series(ByteBuffer buffer, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) hash = 31 * hash + buffer.get(i);
+        hash ^= hash >>> 16;
+
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (Entry entry; (entry = table[slot]) != null; slot = (slot + 1) & mask) {
+            if (entry.hash == hash && entry.matches(buffer, from, to)) return entry;
+        }
+        Entry entry = decode(buffer, from, to, hash);
+        if (entry == null || cached >= MAX_CACHED_SERIES) return entry;
+        table[slot] = entry;
+        if (++cached * 2 > table.length) resize();
+        return entry;
+    }
+
+    private void resize() {
+        Entry[] old = table;
+        table = new Entry[old.length * 2];
+        int mask = table.length - 1;
+        for (Entry entry : old) {
+            if (entry == null) continue;
+            int slot = entry.hash & mask;
+            while (table[slot] != null) slot = (slot + 1) & mask;
+            table[slot] = entry;
+        }
+    }
+
+    private static Entry decode(ByteBuffer buffer, int from, int to, int hash) {
+        byte[] prefix = new byte[to - from];
+        for (int i = 0; i < prefix.length; i++) prefix[i] = buffer.get(from + i);
+
+        String metric = null;
+        Map<String, String> tags = new HashMap<>();
+        for (int part = 0; part <= prefix.length; ) {
+            int partEnd = indexOf(prefix, part, prefix.length, ',');
+            if (partEnd < 0) partEnd = prefix.length;
+            int equals = indexOf(prefix, part, partEnd, '=');
+            if (metric == null) {
+                // The metric name comes first, without '='
+                if (partEnd == part || equals >= 0) return null;
+                metric = new String(prefix, part, partEnd - part, StandardCharsets.UTF_8);
+            } else {
+                // Then tags, each with exactly one '=' between a non-empty key and value
+                if (equals <= part || equals == partEnd - 1 || indexOf(prefix, equals + 1, partEnd, '=') >= 0) {
+                    return null;
+                }
+                tags.put(new String(prefix, part, equals - part, StandardCharsets.UTF_8),
+                        new String(prefix, equals + 1, partEnd - equals - 1, StandardCharsets.UTF_8));
+            }
+            part = partEnd + 1;
+        }
+        return new Entry(prefix, hash, metric, tags);
+    }
+
+    /**
+     * Reads a decimal number in place. Numbers of up to 15 significant digits with a decimal exponent
+     * within +-22 are computed as one exactly rounded multiplication or division of two exact doubles;
+     * anything else, including NaN and Infinity, is handed to {@link Double#parseDouble}.
+     */
+    private double parseDouble(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) negative = buffer.get(i++) == '-';
+
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean digits = false;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !point) {
+                point = true;
+                continue;
+            }
+            if (b < '0' || b > '9') break;
+            digits = true;
+            if (mantissa != 0 || b != '0') {
+                if (++significant > 15) return parseDoubleSlowly(buffer, from, to);
+                mantissa = mantissa * 10 + (b - '0');
+            }
+            if (point) exponent--;
+        }
+        if (!digits) return parseDoubleSlowly(buffer, from, to);
+        if (i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) negativeExponent = buffer.get(i++) == '-';
+            if (i == to) return parseDoubleSlowly(buffer, from, to);
+            int e = 0;
+            for (; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9') return parseDoubleSlowly(buffer, from, to);
+                if (e < 10_000) e = e * 10 + (b - '0');
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != to) return parseDoubleSlowly(buffer, from, to);
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exponent >= 0 && exponent < POW10.length) {
+            value = mantissa * POW10[exponent];
+        } else if (exponent < 0 && -exponent < POW10.length) {
+            value = mantissa / POW10[-exponent];
+        } else {
+            return parseDoubleSlowly(buffer, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlowly(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(from + i);
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            invalid = true;
+            return 0;
+        }
+    }
+
+    private long parseLong(ByteBuffer buffer, int from, int to) {
+        if (to - from > 18) {
+            invalid = true;
+            return 0;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                invalid = true;
+                return 0;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, char c) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) == ' ') from++;
+        return from;
+    }
+
+    private static int tokenEnd(ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) != ' ') from++;
+        return from;
+    }
+
+    /**
+     * A series seen by this parser: its prefix as sent, decoded names, and samples not yet flushed.
+     */
+    private static final class Entry {
+        final byte[] prefix;
+        final int hash;
+        final String metric;
+        final Map<String, String> tags;
+        final SampleBuffer samples = new SampleBuffer();
+        boolean pending;
+
+        Entry(byte[] prefix, int hash, String metric, Map<String, String> tags) {
+            this.prefix = prefix;
+            this.hash = hash;
+            this.metric = metric;
+            this.tags = tags;
+        }
+
+        boolean matches(ByteBuffer buffer, int from, int to) {
+            if (to - from != prefix.length) return false;
+            for (int i = 0; i < prefix.length; i++) {
+                if (buffer.get(from + i) != prefix[i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.interview.timeseries;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TCP endpoint taking the line protocol of {@link LineProtocolParser}, one sample per line, with no
+ * reply. A small pool of selector threads serves every connection: the first also accepts them and
+ * hands them out in turn. Each connection has its own read buffer and parser; whatever a read brings
+ * in is parsed in place and inserted before the next read, so a store slower than its clients pushes
+ * back on them through TCP flow control.
+ */
+final class LineProtocolServer {
+
+    private final TimeSeriesStore store;
+    private final ServerSocketChannel channel;
+    private final Loop[] loops;
+    private final int bufferBytes;
+    private final LongAdder lines;
+    private final LongAdder malformed;
+
+    // Connections currently open
+    private final AtomicInteger connections = new AtomicInteger();
+
+    // Loop the next accepted connection goes to; used by the accepting thread only
+    private int next;
+
+    private volatile boolean closed;
+
+    LineProtocolServer(TimeSeriesStore store, InetSocketAddress address, int threads, int bufferBytes,
+                       LongAdder lines, LongAdder malformed) throws IOException {
+        this.store = store;
+        this.bufferBytes = bufferBytes;
+        this.lines = lines;
+        this.malformed = malformed;
+        this.channel = ServerSocketChannel.open();
+        this.loops = new Loop[threads];
+        try {
+            channel.bind(address, 1024);
+            channel.configureBlocking(false);
+            for (int i = 0; i < threads; i++) loops[i] = new Loop(i);
+            channel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    void start() {
+        for (Loop loop : loops) loop.thread.start();
+    }
+
+    int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Stops accepting and closes every connection, once the samples already read are inserted.
+     */
+    void close() throws IOException {
+        closed = true;
+        for (Loop loop : loops) {
+            if (loop == null) continue;
+            loop.selector.wakeup();
+            if (loop.thread.isAlive()) {
+                try {
+                    loop.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                loop.selector.close();
+            }
+        }
+        // Handed over after their loop stopped
+        for (Loop loop : loops) {
+            if (loop == null) continue;
+            for (SocketChannel accepted; (accepted = loop.incoming.poll()) != null; ) {
+                connections.decrementAndGet();
+                closeQuietly(accepted);
+            }
+        }
+        channel.close();
+    }
+
+    /**
+     * One selector thread and the connections registered with it.
+     */
+    private final class Loop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+
+        // Connections accepted by another loop, to be registered by this one
+        private final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+
+        Loop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "line-protocol-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    for (SocketChannel accepted; (accepted = incoming.poll()) != null; ) register(accepted);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (!closed) e.printStackTrace();
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.isValid() && key.channel() instanceof SocketChannel) disconnect(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void accept() throws IOException {
+            for (SocketChannel accepted; (accepted = channel.accept()) != null; ) {
+                accepted.configureBlocking(false);
+                connections.incrementAndGet();
+                Loop loop = loops[next];
+                next = (next + 1) % loops.length;
+                if (loop == this) {
+                    register(accepted);
+                } else {
+                    loop.incoming.add(accepted);
+                    loop.selector.wakeup();
+                }
+            }
+        }
+
+        private void register(SocketChannel accepted) {
+            try {
+                accepted.register(selector, SelectionKey.OP_READ, new Connection());
+            } catch (IOException e) {
+                connections.decrementAndGet();
+                closeQuietly(accepted);
+            }
+        }
+
+        private void read(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            ByteBuffer buffer = connection.buffer;
+            try {
+                int n = ((SocketChannel) key.channel()).read(buffer);
+                buffer.flip();
+                if (n < 0) {
+                    connection.parser.finish(buffer, System.currentTimeMillis());
+                } else {
+                    connection.parser.parse(buffer, System.currentTimeMillis());
+                }
+                buffer.compact();
+                connection.parser.flush(store);
+                if (n < 0) disconnect(key);
+            } catch (IOException | RuntimeException e) {
+                if (e instanceof RuntimeException) e.printStackTrace();
+                disconnect(key);
+            }
+        }
+
+        private void disconnect(SelectionKey key) {
+            key.cancel();
+            connections.decrementAndGet();
+            closeQuietly((SocketChannel) key.channel());
+        }
+    }
+
+    private final class Connection {
+        final ByteBuffer buffer = ByteBuffer.allocate(bufferBytes);
+        final LineProtocolParser parser = new LineProtocolParser(lines, malformed);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package com.interview.timeseries;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Simple main class for manual testing of the TimeSeriesStore implementation.
  * Demonstrates inserting data and running queries with and without tag filters.
+ * Run with the argument {@code serve} to start a {@link TimeSeriesServer} on the default ports instead.
  */
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve();
+            return;
+        }
+
         // Create and initialize the store
         TimeSeriesStore store = new TimeSeriesStoreImpl();
         boolean initialized = store.initialize();
@@ -63,4 +71,32 @@ public class Main {
             System.out.println("Store shutdown: " + shutdown);
         }
     }
+
+    /**
+     * Serves a store in the working directory until the process is stopped.
+     */
+    private static void serve() throws IOException, InterruptedException {
+        TimeSeriesStore store = new TimeSeriesStoreImpl();
+        if (!store.initialize()) {
+            System.err.println("Failed to initialize the store. Exiting.");
+            return;
+        }
+        ServerConfig config = new ServerConfig();
+        TimeSeriesServer server = new TimeSeriesServer(store, config);
+        server.start();
+        System.out.println("Line protocol on " + config.getBindAddress() + ":" + server.getLinePort()
+                + ", HTTP on " + config.getBindAddress() + ":" + server.getHttpPort());
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            store.shutdown();
+            stopped.countDown();
+        }));
+        stopped.await();
+    }
 }
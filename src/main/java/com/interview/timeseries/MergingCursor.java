@@ -0,0 +1,111 @@
+package com.interview.timeseries;
+
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Cursor merging the time-ordered samples of several series into one stream ordered by timestamp.
+ * Samples with equal timestamps come out in the order their series were added, matching the stable
+ * sort of a materialized query. Holds one decoding position per series, never the result set.
+ */
+final class MergingCursor implements QueryCursor {
+
+    private final PriorityQueue<Source> sources = new PriorityQueue<>();
+    private long toSkip;
+    private long remaining;
+    private boolean closed;
+
+    // Receives the number of samples read once the cursor is closed; null if not recorded
+    private final Histogram pointsRead;
+    private long read;
+
+    /**
+     * @param offset the number of leading data points to skip.
+     * @param limit the maximum number of data points to return after the offset.
+     */
+    MergingCursor(long offset, long limit) {
+        this(offset, limit, null);
+    }
+
+    /**
+     * @param pointsRead receives the number of samples read, skipped ones included, when the cursor closes.
+     */
+    MergingCursor(long offset, long limit, Histogram pointsRead) {
+        this.toSkip = Math.max(0, offset);
+        this.remaining = limit;
+        this.pointsRead = pointsRead;
+    }
+
+    /**
+     * Adds the samples of a series; must be called before the cursor is first read.
+     */
+    void add(SeriesKey key, ChunkIterator samples) {
+        if (samples.next()) sources.add(new Source(key, samples, sources.size()));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) return false;
+        while (toSkip > 0 && !sources.isEmpty()) {
+            advance(sources.poll());
+            toSkip--;
+        }
+        if (remaining <= 0 || sources.isEmpty()) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Source source = sources.poll();
+        DataPoint dp = new DataPoint(source.timestamp, source.value, source.key);
+        advance(source);
+        remaining--;
+        return dp;
+    }
+
+    private void advance(Source source) {
+        read++;
+        if (source.samples.next()) {
+            source.load();
+            sources.add(source);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed && pointsRead != null) pointsRead.record(read);
+        closed = true;
+        for (Source source : sources) source.samples.close();
+        sources.clear();
+    }
+
+    private static final class Source implements Comparable<Source> {
+        private final SeriesKey key;
+        private final ChunkIterator samples;
+        private final int order;
+        private long timestamp;
+        private double value;
+
+        Source(SeriesKey key, ChunkIterator samples, int order) {
+            this.key = key;
+            this.samples = samples;
+            this.order = order;
+            load();
+        }
+
+        void load() {
+            timestamp = samples.timestamp();
+            value = samples.value();
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            int c = Long.compare(timestamp, o.timestamp);
+            return c != 0 ? c : Integer.compare(order, o.order);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.interview.timeseries;
+
+import java.util.Map;
+
+/**
+ * Cardinality statistics of one metric, for finding the metrics and tags that create the most series.
+ * Distinct counts are HyperLogLog estimates, within a few percent of the true counts, and include
+ * series that were never created because they were over a limit.
+ */
+public class MetricCardinality {
+    private final String metric;
+    private final int series;
+    private final long estimatedSeries;
+    private final long limitedInserts;
+    private final Map<String, Long> estimatedTagValues;
+
+    MetricCardinality(String metric, int series, long estimatedSeries, long limitedInserts,
+                      Map<String, Long> estimatedTagValues) {
+        this.metric = metric;
+        this.series = series;
+        this.estimatedSeries = estimatedSeries;
+        this.limitedInserts = limitedInserts;
+        this.estimatedTagValues = estimatedTagValues;
+    }
+
+    /**
+     * @return The metric name.
+     */
+    public String getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return The number of series of the metric currently held.
+     */
+    public int getSeries() {
+        return series;
+    }
+
+    /**
+     * @return The estimated number of distinct series inserts asked for since the store started.
+     */
+    public long getEstimatedSeries() {
+        return estimatedSeries;
+    }
+
+    /**
+     * @return The number of inserts that would have created a series over a limit.
+     */
+    public long getLimitedInserts() {
+        return limitedInserts;
+    }
+
+    /**
+     * @return Tag key -> estimated number of distinct values of the tag.
+     */
+    public Map<String, Long> getEstimatedTagValues() {
+        return estimatedTagValues;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricCardinality{" +
+                "metric='" + metric + '\'' +
+                ", series=" + series +
+                ", estimatedSeries=" + estimatedSeries +
+                ", limitedInserts=" + limitedInserts +
+                ", estimatedTagValues=" + estimatedTagValues +
+                '}';
+    }
+}
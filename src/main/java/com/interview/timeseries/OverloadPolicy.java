@@ -0,0 +1,23 @@
+package com.interview.timeseries;
+
+/**
+ * What an asynchronous insert does when the ingestion queue set by {@link StoreConfig#setIngestQueueCapacity}
+ * is full.
+ */
+public enum OverloadPolicy {
+    /**
+     * Waits in the calling thread until the writers have made room, pushing back on the producer.
+     */
+    BLOCK,
+
+    /**
+     * Evicts the oldest queued insert to make room; its future fails with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Refuses the new insert; its future fails with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    REJECT
+}
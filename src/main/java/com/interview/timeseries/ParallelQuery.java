@@ -0,0 +1,101 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task materializing a query over a list of series. Work is measured in series-blocks
+ * (one series over one time block). A task above the leaf size splits its series in two halves,
+ * merged by timestamp afterwards, or, for a single series, splits its time range at a block boundary,
+ * concatenated afterwards. Leaves merge their series with a {@link MergingCursor}, so the result
+ * matches a sequential query exactly, including the order of equal timestamps.
+ */
+final class ParallelQuery extends RecursiveTask<List<DataPoint>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<SeriesRef> series;
+    private final int from;
+    private final int to;
+    private final long startTime;
+    private final long endTime;
+    private final long blockDurationMs;
+    private final long leafUnits;
+
+    ParallelQuery(List<SeriesRef> series, long startTime, long endTime, long blockDurationMs, long leafUnits) {
+        this(series, 0, series.size(), startTime, endTime, blockDurationMs, leafUnits);
+    }
+
+    private ParallelQuery(List<SeriesRef> series, int from, int to, long startTime, long endTime,
+                          long blockDurationMs, long leafUnits) {
+        this.series = series;
+        this.from = from;
+        this.to = to;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.blockDurationMs = blockDurationMs;
+        this.leafUnits = leafUnits;
+    }
+
+    /**
+     * @return The number of series-blocks a query over the series range and time range touches.
+     */
+    static long units(int seriesCount, long startTime, long endTime, long blockDurationMs) {
+        long blocks = Math.floorDiv(endTime - 1, blockDurationMs) - Math.floorDiv(startTime, blockDurationMs) + 1;
+        return seriesCount * blocks;
+    }
+
+    @Override
+    protected List<DataPoint> compute() {
+        if (units(to - from, startTime, endTime, blockDurationMs) <= leafUnits) return scan();
+
+        if (to - from > 1) {
+            int mid = (from + to) >>> 1;
+            ParallelQuery left = new ParallelQuery(series, from, mid, startTime, endTime, blockDurationMs, leafUnits);
+            ParallelQuery right = new ParallelQuery(series, mid, to, startTime, endTime, blockDurationMs, leafUnits);
+            right.fork();
+            List<DataPoint> first = left.compute();
+            return merge(first, right.join());
+        }
+
+        // A single series spanning many blocks: split its range at the block boundary nearest the middle
+        long split = Math.floorDiv(startTime + (endTime - startTime) / 2, blockDurationMs) * blockDurationMs;
+        if (split <= startTime) split += blockDurationMs;
+        ParallelQuery older = new ParallelQuery(series, from, to, startTime, split, blockDurationMs, leafUnits);
+        ParallelQuery newer = new ParallelQuery(series, from, to, split, endTime, blockDurationMs, leafUnits);
+        newer.fork();
+        List<DataPoint> result = older.compute();
+        result.addAll(newer.join());
+        return result;
+    }
+
+    private List<DataPoint> scan() {
+        MergingCursor cursor = new MergingCursor(0, Long.MAX_VALUE);
+        for (int i = from; i < to; i++) {
+            SeriesRef s = series.get(i);
+            cursor.add(s.getKey(), s.iterator(startTime, endTime));
+        }
+        List<DataPoint> result = new ArrayList<>();
+        while (cursor.hasNext()) result.add(cursor.next());
+        return result;
+    }
+
+    /**
+     * Merges two timestamp-ordered lists, taking from the first on ties.
+     */
+    private static List<DataPoint> merge(List<DataPoint> a, List<DataPoint> b) {
+        if (b.isEmpty()) return a;
+        if (a.isEmpty()) return b;
+        List<DataPoint> out = new ArrayList<>(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            if (b.get(j).getTimestamp() < a.get(i).getTimestamp()) out.add(b.get(j++));
+            else out.add(a.get(i++));
+        }
+        while (i < a.size()) out.add(a.get(i++));
+        while (j < b.size()) out.add(b.get(j++));
+        return out;
+    }
+}
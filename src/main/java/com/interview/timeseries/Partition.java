@@ -0,0 +1,127 @@
+package com.interview.timeseries;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The time blocks of all series in a shard that share one retention period, ordered by start time.
+ * Since every series in a partition expires at the same age, expiry drops whole blocks from the
+ * head of the map without looking at the series inside them.
+ */
+final class Partition {
+
+    private final long retentionMs;
+    private final long blockDurationMs;
+    private final long[] rollupWidthsMs;
+
+    // Whether sealed chunks are kept in off-heap arenas
+    private final boolean offHeap;
+
+    // Stores block start time -> block
+    private final ConcurrentNavigableMap<Long, Block> blocks = new ConcurrentSkipListMap<>();
+
+    Partition(long retentionMs, long blockDurationMs, long[] rollupWidthsMs, boolean offHeap) {
+        this.retentionMs = retentionMs;
+        this.blockDurationMs = blockDurationMs;
+        this.rollupWidthsMs = rollupWidthsMs;
+        this.offHeap = offHeap;
+    }
+
+    long getRetentionMs() {
+        return retentionMs;
+    }
+
+    /**
+     * @return The start time of the block containing the timestamp.
+     */
+    long blockStart(long timestamp) {
+        return Math.floorDiv(timestamp, blockDurationMs) * blockDurationMs;
+    }
+
+    /**
+     * Returns the block containing the timestamp, creating it if needed.
+     */
+    Block blockFor(long timestamp) {
+        long start = blockStart(timestamp);
+        Block block = blocks.get(start);
+        if (block != null) return block;
+        return blocks.computeIfAbsent(start, s -> new Block(s, s + blockDurationMs, rollupWidthsMs, offHeap));
+    }
+
+    /**
+     * Returns the block containing the timestamp, creating it if needed, {@link Block#acquire() acquired}
+     * for the caller. A block dropped concurrently is replaced by a fresh one.
+     */
+    Block acquire(long timestamp) {
+        while (true) {
+            Block block = blockFor(timestamp);
+            if (block.acquire()) return block;
+        }
+    }
+
+    /**
+     * @return The block starting at the given time, or null if there is none.
+     */
+    Block get(long blockStart) {
+        return blocks.get(blockStart);
+    }
+
+    /**
+     * @return The blocks overlapping [startTime, endTime), in time order.
+     */
+    Collection<Block> blocks(long startTime, long endTime) {
+        if (startTime >= endTime) return Collections.emptyList();
+        return blocks.subMap(blockStart(startTime), true, endTime, false).values();
+    }
+
+    Collection<Block> blocks() {
+        return blocks.values();
+    }
+
+    /**
+     * @return The start of the oldest block still within retention at the given time; every block
+     *         before it holds only expired samples.
+     */
+    long retainedFrom(long now) {
+        return blockStart(now - retentionMs);
+    }
+
+    /**
+     * Drops every block holding only expired samples. Each block is unmapped as a whole, without
+     * visiting its samples, and its off-heap memory is freed once no reader holds it.
+     *
+     * @param expired receives the start times of the dropped blocks.
+     * @return the number of samples dropped.
+     */
+    long dropExpired(long now, Collection<Long> expired) {
+        long removed = 0;
+        for (Block block : blocks.headMap(retainedFrom(now)).values()) {
+            // Unmapped before it is released, so a failed acquire() always finds the block gone
+            if (!blocks.remove(block.getStartTime(), block)) continue;
+            removed += block.pointCount();
+            expired.add(block.getStartTime());
+            block.release();
+        }
+        return removed;
+    }
+
+    /**
+     * Drops every block.
+     */
+    void clear() {
+        for (Block block : blocks.values()) {
+            if (blocks.remove(block.getStartTime(), block)) block.release();
+        }
+    }
+
+    /**
+     * @return The bytes of direct memory held by the chunks of this partition.
+     */
+    long offHeapBytes() {
+        long bytes = 0;
+        for (Block block : blocks.values()) bytes += block.offHeapBytes();
+        return bytes;
+    }
+}
@@ -0,0 +1,111 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of series IDs for one index term (a metric or a tag key=value pair).
+ * Writers are serialized on the list; readers take a lock-free snapshot.
+ */
+final class PostingList {
+
+    private static final Snapshot EMPTY = new Snapshot(new int[0], 0);
+
+    // Sorted, duplicate-free series IDs. Appends write past the published size and then publish
+    // a new snapshot, so existing snapshots never change; other updates copy the array.
+    private volatile Snapshot current = EMPTY;
+
+    /**
+     * @return A sorted snapshot of the series IDs. Callers must not modify it.
+     */
+    int[] snapshot() {
+        Snapshot s = current;
+        return s.size == s.ids.length ? s.ids : Arrays.copyOf(s.ids, s.size);
+    }
+
+    int size() {
+        return current.size;
+    }
+
+    /**
+     * Adds a series ID, keeping the list sorted. IDs are allocated in increasing order,
+     * so this is almost always an amortized O(1) append.
+     */
+    synchronized void add(int id) {
+        Snapshot s = current;
+        int[] ids = s.ids;
+        int size = s.size;
+        if (size == 0 || ids[size - 1] < id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            ids[size] = id;
+            current = new Snapshot(ids, size + 1);
+            return;
+        }
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) return;
+        pos = -pos - 1;
+        int[] next = new int[Math.max(ids.length, size + 1)];
+        System.arraycopy(ids, 0, next, 0, pos);
+        next[pos] = id;
+        System.arraycopy(ids, pos, next, pos + 1, size - pos);
+        current = new Snapshot(next, size + 1);
+    }
+
+    synchronized void remove(int id) {
+        Snapshot s = current;
+        int pos = Arrays.binarySearch(s.ids, 0, s.size, id);
+        if (pos < 0) return;
+        int[] next = new int[s.ids.length];
+        System.arraycopy(s.ids, 0, next, 0, pos);
+        System.arraycopy(s.ids, pos + 1, next, pos, s.size - pos - 1);
+        current = new Snapshot(next, s.size - 1);
+    }
+
+    /**
+     * An immutable view of the first {@code size} entries of a (possibly longer) array.
+     */
+    private static final class Snapshot {
+        private final int[] ids;
+        private final int size;
+
+        Snapshot(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Intersects two sorted ID arrays. Walks the smaller array and gallops through the larger one,
+     * so a selective term costs roughly its own size rather than the size of the broad term.
+     */
+    static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        int[] out = new int[a.length];
+        int n = 0;
+        int from = 0;
+        for (int id : a) {
+            from = gallop(b, from, id);
+            if (from == b.length) break;
+            if (b[from] == id) out[n++] = id;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Returns the first index at or after {@code from} whose value is >= target.
+     */
+    private static int gallop(int[] arr, int from, int target) {
+        int step = 1;
+        int hi = from;
+        while (hi < arr.length && arr[hi] < target) {
+            from = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        int pos = Arrays.binarySearch(arr, from, Math.min(hi + 1, arr.length), target);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+}
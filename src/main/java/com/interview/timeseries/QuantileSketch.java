@@ -0,0 +1,129 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a bounded relative error, in the style of DDSketch.
+ * Values are counted in logarithmic bins: bin i of positive values covers (gamma^(i-1), gamma^i],
+ * so any value reported for a quantile is within {@link #RELATIVE_ACCURACY} of a true sample value.
+ * Bins are held sparsely, so a sketch costs memory in proportion to the distinct bins it saw.
+ * Two sketches merge by adding their bin counts. Not thread-safe.
+ */
+final class QuantileSketch {
+
+    static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+
+    /**
+     * Returns the bin index of a value's magnitude, for {@link #add(double, int)}.
+     * Lets a caller adding the same value to several sketches compute the logarithm once.
+     */
+    static int index(double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude < Double.MIN_NORMAL) return 0;
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    void add(double value) {
+        add(value, index(value));
+    }
+
+    /**
+     * Adds a value whose bin index was computed by {@link #index(double)}. NaN values are ignored.
+     */
+    void add(double value, int index) {
+        if (value != value) return;
+        if (Math.abs(value) < Double.MIN_NORMAL) {
+            zeroCount++;
+        } else if (value > 0) {
+            positive.add(index, 1);
+        } else {
+            negative.add(index, 1);
+        }
+    }
+
+    void merge(QuantileSketch other) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+    }
+
+    long count() {
+        return positive.total + negative.total + zeroCount;
+    }
+
+    /**
+     * Returns an estimate of the nearest-rank quantile, or NaN if the sketch is empty.
+     */
+    double quantile(double quantile) {
+        long count = count();
+        if (count == 0) return Double.NaN;
+        long rank = Math.max(0, (long) Math.ceil(quantile * count) - 1);
+
+        // Negative values in ascending order are the largest magnitudes first
+        if (rank < negative.total) {
+            for (int i = negative.size - 1; i >= 0; i--) {
+                rank -= negative.counts[i];
+                if (rank < 0) return -value(negative.keys[i]);
+            }
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) return 0;
+        rank -= zeroCount;
+        for (int i = 0; i < positive.size; i++) {
+            rank -= positive.counts[i];
+            if (rank < 0) return value(positive.keys[i]);
+        }
+        return value(positive.keys[positive.size - 1]);
+    }
+
+    /**
+     * @return The value reported for a bin: the point with equal relative distance to both bin bounds.
+     */
+    private static double value(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * Sparse bins: sorted bin indexes with their counts.
+     */
+    private static final class Bins {
+        private static final int[] NO_KEYS = new int[0];
+        private static final long[] NO_COUNTS = new long[0];
+
+        private int[] keys = NO_KEYS;
+        private long[] counts = NO_COUNTS;
+        private int size;
+        private long total;
+
+        void add(int key, long count) {
+            total += count;
+            int pos = Arrays.binarySearch(keys, 0, size, key);
+            if (pos >= 0) {
+                counts[pos] += count;
+                return;
+            }
+            pos = -pos - 1;
+            if (size == keys.length) {
+                int capacity = Math.max(2, size * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            System.arraycopy(counts, pos, counts, pos + 1, size - pos);
+            keys[pos] = key;
+            counts[pos] = count;
+            size++;
+        }
+
+        void merge(Bins other) {
+            for (int i = 0; i < other.size; i++) add(other.keys[i], other.counts[i]);
+        }
+    }
+}
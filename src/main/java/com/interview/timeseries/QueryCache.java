@@ -0,0 +1,235 @@
+package com.interview.timeseries;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least-recently-used cache of query results within a byte budget, one entry per query and time block
+ * holding the block's matching samples in query order. Only blocks that have ended are cached, so the
+ * open head block is always read from the series.
+ *
+ * Inserts report the time range they wrote to; one reaching below the end of the newest cached block
+ * drops every entry of the blocks it touched, as does retention cleanup for the blocks it drops. An
+ * entry computed while one of its samples was being inserted is never stored: a reader raises the
+ * watermark before reading, so the writer either sees it and invalidates, or wrote before the reader read.
+ */
+final class QueryCache {
+
+    // Estimated heap bytes of a cached data point and its list slot; tags are shared with the series key
+    private static final long POINT_BYTES = 48;
+
+    // Estimated heap bytes of an entry without its points: key, filter copy, list and map links
+    private static final long ENTRY_BYTES = 256;
+
+    private final long maxBytes;
+    private final long blockDurationMs;
+
+    // Entries in access order, the least recently used first
+    private final LinkedHashMap<Key, List<DataPoint>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Stores block start time -> keys of the entries cached for the block
+    private final Map<Long, Set<Key>> keysByBlock = new HashMap<>();
+
+    // Estimated bytes of the entries held
+    private long bytes;
+
+    // Bumped by every invalidation, so entries computed before it are not stored after it
+    private long generation;
+
+    // End of the newest block cached or being computed; writes from here on touch no cached block
+    private final AtomicLong watermark = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    QueryCache(long maxBytes, long blockDurationMs) {
+        this.maxBytes = maxBytes;
+        this.blockDurationMs = blockDurationMs;
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @return The cached samples of the query within the block, or null on a miss.
+     */
+    synchronized List<DataPoint> get(Key key) {
+        List<DataPoint> points = entries.get(key);
+        if (points == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return points;
+    }
+
+    /**
+     * Announces that the block ending at the given time is about to be read for caching.
+     *
+     * @return the generation to pass to {@link #put(Key, List, long)} once the block is read.
+     */
+    long begin(long blockEnd) {
+        watermark.accumulateAndGet(blockEnd, Math::max);
+        synchronized (this) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches the samples read since {@link #begin(long)} returned the generation, unless a write touched
+     * a cached block since then, evicting the least recently used entries to stay within the budget.
+     */
+    synchronized void put(Key key, List<DataPoint> points, long generation) {
+        long size = ENTRY_BYTES + POINT_BYTES * points.size();
+        if (generation != this.generation || size > maxBytes) return;
+        List<DataPoint> previous = entries.put(key, points);
+        if (previous != null) bytes -= ENTRY_BYTES + POINT_BYTES * previous.size();
+        keysByBlock.computeIfAbsent(key.blockStart, b -> new HashSet<>()).add(key);
+        bytes += size;
+
+        Iterator<Map.Entry<Key, List<DataPoint>>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<Key, List<DataPoint>> entry = eldest.next();
+            eldest.remove();
+            unlink(entry.getKey(), entry.getValue());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Called after a sample was written; drops the entries of its block if that may be cached. Writes
+     * after the newest cached block return at once.
+     */
+    void invalidate(long timestamp) {
+        if (timestamp < watermark.get()) invalidateBlock(blockStart(timestamp));
+    }
+
+    /**
+     * Called after the samples in [from, to) of the given timestamps, sorted, were written; drops the
+     * entries of every block they fall into that may be cached.
+     */
+    void invalidate(long[] timestamps, int from, int to) {
+        long end = watermark.get();
+        long last = Long.MIN_VALUE;
+        for (int i = from; i < to && timestamps[i] < end; i++) {
+            long block = blockStart(timestamps[i]);
+            if (block != last) invalidateBlock(last = block);
+        }
+    }
+
+    /**
+     * Drops every entry of the block starting at the given time.
+     */
+    synchronized void invalidateBlock(long blockStart) {
+        generation++;
+        Set<Key> keys = keysByBlock.remove(blockStart);
+        if (keys == null) return;
+        for (Key key : keys) bytes -= ENTRY_BYTES + POINT_BYTES * entries.remove(key).size();
+        invalidations.add(keys.size());
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+        keysByBlock.clear();
+        bytes = 0;
+    }
+
+    long blockStart(long timestamp) {
+        return Math.floorDiv(timestamp, blockDurationMs) * blockDurationMs;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    long invalidations() {
+        return invalidations.sum();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private void unlink(Key key, List<DataPoint> points) {
+        bytes -= ENTRY_BYTES + POINT_BYTES * points.size();
+        Set<Key> keys = keysByBlock.get(key.blockStart);
+        keys.remove(key);
+        if (keys.isEmpty()) keysByBlock.remove(key.blockStart);
+    }
+
+    /**
+     * Appends the cached samples within [startTime, endTime) to the results.
+     */
+    static void slice(List<DataPoint> points, long startTime, long endTime, List<DataPoint> results) {
+        results.addAll(points.subList(lowerBound(points, startTime), lowerBound(points, endTime)));
+    }
+
+    /**
+     * @return The index of the first sample at or after the timestamp.
+     */
+    private static int lowerBound(List<DataPoint> points, long timestamp) {
+        int lo = 0;
+        int hi = points.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points.get(mid).getTimestamp() < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * A normalized query over one block: metric, tag filters and block start time.
+     */
+    static final class Key {
+        private final String metric;
+        private final Map<String, String> tagFilters;
+        private final long blockStart;
+        private final int hash;
+
+        Key(String metric, Map<String, String> tagFilters, long blockStart) {
+            this.metric = metric;
+            // Copied so a caller reusing its filter map cannot change a cached key; map equality ignores order
+            this.tagFilters = tagFilters == null ? Map.of() : new HashMap<>(tagFilters);
+            this.blockStart = blockStart;
+            this.hash = Objects.hash(metric, this.tagFilters, blockStart);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return blockStart == other.blockStart && metric.equals(other.metric)
+                    && tagFilters.equals(other.tagFilters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.interview.timeseries;
+
+import java.util.Iterator;
+
+/**
+ * Lazily evaluated query result. Data points are produced one at a time in timestamp order,
+ * so memory use does not depend on the size of the result. Close the cursor when done with it,
+ * typically in a try-with-resources block; closing early stops the query.
+ */
+public interface QueryCursor extends Iterator<DataPoint>, AutoCloseable {
+
+    /**
+     * Releases the cursor. Further calls to {@link #hasNext()} return false.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,88 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Pre-aggregated buckets of one series at a fixed width: count, sum, min, max and a
+ * {@link QuantileSketch} per epoch-aligned bucket, kept in time order in parallel arrays.
+ * Updated as samples are inserted, so coarse aggregation queries can skip the raw chunks.
+ * Guarded by the owning series' lock.
+ */
+final class RollupTier {
+
+    private final long widthMs;
+    private long[] starts = new long[4];
+    private long[] counts = new long[4];
+    private double[] sums = new double[4];
+    private double[] mins = new double[4];
+    private double[] maxs = new double[4];
+    private QuantileSketch[] sketches = new QuantileSketch[4];
+    private int size;
+
+    RollupTier(long widthMs) {
+        this.widthMs = widthMs;
+    }
+
+    long getWidthMs() {
+        return widthMs;
+    }
+
+    /**
+     * Adds a sample to its bucket. In-order samples hit the last bucket or append a new one.
+     *
+     * @param sketchIndex the value's bin index from {@link QuantileSketch#index(double)}.
+     */
+    void add(long timestamp, double value, int sketchIndex) {
+        long start = Math.floorDiv(timestamp, widthMs) * widthMs;
+        int i = size - 1;
+        if (size == 0 || starts[i] != start) {
+            i = Arrays.binarySearch(starts, 0, size, start);
+            if (i < 0) i = insertBucket(-i - 1, start);
+        }
+        if (counts[i]++ == 0) {
+            sums[i] = value;
+            mins[i] = value;
+            maxs[i] = value;
+        } else {
+            sums[i] += value;
+            if (value < mins[i]) mins[i] = value;
+            if (value > maxs[i]) maxs[i] = value;
+        }
+        sketches[i].add(value, sketchIndex);
+    }
+
+    private int insertBucket(int pos, long start) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            sketches = Arrays.copyOf(sketches, capacity);
+        }
+        int tail = size - pos;
+        System.arraycopy(starts, pos, starts, pos + 1, tail);
+        System.arraycopy(counts, pos, counts, pos + 1, tail);
+        System.arraycopy(sums, pos, sums, pos + 1, tail);
+        System.arraycopy(mins, pos, mins, pos + 1, tail);
+        System.arraycopy(maxs, pos, maxs, pos + 1, tail);
+        System.arraycopy(sketches, pos, sketches, pos + 1, tail);
+        starts[pos] = start;
+        counts[pos] = 0;
+        sketches[pos] = new QuantileSketch();
+        size++;
+        return pos;
+    }
+
+    /**
+     * Merges every bucket starting in [startTime, endTime) into the accumulator.
+     */
+    void mergeInto(long startTime, long endTime, BucketAccumulator accumulator) {
+        int i = Arrays.binarySearch(starts, 0, size, startTime);
+        if (i < 0) i = -i - 1;
+        for (; i < size && starts[i] < endTime; i++) {
+            accumulator.merge(starts[i], counts[i], sums[i], mins[i], maxs[i], sketches[i]);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Growable pair of timestamp and value columns, used to gather the samples of one series
+ * before they are applied to it in a single call.
+ */
+final class SampleBuffer {
+
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    SampleBuffer() {
+        this(8);
+    }
+
+    SampleBuffer(int capacity) {
+        timestamps = new long[Math.max(1, capacity)];
+        values = new double[Math.max(1, capacity)];
+    }
+
+    void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] timestamps() {
+        return timestamps;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts the samples by timestamp, keeping the relative order of equal timestamps.
+     * Already sorted buffers (the common case) are detected in one pass and left alone.
+     */
+    void sortByTime() {
+        if (isSorted(timestamps, 0, size)) return;
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+        long[] ts = new long[timestamps.length];
+        double[] vs = new double[values.length];
+        for (int i = 0; i < size; i++) {
+            ts[i] = timestamps[order[i]];
+            vs[i] = values[order[i]];
+        }
+        timestamps = ts;
+        values = vs;
+    }
+
+    static boolean isSorted(long[] timestamps, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (timestamps[i] < timestamps[i - 1]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package com.interview.timeseries;
+
+/**
+ * Receives samples streamed out of a series, without boxing or DataPoint allocation.
+ */
+interface SampleConsumer {
+
+    void accept(long timestamp, double value);
+
+    /**
+     * Receives the samples in [from, to) of sorted timestamp and value columns, as a run. Consumers
+     * that can process a run at once, rather than sample by sample, override this.
+     */
+    default void acceptAll(long[] timestamps, double[] values, int from, int to) {
+        for (int i = from; i < to; i++) accept(timestamps[i], values[i]);
+    }
+}
@@ -0,0 +1,264 @@
+package com.interview.timeseries;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, binary on-disk segment holding all samples of one time block.
+ *
+ * Layout:
+ * <pre>
+ *   header  : magic, version, block start, block end
+ *   data    : Gorilla-encoded chunk bytes, back to back
+ *   symbols : count, then each distinct metric name, tag key and tag value once
+ *   index   : per series: metric ID, tag count, tag key and value IDs,
+ *             then per chunk: offset, length, count, min time, max time
+ *   footer  : index offset, series count, magic
+ * </pre>
+ * Symbol IDs are local to the file. Version 1 files, which spell out the strings of every series in
+ * the index, are still read.
+ * Segments are opened with {@link FileChannel#map}, and the chunks they return read the mapped pages directly.
+ */
+final class SegmentFile {
+
+    private static final int MAGIC = 0x54535347; // "TSSG"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+    private static final int FOOTER_BYTES = 8 + 4 + 4;
+    private static final String PREFIX = "block-";
+    private static final String SUFFIX = ".seg";
+
+    /**
+     * The chunks of one series within a segment.
+     */
+    static final class Entry {
+        final SeriesKey key;
+        final List<GorillaChunk> chunks;
+
+        Entry(SeriesKey key, List<GorillaChunk> chunks) {
+            this.key = key;
+            this.chunks = chunks;
+        }
+    }
+
+    private final long blockStart;
+    private final long blockEnd;
+    private final List<Entry> entries;
+
+    private SegmentFile(long blockStart, long blockEnd, List<Entry> entries) {
+        this.blockStart = blockStart;
+        this.blockEnd = blockEnd;
+        this.entries = entries;
+    }
+
+    long getBlockStart() {
+        return blockStart;
+    }
+
+    long getBlockEnd() {
+        return blockEnd;
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The file name of the segment for the block starting at the given time.
+     */
+    static Path pathFor(Path directory, long blockStart) {
+        return directory.resolve(PREFIX + blockStart + SUFFIX);
+    }
+
+    /**
+     * Lists the segment files in a directory, ordered by block start time.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) segments.add(path);
+        }
+        segments.sort((a, b) -> Long.compare(blockStartOf(a), blockStartOf(b)));
+        return segments;
+    }
+
+    /**
+     * @return The block start time encoded in a segment file name.
+     */
+    static long blockStartOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Writes a segment atomically: the file is written under a temporary name, fsynced, and moved into place.
+     * Entries without chunks are skipped. If no entry has chunks, any existing segment for the block is deleted.
+     */
+    static void write(Path directory, long blockStart, long blockEnd, List<Entry> entries) throws IOException {
+        Path target = pathFor(directory, blockStart);
+        List<Entry> nonEmpty = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.chunks.isEmpty()) nonEmpty.add(entry);
+        }
+        if (nonEmpty.isEmpty()) {
+            Files.deleteIfExists(target);
+            return;
+        }
+
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(blockStart);
+            out.writeLong(blockEnd);
+
+            // Chunk data; remember where each chunk landed for the index
+            long offset = HEADER_BYTES;
+            long[][] offsets = new long[nonEmpty.size()][];
+            byte[] copy = new byte[4096];
+            for (int s = 0; s < nonEmpty.size(); s++) {
+                List<GorillaChunk> chunks = nonEmpty.get(s).chunks;
+                offsets[s] = new long[chunks.size()];
+                for (int c = 0; c < chunks.size(); c++) {
+                    ByteBuffer bytes = chunks.get(c).encodedBytes();
+                    offsets[s][c] = offset;
+                    offset += bytes.remaining();
+                    while (bytes.hasRemaining()) {
+                        int n = Math.min(copy.length, bytes.remaining());
+                        bytes.get(copy, 0, n);
+                        out.write(copy, 0, n);
+                    }
+                }
+            }
+
+            long indexOffset = offset;
+            Map<String, Integer> symbols = new LinkedHashMap<>();
+            for (Entry entry : nonEmpty) {
+                symbols.putIfAbsent(entry.key.getMetric(), symbols.size());
+                for (Map.Entry<String, String> tag : entry.key.getTags().entrySet()) {
+                    symbols.putIfAbsent(tag.getKey(), symbols.size());
+                    symbols.putIfAbsent(tag.getValue(), symbols.size());
+                }
+            }
+            out.writeInt(symbols.size());
+            for (String symbol : symbols.keySet()) writeString(out, symbol);
+            for (int s = 0; s < nonEmpty.size(); s++) {
+                Entry entry = nonEmpty.get(s);
+                out.writeInt(symbols.get(entry.key.getMetric()));
+                out.writeInt(entry.key.getTags().size());
+                for (Map.Entry<String, String> tag : entry.key.getTags().entrySet()) {
+                    out.writeInt(symbols.get(tag.getKey()));
+                    out.writeInt(symbols.get(tag.getValue()));
+                }
+                out.writeInt(entry.chunks.size());
+                for (int c = 0; c < entry.chunks.size(); c++) {
+                    GorillaChunk chunk = entry.chunks.get(c);
+                    out.writeLong(offsets[s][c]);
+                    out.writeInt(chunk.sizeInBytes());
+                    out.writeInt(chunk.size());
+                    out.writeLong(chunk.minTime());
+                    out.writeLong(chunk.maxTime());
+                }
+            }
+
+            out.writeLong(indexOffset);
+            out.writeInt(nonEmpty.size());
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a segment file and parses its index. Chunk data is not copied.
+     */
+    static SegmentFile open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.capacity() < HEADER_BYTES + FOOTER_BYTES
+                || data.getInt(0) != MAGIC
+                || data.getInt(data.capacity() - 4) != MAGIC) {
+            throw new IOException("Not a valid segment file: " + path);
+        }
+        int version = data.getInt(4);
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported segment version " + version + ": " + path);
+        }
+        long blockStart = data.getLong(8);
+        long blockEnd = data.getLong(16);
+        int footer = data.capacity() - FOOTER_BYTES;
+        long indexOffset = data.getLong(footer);
+        int seriesCount = data.getInt(footer + 8);
+
+        ByteBuffer index = data.duplicate();
+        index.position((int) indexOffset).limit(footer);
+        String[] symbols = null;
+        if (version > 1) {
+            symbols = new String[index.getInt()];
+            for (int i = 0; i < symbols.length; i++) symbols[i] = readString(index);
+        }
+        List<Entry> entries = new ArrayList<>(seriesCount);
+        for (int s = 0; s < seriesCount; s++) {
+            String metric = readSymbol(index, symbols);
+            int tagCount = index.getInt();
+            Map<String, String> tags = new HashMap<>();
+            for (int t = 0; t < tagCount; t++) {
+                tags.put(readSymbol(index, symbols), readSymbol(index, symbols));
+            }
+            int chunkCount = index.getInt();
+            List<GorillaChunk> chunks = new ArrayList<>(chunkCount);
+            for (int c = 0; c < chunkCount; c++) {
+                int offset = (int) index.getLong();
+                int length = index.getInt();
+                int count = index.getInt();
+                long minTime = index.getLong();
+                long maxTime = index.getLong();
+                chunks.add(new GorillaChunk(data, offset, length, count, minTime, maxTime));
+            }
+            entries.add(new Entry(SeriesKey.probe(metric, tags), chunks));
+        }
+        return new SegmentFile(blockStart, blockEnd, entries);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a symbol ID and resolves it, or reads the string itself from a version 1 file (no symbols).
+     */
+    private static String readSymbol(ByteBuffer in, String[] symbols) {
+        return symbols == null ? readString(in) : symbols[in.getInt()];
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
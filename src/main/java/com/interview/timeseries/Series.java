@@ -0,0 +1,608 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The samples of a single series (metric + tag set) within one time {@link Block}, stored in time-ordered chunks.
+ * New samples go to a raw columnar head chunk; full head chunks are sealed into compressed
+ * {@link GorillaChunk}s. Samples older than the newest one go to a small sorted late buffer instead,
+ * which is merged into the chunks covering them when it fills up or the head chunk is sealed, so
+ * in-order appends never pay for out-of-order ones. Tags are held once in the series key, and
+ * DataPoint objects are only built when a query cursor reads them.
+ *
+ * Optional rollup tiers keep pre-aggregated buckets of the same samples, updated on every insert.
+ * With off-heap chunks, sealed chunks are copied into the block's {@link ChunkArena}.
+ *
+ * Writers synchronize on the series. Readers take a single volatile snapshot of the chunk state,
+ * so sealing a head chunk is atomic from their point of view.
+ */
+final class Series {
+
+    private static final State EMPTY = new State(new GorillaChunk[0], null, null);
+
+    // Out-of-order samples buffered before they are merged into the chunks
+    static final int LATE_CAPACITY = 128;
+
+    // Per-thread columns sealed chunks are decoded into for scan()
+    private static final ThreadLocal<SampleBuffer> DECODED =
+            ThreadLocal.withInitial(() -> new SampleBuffer(Chunk.CAPACITY));
+
+    private final int id;
+    private final SeriesKey key;
+
+    // Pre-aggregated buckets, finest tier first; guarded by this
+    private final RollupTier[] rollups;
+
+    // Off-heap memory sealed chunks are copied into; null to keep them on the heap
+    private final ChunkArena arena;
+
+    private volatile State state = EMPTY;
+
+    Series(int id, SeriesKey key, long[] rollupWidthsMs, ChunkArena arena) {
+        this.id = id;
+        this.key = key;
+        this.arena = arena;
+        this.rollups = new RollupTier[rollupWidthsMs.length];
+        for (int i = 0; i < rollups.length; i++) rollups[i] = new RollupTier(rollupWidthsMs[i]);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    SeriesKey getKey() {
+        return key;
+    }
+
+    /**
+     * Adds a sample to this series unless an identical one is already present.
+     * In-order samples are appended to the head chunk; late samples are buffered, see {@link #addLate}.
+     */
+    synchronized void insert(long timestamp, double value) {
+        add(timestamp, value);
+    }
+
+    /**
+     * Adds the samples in [from, to) of the given columns under a single lock acquisition.
+     * Samples sorted by timestamp take the append fast path.
+     */
+    synchronized void insertAll(long[] timestamps, double[] values, int from, int to) {
+        for (int i = from; i < to; i++) add(timestamps[i], values[i]);
+    }
+
+    private void add(long timestamp, double value) {
+        State current = state;
+        long maxTime = current.maxTime();
+        if (timestamp > maxTime) {
+            append(current, timestamp, value);
+        } else if (current.contains(timestamp, value)) {
+            return;
+        } else if (timestamp == maxTime) {
+            append(current, timestamp, value);
+        } else {
+            addLate(current, timestamp, value);
+        }
+        rollup(timestamp, value);
+    }
+
+    private void rollup(long timestamp, double value) {
+        if (rollups.length == 0) return;
+        int sketchIndex = QuantileSketch.index(value);
+        for (RollupTier tier : rollups) tier.add(timestamp, value, sketchIndex);
+    }
+
+    private void append(State current, long timestamp, double value) {
+        Chunk head = current.head;
+        if (head != null && !head.isFull()) {
+            head.append(timestamp, value);
+            return;
+        }
+        if (current.late != null) {
+            // Late samples are merged in before the head is sealed, so sealed chunks stay final
+            current = mergeLate(current);
+            head = current.head;
+            if (head != null && !head.isFull()) {
+                head.append(timestamp, value);
+                state = current;
+                return;
+            }
+        }
+        GorillaChunk[] sealed = head == null ? current.sealed : append(current.sealed, seal(head));
+        Chunk next = new Chunk();
+        next.append(timestamp, value);
+        state = new State(sealed, next, null);
+    }
+
+    /**
+     * Adds an out-of-order sample to the late buffer, a small sorted chunk replaced on every late sample,
+     * so the chunks themselves are only rewritten once per {@link #LATE_CAPACITY} late samples.
+     */
+    private void addLate(State current, long timestamp, double value) {
+        Chunk late;
+        if (current.late == null) {
+            late = new Chunk(LATE_CAPACITY);
+            late.append(timestamp, value);
+        } else {
+            late = current.late.withInserted(timestamp, value);
+        }
+        State next = new State(current.sealed, current.head, late);
+        state = late.size() >= LATE_CAPACITY ? mergeLate(next) : next;
+    }
+
+    /**
+     * Returns the state with the late buffer merged into the chunks covering its samples. Each affected
+     * chunk is decoded and re-encoded once; chunks that grow past {@link Chunk#CAPACITY} are split.
+     */
+    private State mergeLate(State current) {
+        Chunk late = current.late;
+        GorillaChunk[] sealed = current.sealed;
+        Chunk head = current.head;
+        int n = late.size();
+
+        // Samples after the last sealed chunk belong to the head, as the append path would have put them
+        int headFrom = n;
+        if (head != null) {
+            long lastSealed = sealed.length == 0 ? Long.MIN_VALUE : sealed[sealed.length - 1].maxTime();
+            headFrom = late.lowerBound(lastSealed + 1);
+        }
+
+        List<GorillaChunk> next = new ArrayList<>(sealed.length + 2);
+        int from = 0;
+        for (int i = 0; i < sealed.length; i++) {
+            // Chunk i takes the samples chunkFor() maps to it: up to the next chunk's first timestamp
+            int to = i + 1 < sealed.length ? Math.min(headFrom, late.lowerBound(sealed[i + 1].minTime())) : headFrom;
+            if (to <= from) {
+                next.add(sealed[i]);
+                continue;
+            }
+            for (Chunk piece : split(sealed[i].decode().withMerged(late, from, to))) next.add(seal(piece));
+            from = to;
+        }
+        if (from < n) {
+            List<Chunk> pieces = split(head.withMerged(late, from, n));
+            for (int i = 0; i < pieces.size() - 1; i++) next.add(seal(pieces.get(i)));
+            head = pieces.get(pieces.size() - 1);
+        }
+        return new State(next.toArray(new GorillaChunk[0]), head, null);
+    }
+
+    /**
+     * Encodes a raw chunk for this series' sealed chunks, in the arena if there is one.
+     */
+    private GorillaChunk seal(Chunk chunk) {
+        GorillaChunk encoded = GorillaChunk.encode(chunk);
+        return arena == null ? encoded : arena.copyOf(encoded);
+    }
+
+    /**
+     * Splits an overfull chunk into pieces of at most {@link Chunk#CAPACITY} samples, so repeated backfill
+     * does not grow one chunk without bound. Never splits between equal timestamps, so a duplicate check
+     * only has to look in one chunk. The last piece keeps room to append.
+     */
+    private static List<Chunk> split(Chunk chunk) {
+        int size = chunk.size();
+        if (size <= Chunk.CAPACITY) return Collections.singletonList(chunk);
+        int pieces = (size + Chunk.CAPACITY - 1) / Chunk.CAPACITY;
+        int target = (size + pieces - 1) / pieces;
+        List<Chunk> out = new ArrayList<>(pieces);
+        int from = 0;
+        while (from < size) {
+            int cut = Math.min(size, from + target);
+            while (cut < size && chunk.getTimestamp(cut) == chunk.getTimestamp(cut - 1)) cut++;
+            out.add(chunk.slice(from, cut));
+            from = cut;
+        }
+        return out;
+    }
+
+    /**
+     * Feeds all samples in [startTime, endTime) to the consumer as column runs, one per chunk: sealed
+     * chunks in time order, decoded into per-thread columns, then the head chunk and the late buffer.
+     * Samples are in timestamp order within a run only, which is all order-insensitive consumers like
+     * aggregations need.
+     *
+     * @return the number of samples fed.
+     */
+    int scan(long startTime, long endTime, SampleConsumer consumer) {
+        State current = state;
+        int count = 0;
+        for (GorillaChunk chunk : current.sealed) {
+            if (chunk.maxTime() < startTime) continue;
+            if (chunk.minTime() >= endTime) break;
+            count += chunk.scan(startTime, endTime, consumer, DECODED.get());
+        }
+        if (current.head != null) count += current.head.scan(startTime, endTime, consumer);
+        if (current.late != null) count += current.late.scan(startTime, endTime, consumer);
+        return count;
+    }
+
+    /**
+     * Returns a cursor over the samples in [startTime, endTime), in timestamp order, as of the call.
+     * Sealed chunks are decoded lazily as the cursor reaches them; chunks outside the range are skipped
+     * without decoding.
+     */
+    ChunkIterator iterator(long startTime, long endTime) {
+        return iterator(state, startTime, endTime);
+    }
+
+    private static ChunkIterator iterator(State current, long startTime, long endTime) {
+        RangeIterator chunks = new RangeIterator(current, startTime, endTime);
+        Chunk late = current.late;
+        if (late == null) return chunks;
+        int from = late.lowerBound(startTime);
+        int to = late.lowerBound(endTime);
+        return from == to ? chunks : new LateMergingIterator(chunks, late.iterator(from, to));
+    }
+
+    /**
+     * Returns the samples in [startTime, endTime) as sealed chunks, for writing to a segment.
+     * Sealed chunks lying entirely inside the range are reused as they are; chunks crossing
+     * the range boundaries and the head chunk are re-encoded from the samples inside the range.
+     */
+    synchronized List<GorillaChunk> sealedChunks(long startTime, long endTime) {
+        if (state.late != null) state = mergeLate(state);
+        State current = state;
+        List<GorillaChunk> out = new ArrayList<>();
+        for (GorillaChunk chunk : current.sealed) {
+            if (chunk.maxTime() < startTime) continue;
+            if (chunk.minTime() >= endTime) break;
+            if (chunk.minTime() >= startTime && chunk.maxTime() < endTime) {
+                out.add(chunk);
+            } else {
+                encodeRange(chunk.iterator(), startTime, endTime, out);
+            }
+        }
+        Chunk head = current.head;
+        if (head != null && head.maxTime() >= startTime && head.minTime() < endTime) {
+            encodeRange(head.iterator(), startTime, endTime, out);
+        }
+        return out;
+    }
+
+    private static void encodeRange(ChunkIterator it, long startTime, long endTime, List<GorillaChunk> out) {
+        Chunk chunk = new Chunk();
+        while (it.next()) {
+            long ts = it.timestamp();
+            if (ts < startTime) continue;
+            if (ts >= endTime) break;
+            if (chunk.isFull()) {
+                out.add(GorillaChunk.encode(chunk));
+                chunk = new Chunk();
+            }
+            chunk.append(ts, it.value());
+        }
+        if (chunk.size() > 0) out.add(GorillaChunk.encode(chunk));
+    }
+
+    /**
+     * Re-encodes this series into as few sealed chunks as its samples need, with exact duplicates dropped:
+     * the head chunk is sealed, the late buffer merged in, and chunks left part-full by late merges or
+     * segment loads are joined. Meant for blocks that have ended. Encoding works on a snapshot without
+     * the lock, and the result is swapped in only if no sample was added meanwhile, so neither readers
+     * nor writers wait for it; a series that changed is left for the next pass.
+     *
+     * Full chunks ahead of every other sample are kept as they are. With off-heap chunks, the new ones
+     * are encoded on the heap and copied into the arena only once the swap is certain, since the arena
+     * cannot give back the space of chunks it no longer needs.
+     *
+     * @return the encoded bytes of the new chunks, or 0 if the series was already compact or changed.
+     */
+    long compact() {
+        State current = state;
+        Chunk head = current.head;
+        int headSize = head == null ? 0 : head.size();
+        if (isCompact(current)) return 0;
+
+        int kept = finalChunks(current);
+        List<GorillaChunk> chunks = new ArrayList<>(Arrays.asList(current.sealed).subList(0, kept));
+        Chunk chunk = new Chunk();
+        long bytes = 0;
+        long startTime = kept == 0 ? Long.MIN_VALUE : current.sealed[kept - 1].maxTime() + 1;
+        ChunkIterator it = iterator(current, startTime, Long.MAX_VALUE);
+        while (it.next()) {
+            long ts = it.timestamp();
+            double value = it.value();
+            if (chunk.size() > 0 && ts == chunk.maxTime() && chunk.contains(ts, value)) continue;
+            if (chunk.isFull()) {
+                GorillaChunk sealed = GorillaChunk.encode(chunk);
+                bytes += sealed.sizeInBytes();
+                chunks.add(sealed);
+                chunk = new Chunk();
+            }
+            chunk.append(ts, value);
+        }
+        if (chunk.size() > 0) {
+            GorillaChunk sealed = GorillaChunk.encode(chunk);
+            bytes += sealed.sizeInBytes();
+            chunks.add(sealed);
+        }
+
+        synchronized (this) {
+            // Appends grow the head in place, so its size tells whether one happened since the snapshot
+            if (state != current || (head != null && head.size() != headSize)) return 0;
+            if (arena != null) {
+                for (int i = kept; i < chunks.size(); i++) chunks.set(i, arena.copyOf(chunks.get(i)));
+            }
+            state = new State(chunks.toArray(new GorillaChunk[0]), null, null);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of leading sealed chunks compaction would leave as they are: full ones, each
+     *         ending before any later sample of the series starts.
+     */
+    private static int finalChunks(State current) {
+        GorillaChunk[] sealed = current.sealed;
+        long unsealedFrom = current.head == null ? Long.MAX_VALUE : current.head.minTime();
+        if (current.late != null) unsealedFrom = Math.min(unsealedFrom, current.late.minTime());
+        int n = 0;
+        while (n < sealed.length && sealed[n].size() >= Chunk.CAPACITY && sealed[n].maxTime() < unsealedFrom
+                && (n + 1 == sealed.length || sealed[n].maxTime() < sealed[n + 1].minTime())) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return true if the state holds only sealed chunks, no fewer than its samples need.
+     */
+    private static boolean isCompact(State current) {
+        if (current.head != null || current.late != null) return false;
+        long count = 0;
+        for (GorillaChunk chunk : current.sealed) count += chunk.size();
+        return current.sealed.length <= (count + Chunk.CAPACITY - 1) / Chunk.CAPACITY;
+    }
+
+    /**
+     * Adds sorted, non-overlapping chunks loaded from segments. If they fit into a gap between the
+     * existing chunks (typically after them, or before them when older blocks load last), they are
+     * spliced in without decoding; otherwise their samples are merged in one by one.
+     */
+    synchronized void addSealed(List<GorillaChunk> loaded) {
+        if (loaded.isEmpty()) return;
+        State current = state;
+        GorillaChunk[] sealed = current.sealed;
+        long loadedMin = loaded.get(0).minTime();
+        long loadedMax = loaded.get(loaded.size() - 1).maxTime();
+
+        int pos = 0;
+        while (pos < sealed.length && sealed[pos].maxTime() < loadedMin) pos++;
+        long nextMin = pos < sealed.length ? sealed[pos].minTime()
+                : current.head != null ? current.head.minTime() : Long.MAX_VALUE;
+        if (loadedMax < nextMin && current.late == null) {
+            GorillaChunk[] next = new GorillaChunk[sealed.length + loaded.size()];
+            System.arraycopy(sealed, 0, next, 0, pos);
+            for (int i = 0; i < loaded.size(); i++) next[pos + i] = loaded.get(i);
+            System.arraycopy(sealed, pos, next, pos + loaded.size(), sealed.length - pos);
+            state = new State(next, current.head, null);
+            for (GorillaChunk chunk : loaded) {
+                ChunkIterator it = chunk.iterator();
+                while (it.next()) rollup(it.timestamp(), it.value());
+            }
+            return;
+        }
+        for (GorillaChunk chunk : loaded) {
+            ChunkIterator it = chunk.iterator();
+            while (it.next()) add(it.timestamp(), it.value());
+        }
+    }
+
+    /**
+     * Merges the buckets of the given rollup tier starting in [startTime, endTime) into the accumulator.
+     */
+    synchronized void mergeRollups(int tier, long startTime, long endTime, BucketAccumulator accumulator) {
+        rollups[tier].mergeInto(startTime, endTime, accumulator);
+    }
+
+    /**
+     * @return The number of samples held by this series.
+     */
+    long pointCount() {
+        State current = state;
+        long count = current.head == null ? 0 : current.head.size();
+        if (current.late != null) count += current.late.size();
+        for (GorillaChunk chunk : current.sealed) count += chunk.size();
+        return count;
+    }
+
+    /**
+     * @return The number of samples held in sealed, compressed chunks.
+     */
+    long sealedPointCount() {
+        long count = 0;
+        for (GorillaChunk chunk : state.sealed) count += chunk.size();
+        return count;
+    }
+
+    /**
+     * @return The bytes of sample data held in sealed chunks (encoded bits only).
+     */
+    long sealedBytes() {
+        long bytes = 0;
+        for (GorillaChunk chunk : state.sealed) bytes += chunk.sizeInBytes();
+        return bytes;
+    }
+
+    /**
+     * Returns the index of the last chunk starting at or before the timestamp, or 0 if none does.
+     */
+    private static int chunkFor(GorillaChunk[] chunks, long timestamp) {
+        int lo = 0;
+        int hi = chunks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (chunks[mid].minTime() <= timestamp) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static GorillaChunk[] append(GorillaChunk[] chunks, GorillaChunk chunk) {
+        GorillaChunk[] next = Arrays.copyOf(chunks, chunks.length + 1);
+        next[chunks.length] = chunk;
+        return next;
+    }
+
+    private static final class RangeIterator implements ChunkIterator {
+        private final State snapshot;
+        private final long startTime;
+        private final long endTime;
+        private int nextChunk;
+        private boolean headVisited;
+        private ChunkIterator current;
+        private long timestamp;
+        private double value;
+
+        RangeIterator(State snapshot, long startTime, long endTime) {
+            this.snapshot = snapshot;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            GorillaChunk[] sealed = snapshot.sealed;
+            while (nextChunk < sealed.length && sealed[nextChunk].maxTime() < startTime) nextChunk++;
+        }
+
+        @Override
+        public boolean next() {
+            while (true) {
+                if (current == null && !openNextChunk()) return false;
+                if (!current.next()) {
+                    current = null;
+                    continue;
+                }
+                long ts = current.timestamp();
+                if (ts < startTime) continue;
+                if (ts >= endTime) {
+                    // Chunks are in time order, so nothing after this is in range
+                    nextChunk = snapshot.sealed.length;
+                    headVisited = true;
+                    current = null;
+                    return false;
+                }
+                timestamp = ts;
+                value = current.value();
+                return true;
+            }
+        }
+
+        private boolean openNextChunk() {
+            GorillaChunk[] sealed = snapshot.sealed;
+            if (nextChunk < sealed.length) {
+                GorillaChunk chunk = sealed[nextChunk++];
+                if (chunk.minTime() >= endTime) {
+                    nextChunk = sealed.length;
+                    headVisited = true;
+                    return false;
+                }
+                current = chunk.iterator();
+                return true;
+            }
+            Chunk head = snapshot.head;
+            if (headVisited || head == null || head.maxTime() < startTime) return false;
+            headVisited = true;
+            current = head.iterator();
+            return true;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double value() {
+            return value;
+        }
+    }
+
+    /**
+     * Merges the late buffer into the samples read from the chunks. On equal timestamps the chunk sample
+     * comes first, which is where merging the late buffer into the chunks puts it.
+     */
+    private static final class LateMergingIterator implements ChunkIterator {
+        private final ChunkIterator chunks;
+        private final ChunkIterator late;
+        private boolean chunksPending;
+        private boolean latePending;
+        private boolean fromLate;
+        private boolean started;
+
+        LateMergingIterator(ChunkIterator chunks, ChunkIterator late) {
+            this.chunks = chunks;
+            this.late = late;
+            this.chunksPending = chunks.next();
+            this.latePending = late.next();
+        }
+
+        @Override
+        public boolean next() {
+            // Advance the side the previous sample came from; the first call consumes nothing
+            if (started) {
+                if (fromLate) latePending = late.next();
+                else chunksPending = chunks.next();
+            }
+            started = true;
+            if (!chunksPending && !latePending) return false;
+            fromLate = !chunksPending || (latePending && late.timestamp() < chunks.timestamp());
+            return true;
+        }
+
+        @Override
+        public long timestamp() {
+            return fromLate ? late.timestamp() : chunks.timestamp();
+        }
+
+        @Override
+        public double value() {
+            return fromLate ? late.value() : chunks.value();
+        }
+    }
+
+    /**
+     * Immutable snapshot of a series' chunks: sealed chunks in time order, the open head chunk, and
+     * the sorted late buffer. The head chunk may still grow by appends, which readers ignore past the
+     * size they observed; the late buffer is replaced rather than modified.
+     */
+    private static final class State {
+        private final GorillaChunk[] sealed;
+        private final Chunk head;
+        private final Chunk late;
+
+        State(GorillaChunk[] sealed, Chunk head, Chunk late) {
+            this.sealed = sealed;
+            this.head = head;
+            this.late = late;
+        }
+
+        long maxTime() {
+            if (head != null) return head.maxTime();
+            return sealed.length == 0 ? Long.MIN_VALUE : sealed[sealed.length - 1].maxTime();
+        }
+
+        /**
+         * Returns true if a sample with exactly this timestamp and value is present.
+         */
+        boolean contains(long timestamp, double value) {
+            if (late != null && late.contains(timestamp, value)) return true;
+            if (head != null && timestamp >= head.minTime()) {
+                if (head.contains(timestamp, value)) return true;
+                if (timestamp > head.minTime()) return false;
+            }
+            long bits = Double.doubleToLongBits(value);
+            // Equal timestamps may straddle the boundary between consecutive chunks
+            for (int i = Math.min(chunkFor(sealed, timestamp) + 1, sealed.length - 1); i >= 0; i--) {
+                GorillaChunk chunk = sealed[i];
+                if (chunk.maxTime() < timestamp) break;
+                if (chunk.minTime() > timestamp) continue;
+                ChunkIterator it = chunk.iterator();
+                while (it.next() && it.timestamp() <= timestamp) {
+                    if (it.timestamp() == timestamp && Double.doubleToLongBits(it.value()) == bits) return true;
+                }
+            }
+            return false;
+        }
+    }
+}
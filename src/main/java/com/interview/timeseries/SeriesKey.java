@@ -0,0 +1,153 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identity of a single time series: a metric name plus its tag set.
+ * Tags are held sorted so that two data points with the same tags in a different
+ * insertion order map to the same series.
+ *
+ * Keys held by the store are canonical: their strings come from the store's {@link SymbolTable},
+ * and they carry the symbol IDs of the metric and of each tag, sorted by tag key ID, so that
+ * comparing two keys or matching a {@link TagFilter} compares ints.
+ *
+ * Equality between a canonical key and a {@link #probe} key falls back to the strings (map equality
+ * and hash codes are order-independent), so a probe wrapping a caller's map finds the same series
+ * without copying, sorting or interning the tags on every insert.
+ */
+final class SeriesKey {
+    private static final int[] NO_IDS = new int[0];
+
+    private final String metric;
+    private final Map<String, String> tags;
+    private final int hash;
+
+    // Symbol IDs; tagKeyIds is null for probe keys
+    private final int metricId;
+    private final int[] tagKeyIds;
+    private final int[] tagValueIds;
+
+    private SeriesKey(String metric, Map<String, String> tags, int hash,
+                      int metricId, int[] tagKeyIds, int[] tagValueIds) {
+        this.metric = metric;
+        this.tags = tags;
+        this.hash = hash;
+        this.metricId = metricId;
+        this.tagKeyIds = tagKeyIds;
+        this.tagValueIds = tagValueIds;
+    }
+
+    /**
+     * Returns a key for looking up an existing series that wraps the given tags without copying them.
+     * It must not be stored; use {@link #canonical(SymbolTable)} for that.
+     */
+    static SeriesKey probe(String metric, Map<String, String> tags) {
+        Map<String, String> wrapped = tags == null ? Collections.emptyMap() : tags;
+        return new SeriesKey(metric, wrapped, 31 * metric.hashCode() + wrapped.hashCode(),
+                SymbolTable.NONE, null, null);
+    }
+
+    /**
+     * @return This key with its strings interned in the symbol table and its own sorted, immutable tags.
+     */
+    SeriesKey canonical(SymbolTable symbols) {
+        if (tagKeyIds != null) return this;
+        int metricId = symbols.intern(metric);
+        if (tags.isEmpty()) {
+            return new SeriesKey(symbols.symbol(metricId), Collections.emptySortedMap(), hash,
+                    metricId, NO_IDS, NO_IDS);
+        }
+        TreeMap<String, String> sorted = new TreeMap<>();
+        long[] pairs = new long[tags.size()];
+        int n = 0;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            int keyId = symbols.intern(tag.getKey());
+            int valueId = symbols.intern(tag.getValue());
+            sorted.put(symbols.symbol(keyId), symbols.symbol(valueId));
+            pairs[n++] = (long) keyId << 32 | (valueId & 0xFFFFFFFFL);
+        }
+        Arrays.sort(pairs);
+        int[] keyIds = new int[n];
+        int[] valueIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            keyIds[i] = (int) (pairs[i] >>> 32);
+            valueIds[i] = (int) pairs[i];
+        }
+        return new SeriesKey(symbols.symbol(metricId), Collections.unmodifiableSortedMap(sorted), hash,
+                metricId, keyIds, valueIds);
+    }
+
+    String getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return The tags, sorted by key for canonical keys.
+     */
+    Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return The symbol ID of the metric. Canonical keys only.
+     */
+    int getMetricId() {
+        return metricId;
+    }
+
+    /**
+     * @return The number of tags.
+     */
+    int tagCount() {
+        return tagKeyIds.length;
+    }
+
+    /**
+     * @return The symbol ID of the i-th tag key, in ascending ID order. Canonical keys only.
+     */
+    int tagKeyId(int i) {
+        return tagKeyIds[i];
+    }
+
+    /**
+     * @return The symbol ID of the i-th tag value. Canonical keys only.
+     */
+    int tagValueId(int i) {
+        return tagValueIds[i];
+    }
+
+    /**
+     * @return The symbol ID of the value of the tag with the given key ID, or {@link SymbolTable#NONE}
+     *         if this series has no such tag. Canonical keys only.
+     */
+    int valueIdOf(int keyId) {
+        int i = Arrays.binarySearch(tagKeyIds, keyId);
+        return i < 0 ? SymbolTable.NONE : tagValueIds[i];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SeriesKey)) return false;
+        SeriesKey that = (SeriesKey) o;
+        if (hash != that.hash) return false;
+        if (tagKeyIds != null && that.tagKeyIds != null) {
+            return metricId == that.metricId && Arrays.equals(tagKeyIds, that.tagKeyIds)
+                    && Arrays.equals(tagValueIds, that.tagValueIds);
+        }
+        return metric.equals(that.metric) && tags.equals(that.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return metric + tags;
+    }
+}
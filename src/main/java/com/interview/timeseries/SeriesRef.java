@@ -0,0 +1,209 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identity of a series within a shard: its ID, key and the partition holding its time blocks.
+ * The samples themselves live in one {@link Series} per block, so expiry never touches a series
+ * directly; it drops blocks, and retires a reference once all of its blocks are gone.
+ */
+final class SeriesRef {
+
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final int id;
+    private final SeriesKey key;
+    private final Partition partition;
+
+    // Latest timestamp written to this series, or RETIRED once expiry unmapped it
+    private final AtomicLong lastTimestamp = new AtomicLong(RETIRED + 1);
+
+    SeriesRef(int id, SeriesKey key, Partition partition) {
+        this.id = id;
+        this.key = key;
+        this.partition = partition;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    SeriesKey getKey() {
+        return key;
+    }
+
+    Partition getPartition() {
+        return partition;
+    }
+
+    /**
+     * Records a write at the timestamp, unless the reference was retired.
+     *
+     * @return false if the reference was retired and the caller must retry with the shard's current one.
+     */
+    boolean touch(long timestamp) {
+        long last;
+        do {
+            last = lastTimestamp.get();
+            if (last == RETIRED) return false;
+            if (last >= timestamp) return true;
+        } while (!lastTimestamp.compareAndSet(last, timestamp));
+        return true;
+    }
+
+    /**
+     * Returns the oldest timestamp a write may have to lie within the tolerance of the latest one.
+     */
+    long acceptedFrom(long toleranceMs) {
+        return acceptedFrom(lastTimestamp.get(), toleranceMs);
+    }
+
+    /**
+     * Returns the oldest timestamp a write may have to lie within the tolerance of the given newest one.
+     */
+    static long acceptedFrom(long newest, long toleranceMs) {
+        // Saturate rather than overflow for large tolerances
+        return newest < Long.MIN_VALUE + toleranceMs ? Long.MIN_VALUE : newest - toleranceMs;
+    }
+
+    /**
+     * Retires this reference if nothing was written at or after the threshold. Once retired,
+     * {@link #touch(long)} fails, so no sample can land in a series that is no longer reachable.
+     *
+     * @return true if the reference is now retired.
+     */
+    boolean retireIfIdle(long threshold) {
+        long last;
+        do {
+            last = lastTimestamp.get();
+            if (last == RETIRED) return true;
+            if (last >= threshold) return false;
+        } while (!lastTimestamp.compareAndSet(last, RETIRED));
+        return true;
+    }
+
+    /**
+     * Adds a sample to the block containing its timestamp, creating the block if needed.
+     */
+    void insert(long timestamp, double value) {
+        Block block = partition.acquire(timestamp);
+        try {
+            block.seriesFor(this).insert(timestamp, value);
+        } finally {
+            block.release();
+        }
+    }
+
+    /**
+     * Adds the samples in [from, to) of the given columns, which must all fall into one block.
+     */
+    void insertAll(long[] timestamps, double[] values, int from, int to) {
+        Block block = partition.acquire(timestamps[from]);
+        try {
+            block.seriesFor(this).insertAll(timestamps, values, from, to);
+        } finally {
+            block.release();
+        }
+    }
+
+    /**
+     * Adds sorted chunks loaded from the segment of one block, as {@link Series#addSealed(List)} does.
+     */
+    void addSealed(List<GorillaChunk> chunks) {
+        Block block = partition.acquire(chunks.get(0).minTime());
+        try {
+            block.seriesFor(this).addSealed(chunks);
+        } finally {
+            block.release();
+        }
+    }
+
+    /**
+     * Feeds all samples in [startTime, endTime) to the consumer as column runs, block by block, as
+     * {@link Series#scan} does. Blocks dropped by expiry in the meantime are skipped.
+     *
+     * @return the number of samples fed.
+     */
+    long scan(long startTime, long endTime, SampleConsumer consumer) {
+        long count = 0;
+        for (Block block : partition.blocks(startTime, endTime)) {
+            if (!block.acquire()) continue;
+            try {
+                Series series = block.get(id);
+                if (series != null) count += series.scan(startTime, endTime, consumer);
+            } finally {
+                block.release();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a cursor over the samples in [startTime, endTime), in timestamp order, as of the call.
+     * Blocks are visited in time order and each is read as {@link Series#iterator(long, long)} does.
+     * Blocks dropped by expiry in the meantime are skipped.
+     */
+    ChunkIterator iterator(long startTime, long endTime) {
+        List<ChunkIterator> parts = new ArrayList<>();
+        for (Block block : partition.blocks(startTime, endTime)) {
+            if (!block.acquire()) continue;
+            Series series = block.get(id);
+            if (series == null) {
+                block.release();
+            } else {
+                parts.add(block.guard(series.iterator(startTime, endTime)));
+            }
+        }
+        if (parts.size() == 1) return parts.get(0);
+        return new ConcatIterator(parts);
+    }
+
+    /**
+     * Merges the buckets of the given rollup tier starting in [startTime, endTime) into the accumulator.
+     * Buckets split across two blocks are merged like any other.
+     */
+    void mergeRollups(int tier, long startTime, long endTime, BucketAccumulator accumulator) {
+        for (Block block : partition.blocks(startTime, endTime)) {
+            Series series = block.get(id);
+            if (series != null) series.mergeRollups(tier, startTime, endTime, accumulator);
+        }
+    }
+
+    /**
+     * Reads a list of cursors over consecutive time ranges one after another.
+     */
+    private static final class ConcatIterator implements ChunkIterator {
+        private final List<ChunkIterator> parts;
+        private int current;
+
+        ConcatIterator(List<ChunkIterator> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean next() {
+            while (current < parts.size()) {
+                if (parts.get(current).next()) return true;
+                current++;
+            }
+            return false;
+        }
+
+        @Override
+        public long timestamp() {
+            return parts.get(current).timestamp();
+        }
+
+        @Override
+        public double value() {
+            return parts.get(current).value();
+        }
+
+        @Override
+        public void close() {
+            for (; current < parts.size(); current++) parts.get(current).close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.interview.timeseries;
+
+/**
+ * Settings for {@link TimeSeriesServer}. Setters return this config so they can be chained.
+ * By default the server listens on localhost only.
+ */
+public class ServerConfig {
+
+    // Address both endpoints bind to
+    private String bindAddress = "127.0.0.1";
+
+    // TCP port of the line-protocol ingest endpoint; 0 picks a free port
+    private int linePort = 8089;
+
+    // TCP port of the HTTP query and write endpoint; 0 picks a free port
+    private int httpPort = 8086;
+
+    // Selector threads serving line-protocol connections, each multiplexing its share of them
+    private int selectorThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Threads serving HTTP requests
+    private int httpThreads = 4;
+
+    // Per-connection read buffer; also the longest line accepted
+    private int readBufferBytes = 32 * 1024;
+
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    public ServerConfig setBindAddress(String bindAddress) {
+        if (bindAddress == null) throw new IllegalArgumentException("Bind address must not be null");
+        this.bindAddress = bindAddress;
+        return this;
+    }
+
+    public int getLinePort() {
+        return linePort;
+    }
+
+    public ServerConfig setLinePort(int linePort) {
+        if (linePort < 0 || linePort > 65535) throw new IllegalArgumentException("Invalid port: " + linePort);
+        this.linePort = linePort;
+        return this;
+    }
+
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    public ServerConfig setHttpPort(int httpPort) {
+        if (httpPort < 0 || httpPort > 65535) throw new IllegalArgumentException("Invalid port: " + httpPort);
+        this.httpPort = httpPort;
+        return this;
+    }
+
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    public ServerConfig setSelectorThreads(int selectorThreads) {
+        if (selectorThreads <= 0) {
+            throw new IllegalArgumentException("Selector threads must be positive: " + selectorThreads);
+        }
+        this.selectorThreads = selectorThreads;
+        return this;
+    }
+
+    public int getHttpThreads() {
+        return httpThreads;
+    }
+
+    public ServerConfig setHttpThreads(int httpThreads) {
+        if (httpThreads <= 0) throw new IllegalArgumentException("HTTP threads must be positive: " + httpThreads);
+        this.httpThreads = httpThreads;
+        return this;
+    }
+
+    public int getReadBufferBytes() {
+        return readBufferBytes;
+    }
+
+    /**
+     * Sets the read buffer of each line-protocol connection. A line that does not fit is skipped as
+     * malformed.
+     */
+    public ServerConfig setReadBufferBytes(int readBufferBytes) {
+        if (readBufferBytes < 64) {
+            throw new IllegalArgumentException("Read buffer must be at least 64 bytes: " + readBufferBytes);
+        }
+        this.readBufferBytes = readBufferBytes;
+        return this;
+    }
+}
@@ -0,0 +1,258 @@
+package com.interview.timeseries;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * One partition of the store's series, picked by the hash of the series key. Each shard has its own
+ * series maps, tag index and write-ahead log, so writers to different shards share no locks.
+ * Queries visit every shard and merge the results.
+ *
+ * Samples are held in fixed-duration time blocks, grouped into one {@link Partition} per retention
+ * period, so expiry drops whole blocks instead of trimming every series.
+ */
+final class Shard {
+
+    // Stores series key (metric + tags) -> series reference
+    private final ConcurrentMap<SeriesKey, SeriesRef> seriesByKey = new ConcurrentHashMap<>();
+
+    // Stores series ID -> series reference, for resolving index lookups
+    private final ConcurrentMap<Integer, SeriesRef> seriesById = new ConcurrentHashMap<>();
+
+    // Stores retention period -> time blocks of the series kept that long
+    private final ConcurrentMap<Long, Partition> partitions = new ConcurrentHashMap<>();
+
+    // Inverted index from metric and tag key=value pairs to series IDs
+    private final TagIndex tagIndex = new TagIndex();
+
+    // Source of series IDs, shared by all shards so IDs are unique store-wide; IDs are never reused
+    private final AtomicInteger nextSeriesId;
+
+    // Dictionary the strings of series keys are interned in, shared by all shards
+    private final SymbolTable symbols;
+
+    // Series limits and cardinality estimates, shared by all shards
+    private final CardinalityLimiter limiter;
+
+    // Directory holding this shard's write-ahead log segments
+    private final Path walDirectory;
+
+    // Width of the time blocks samples are held in
+    private final long blockDurationMs;
+
+    // Bucket widths of the rollup tiers every series maintains
+    private final long[] rollupWidthsMs;
+
+    // Whether sealed chunks are kept in off-heap arenas
+    private final boolean offHeap;
+
+    // Retention period of a metric
+    private final ToLongFunction<String> retention;
+
+    // Write-ahead log of inserts since the last checkpoint; null until initialized or if disabled
+    private volatile WriteAheadLog wal;
+
+    Shard(AtomicInteger nextSeriesId, SymbolTable symbols, CardinalityLimiter limiter, Path walDirectory,
+          long blockDurationMs, long[] rollupWidthsMs, boolean offHeap, ToLongFunction<String> retention) {
+        this.nextSeriesId = nextSeriesId;
+        this.symbols = symbols;
+        this.limiter = limiter;
+        this.walDirectory = walDirectory;
+        this.blockDurationMs = blockDurationMs;
+        this.rollupWidthsMs = rollupWidthsMs;
+        this.offHeap = offHeap;
+        this.retention = retention;
+    }
+
+    Path getWalDirectory() {
+        return walDirectory;
+    }
+
+    WriteAheadLog getWal() {
+        return wal;
+    }
+
+    void setWal(WriteAheadLog wal) {
+        this.wal = wal;
+    }
+
+    /**
+     * Adds the samples in [from, to) of the given columns, sorted by timestamp, to a series returned by
+     * {@link #touch(SeriesKey, long)}. Samples are applied with one lock acquisition per time block they fall into.
+     */
+    void applyAll(SeriesRef ref, long[] timestamps, double[] values, int from, int to) {
+        Partition partition = ref.getPartition();
+        while (from < to) {
+            long blockEnd = partition.blockStart(timestamps[from]) + blockDurationMs;
+            int end = from + 1;
+            while (end < to && timestamps[end] < blockEnd) end++;
+            ref.insertAll(timestamps, values, from, end);
+            from = end;
+        }
+    }
+
+    /**
+     * Returns the live series for the key with a write at the timestamp recorded.
+     *
+     * @param limited whether creating the series is subject to the series limits.
+     * @return null if the series did not exist and creating it would exceed a series limit.
+     */
+    SeriesRef touch(SeriesKey key, long timestamp, boolean limited) {
+        SeriesRef ref;
+        do {
+            ref = seriesFor(key, limited);
+            if (ref == null) return null;
+        } while (!ref.touch(timestamp) && forget(ref));
+        return ref;
+    }
+
+    /**
+     * Returns the series for the key, creating and indexing it if needed, or null if creating it
+     * would exceed a series limit. The common case of an existing series is a single lock-free map
+     * lookup; the key is only interned into canonical form when a new series is created.
+     */
+    SeriesRef seriesFor(SeriesKey key, boolean limited) {
+        SeriesRef ref = seriesByKey.get(key);
+        if (ref != null) return ref;
+        // Checked before interning, so keys over a limit add nothing to the symbol table
+        if (limited && !limiter.hasRoom(key)) return null;
+        return seriesByKey.computeIfAbsent(key.canonical(symbols), k -> createSeries(k, limited));
+    }
+
+    /**
+     * Creates and indexes a new series, or returns null if the limiter refuses it.
+     * Called inside seriesByKey.computeIfAbsent() for the key.
+     */
+    private SeriesRef createSeries(SeriesKey key, boolean limited) {
+        if (!limiter.admit(key, limited)) return null;
+        long retentionMs = retention.applyAsLong(key.getMetric());
+        Partition partition = partitions.computeIfAbsent(retentionMs,
+                r -> new Partition(r, blockDurationMs, rollupWidthsMs, offHeap));
+        SeriesRef ref = new SeriesRef(nextSeriesId.getAndIncrement(), key, partition);
+        seriesById.put(ref.getId(), ref);
+        tagIndex.add(ref.getId(), key);
+        return ref;
+    }
+
+    /**
+     * Unmaps a series retired by cleanup, so the next lookup creates a fresh one.
+     *
+     * @return always true, to keep retrying the insert.
+     */
+    private boolean forget(SeriesRef retired) {
+        seriesByKey.remove(retired.getKey(), retired);
+        return true;
+    }
+
+    /**
+     * Passes every series matching the filter to the action.
+     */
+    void select(TagFilter filter, Consumer<SeriesRef> action) {
+        for (int id : tagIndex.lookup(filter)) {
+            SeriesRef ref = seriesById.get(id);
+            // Re-check the key: it covers empty-value filters and series removed concurrently
+            if (ref != null && filter.matches(ref.getKey())) {
+                action.accept(ref);
+            }
+        }
+    }
+
+    /**
+     * Drops the blocks of every partition that hold only expired samples, then unmaps the series
+     * that had no samples left in the remaining blocks.
+     *
+     * @param expired receives the start times of the dropped blocks.
+     * @return the number of expired data points removed.
+     */
+    long removeExpired(long now, Collection<Long> expired) {
+        long removed = 0;
+        for (Partition partition : partitions.values()) removed += partition.dropExpired(now, expired);
+        for (SeriesRef ref : seriesByKey.values()) {
+            if (ref.retireIfIdle(ref.getPartition().retainedFrom(now))) {
+                seriesByKey.remove(ref.getKey(), ref);
+                tagIndex.remove(ref.getId(), ref.getKey());
+                seriesById.remove(ref.getId());
+                limiter.release(ref.getKey());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Compacts every series of every block that ended by the given time, as {@link Series#compact()} does.
+     *
+     * @param compacted receives the start times of the blocks in which a series was compacted.
+     * @param throttle  is passed the bytes re-encoded after each compacted series, and may block to pace them.
+     */
+    void compact(long endedBy, Collection<Long> compacted, LongConsumer throttle) {
+        for (Partition partition : partitions.values()) {
+            for (Block block : partition.blocks()) {
+                if (block.getEndTime() > endedBy) break;
+                if (!block.acquire()) continue;
+                try {
+                    for (Series series : block.series()) {
+                        long bytes = series.compact();
+                        if (bytes == 0) continue;
+                        compacted.add(block.getStartTime());
+                        throttle.accept(bytes);
+                    }
+                } finally {
+                    block.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the blocks starting at the given time, one per partition that has one, to the collection,
+     * {@link Block#acquire() acquired}; the caller must release them.
+     */
+    void acquireBlocks(long blockStart, Collection<Block> acquired) {
+        for (Partition partition : partitions.values()) {
+            Block block = partition.get(blockStart);
+            if (block != null && block.acquire()) acquired.add(block);
+        }
+    }
+
+    /**
+     * Passes the samples of every series in every block to the action, which must only read their sizes.
+     */
+    void forEachSeries(Consumer<Series> action) {
+        for (Partition partition : partitions.values()) {
+            for (Block block : partition.blocks()) block.series().forEach(action);
+        }
+    }
+
+    /**
+     * Adds the {@link Block#dataBytes() data bytes} of every block of this shard to the map, by block start time.
+     */
+    void blockBytes(Map<Long, Long> bytes) {
+        for (Partition partition : partitions.values()) {
+            for (Block block : partition.blocks()) bytes.merge(block.getStartTime(), block.dataBytes(), Long::sum);
+        }
+    }
+
+    /**
+     * @return The bytes of direct memory held by the chunks of this shard.
+     */
+    long offHeapBytes() {
+        long bytes = 0;
+        for (Partition partition : partitions.values()) bytes += partition.offHeapBytes();
+        return bytes;
+    }
+
+    void clear() {
+        seriesByKey.clear();
+        seriesById.clear();
+        for (Partition partition : partitions.values()) partition.clear();
+        partitions.clear();
+        tagIndex.clear();
+    }
+}
@@ -0,0 +1,449 @@
+package com.interview.timeseries;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tunable settings for {@link TimeSeriesStoreImpl}. Setters return this config so they can be chained.
+ * The defaults reproduce the store's standard behavior, writing to the working directory.
+ */
+public class StoreConfig {
+
+    // Directory holding the persisted data and the write-ahead log
+    private Path dataDirectory = Paths.get(".");
+
+    // Width of the time blocks data is persisted in; each block is written to its own segment file
+    private long blockDurationMs = 2L * 60 * 60 * 1000;
+
+    // How long samples are kept, unless overridden for their metric
+    private long retentionMs = 24L * 60 * 60 * 1000;
+
+    // Stores metric -> retention overriding retentionMs
+    private final Map<String, Long> metricRetentionMs = new ConcurrentHashMap<>();
+
+    // Most series held at once, across all metrics
+    private int maxSeries = Integer.MAX_VALUE;
+
+    // Most series of one metric held at once, unless overridden for the metric
+    private int maxSeriesPerMetric = Integer.MAX_VALUE;
+
+    // Stores metric -> series limit overriding maxSeriesPerMetric
+    private final Map<String, Integer> metricMaxSeries = new ConcurrentHashMap<>();
+
+    // What an insert that would create a series over a limit does
+    private CardinalityLimitPolicy cardinalityLimitPolicy = CardinalityLimitPolicy.REJECT;
+
+    // How far behind the newest sample of its series a sample may be and still be accepted
+    private long outOfOrderToleranceMs = Long.MAX_VALUE;
+
+    // Most asynchronous inserts queued at once, across all ingest writer threads
+    private int ingestQueueCapacity = 64 * 1024;
+
+    // Threads applying queued asynchronous inserts
+    private int ingestThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    // What an asynchronous insert does when the ingestion queue is full
+    private OverloadPolicy overloadPolicy = OverloadPolicy.BLOCK;
+
+    // Whether inserts are logged to the write-ahead log
+    private boolean walEnabled = true;
+
+    // Maximum time between WAL fsyncs; a crash loses at most this much acknowledged data
+    private long walSyncIntervalMs = 200;
+
+    // Unsynced WAL bytes that trigger an early fsync
+    private long walSyncBytes = 4L * 1024 * 1024;
+
+    // Size at which the WAL rolls over to a new segment file
+    private long walSegmentBytes = 64L * 1024 * 1024;
+
+    // Threads used to map and attach segment files at startup
+    private int recoveryThreads = Runtime.getRuntime().availableProcessors();
+
+    // If set, initialize() returns once the newest block is loaded and older blocks load in the background;
+    // queries reaching into blocks not loaded yet wait for them
+    private boolean lazyRecovery = false;
+
+    // Number of partitions the series are spread over by key hash; each has its own index and write-ahead log
+    private int shardCount = Runtime.getRuntime().availableProcessors();
+
+    // Bucket widths of the rollup tiers maintained at insert time; empty to disable rollups
+    private long[] rollupWidthsMs = {60_000L, 5 * 60_000L, 60 * 60_000L};
+
+    // Whether sealed chunks are kept in off-heap arenas, freed as a whole when their time block expires
+    private boolean offHeapChunks = false;
+
+    // Threads of the pool that runs large queries in parallel
+    private int queryParallelism = Runtime.getRuntime().availableProcessors();
+
+    // Series-blocks (matching series times time blocks spanned) from which a query runs in parallel
+    private long parallelQueryThreshold = 64;
+
+    // Heap budget of the query result cache, in estimated bytes; 0 to disable caching
+    private long queryCacheBytes = 0;
+
+    // How often the store inserts its own metrics as "timeseries.*" data points; 0 to disable
+    private long selfMetricsIntervalMs = 0;
+
+    // How often blocks that have ended are compacted into full re-encoded chunks; 0 to disable
+    private long compactionIntervalMs = 10L * 60 * 1000;
+
+    // Bytes compaction may re-encode and write per second, so it does not compete with ingest for I/O
+    private long compactionBytesPerSecond = 16L * 1024 * 1024;
+
+    // How often in-memory data is checkpointed to disk so old WAL segments can be deleted
+    private long checkpointIntervalMs = 15L * 60 * 1000;
+
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public StoreConfig setDataDirectory(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        return this;
+    }
+
+    public long getBlockDurationMs() {
+        return blockDurationMs;
+    }
+
+    public StoreConfig setBlockDurationMs(long blockDurationMs) {
+        if (blockDurationMs <= 0) {
+            throw new IllegalArgumentException("Block duration must be positive: " + blockDurationMs);
+        }
+        this.blockDurationMs = blockDurationMs;
+        return this;
+    }
+
+    public long getRetentionMs() {
+        return retentionMs;
+    }
+
+    public StoreConfig setRetentionMs(long retentionMs) {
+        if (retentionMs <= 0) throw new IllegalArgumentException("Retention must be positive: " + retentionMs);
+        this.retentionMs = retentionMs;
+        return this;
+    }
+
+    /**
+     * @return The retention of the metric: its override if one is set, the default retention otherwise.
+     */
+    public long getRetentionMs(String metric) {
+        return metricRetentionMs.getOrDefault(metric, retentionMs);
+    }
+
+    /**
+     * Keeps the samples of the metric for the given duration instead of the default retention.
+     * Series of the metric already held by a store keep the retention they were created with.
+     */
+    public StoreConfig setRetentionMs(String metric, long retentionMs) {
+        if (retentionMs <= 0) throw new IllegalArgumentException("Retention must be positive: " + retentionMs);
+        metricRetentionMs.put(metric, retentionMs);
+        return this;
+    }
+
+    /**
+     * @return The longest retention of any metric.
+     */
+    public long getMaxRetentionMs() {
+        long max = retentionMs;
+        for (long retention : metricRetentionMs.values()) max = Math.max(max, retention);
+        return max;
+    }
+
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    public StoreConfig setMaxSeries(int maxSeries) {
+        if (maxSeries <= 0) throw new IllegalArgumentException("Series limit must be positive: " + maxSeries);
+        this.maxSeries = maxSeries;
+        return this;
+    }
+
+    public int getMaxSeriesPerMetric() {
+        return maxSeriesPerMetric;
+    }
+
+    public StoreConfig setMaxSeriesPerMetric(int maxSeriesPerMetric) {
+        if (maxSeriesPerMetric <= 0) {
+            throw new IllegalArgumentException("Series limit must be positive: " + maxSeriesPerMetric);
+        }
+        this.maxSeriesPerMetric = maxSeriesPerMetric;
+        return this;
+    }
+
+    /**
+     * @return The series limit of the metric: its override if one is set, the per-metric limit otherwise.
+     */
+    public int getMaxSeriesPerMetric(String metric) {
+        return metricMaxSeries.getOrDefault(metric, maxSeriesPerMetric);
+    }
+
+    /**
+     * Limits the series of the metric to the given number instead of the per-metric limit.
+     * Takes effect for metrics a store has not seen yet.
+     */
+    public StoreConfig setMaxSeriesPerMetric(String metric, int maxSeries) {
+        if (maxSeries <= 0) throw new IllegalArgumentException("Series limit must be positive: " + maxSeries);
+        metricMaxSeries.put(metric, maxSeries);
+        return this;
+    }
+
+    public CardinalityLimitPolicy getCardinalityLimitPolicy() {
+        return cardinalityLimitPolicy;
+    }
+
+    public StoreConfig setCardinalityLimitPolicy(CardinalityLimitPolicy cardinalityLimitPolicy) {
+        if (cardinalityLimitPolicy == null) {
+            throw new IllegalArgumentException("Cardinality limit policy must not be null");
+        }
+        this.cardinalityLimitPolicy = cardinalityLimitPolicy;
+        return this;
+    }
+
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    public StoreConfig setWalEnabled(boolean walEnabled) {
+        this.walEnabled = walEnabled;
+        return this;
+    }
+
+    public long getWalSyncIntervalMs() {
+        return walSyncIntervalMs;
+    }
+
+    public StoreConfig setWalSyncIntervalMs(long walSyncIntervalMs) {
+        if (walSyncIntervalMs <= 0) {
+            throw new IllegalArgumentException("WAL sync interval must be positive: " + walSyncIntervalMs);
+        }
+        this.walSyncIntervalMs = walSyncIntervalMs;
+        return this;
+    }
+
+    public long getWalSyncBytes() {
+        return walSyncBytes;
+    }
+
+    public StoreConfig setWalSyncBytes(long walSyncBytes) {
+        if (walSyncBytes <= 0) throw new IllegalArgumentException("WAL sync size must be positive: " + walSyncBytes);
+        this.walSyncBytes = walSyncBytes;
+        return this;
+    }
+
+    public long getWalSegmentBytes() {
+        return walSegmentBytes;
+    }
+
+    public StoreConfig setWalSegmentBytes(long walSegmentBytes) {
+        if (walSegmentBytes <= 0) {
+            throw new IllegalArgumentException("WAL segment size must be positive: " + walSegmentBytes);
+        }
+        this.walSegmentBytes = walSegmentBytes;
+        return this;
+    }
+
+    public int getIngestQueueCapacity() {
+        return ingestQueueCapacity;
+    }
+
+    /**
+     * Bounds the queue of asynchronous inserts (see {@link TimeSeriesStoreImpl#insertAsync}). It is split
+     * evenly between the ingest threads, each share rounded up to a power of two.
+     */
+    public StoreConfig setIngestQueueCapacity(int ingestQueueCapacity) {
+        if (ingestQueueCapacity <= 0) {
+            throw new IllegalArgumentException("Ingest queue capacity must be positive: " + ingestQueueCapacity);
+        }
+        this.ingestQueueCapacity = ingestQueueCapacity;
+        return this;
+    }
+
+    public int getIngestThreads() {
+        return ingestThreads;
+    }
+
+    public StoreConfig setIngestThreads(int ingestThreads) {
+        if (ingestThreads <= 0) throw new IllegalArgumentException("Ingest threads must be positive: " + ingestThreads);
+        this.ingestThreads = ingestThreads;
+        return this;
+    }
+
+    public OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    public StoreConfig setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        if (overloadPolicy == null) throw new IllegalArgumentException("Overload policy must not be null");
+        this.overloadPolicy = overloadPolicy;
+        return this;
+    }
+
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    public StoreConfig setRecoveryThreads(int recoveryThreads) {
+        if (recoveryThreads <= 0) {
+            throw new IllegalArgumentException("Recovery threads must be positive: " + recoveryThreads);
+        }
+        this.recoveryThreads = recoveryThreads;
+        return this;
+    }
+
+    public boolean isLazyRecovery() {
+        return lazyRecovery;
+    }
+
+    public StoreConfig setLazyRecovery(boolean lazyRecovery) {
+        this.lazyRecovery = lazyRecovery;
+        return this;
+    }
+
+    public long getCheckpointIntervalMs() {
+        return checkpointIntervalMs;
+    }
+
+    public StoreConfig setCheckpointIntervalMs(long checkpointIntervalMs) {
+        if (checkpointIntervalMs <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + checkpointIntervalMs);
+        }
+        this.checkpointIntervalMs = checkpointIntervalMs;
+        return this;
+    }
+
+    public long getQueryCacheBytes() {
+        return queryCacheBytes;
+    }
+
+    /**
+     * Caches query() results per time block within the given heap budget, so repeated queries only
+     * read the open head block from the series. 0 disables the cache.
+     */
+    public StoreConfig setQueryCacheBytes(long queryCacheBytes) {
+        if (queryCacheBytes < 0) {
+            throw new IllegalArgumentException("Query cache size must not be negative: " + queryCacheBytes);
+        }
+        this.queryCacheBytes = queryCacheBytes;
+        return this;
+    }
+
+    public long getCompactionIntervalMs() {
+        return compactionIntervalMs;
+    }
+
+    /**
+     * Sets how often blocks that have ended are compacted: each series' chunks are re-encoded into as few
+     * full chunks as it needs and the block's segment file is rewritten. 0 disables compaction.
+     */
+    public StoreConfig setCompactionIntervalMs(long compactionIntervalMs) {
+        if (compactionIntervalMs < 0) {
+            throw new IllegalArgumentException("Compaction interval must not be negative: " + compactionIntervalMs);
+        }
+        this.compactionIntervalMs = compactionIntervalMs;
+        return this;
+    }
+
+    public long getCompactionBytesPerSecond() {
+        return compactionBytesPerSecond;
+    }
+
+    public StoreConfig setCompactionBytesPerSecond(long compactionBytesPerSecond) {
+        if (compactionBytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Compaction rate must be positive: " + compactionBytesPerSecond);
+        }
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+        return this;
+    }
+
+    public long getSelfMetricsIntervalMs() {
+        return selfMetricsIntervalMs;
+    }
+
+    /**
+     * Makes the store insert its own metrics (see {@link TimeSeriesStoreImpl#getStats()}) as "timeseries.*"
+     * data points at the given interval, so they can be queried and retained like any other metric.
+     */
+    public StoreConfig setSelfMetricsIntervalMs(long selfMetricsIntervalMs) {
+        this.selfMetricsIntervalMs = selfMetricsIntervalMs;
+        return this;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public StoreConfig setShardCount(int shardCount) {
+        if (shardCount <= 0) throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    public long[] getRollupWidthsMs() {
+        return rollupWidthsMs.clone();
+    }
+
+    public StoreConfig setRollupWidthsMs(long... rollupWidthsMs) {
+        long[] widths = rollupWidthsMs.clone();
+        Arrays.sort(widths);
+        for (long width : widths) {
+            if (width <= 0) throw new IllegalArgumentException("Rollup width must be positive: " + width);
+        }
+        this.rollupWidthsMs = widths;
+        return this;
+    }
+
+    public long getOutOfOrderToleranceMs() {
+        return outOfOrderToleranceMs;
+    }
+
+    /**
+     * Rejects samples older than the newest sample of their series by more than the given duration.
+     * Accepted late samples are buffered and merged into the chunks covering them in batches.
+     */
+    public StoreConfig setOutOfOrderToleranceMs(long outOfOrderToleranceMs) {
+        if (outOfOrderToleranceMs < 0) {
+            throw new IllegalArgumentException("Tolerance must not be negative: " + outOfOrderToleranceMs);
+        }
+        this.outOfOrderToleranceMs = outOfOrderToleranceMs;
+        return this;
+    }
+
+    public boolean isOffHeapChunks() {
+        return offHeapChunks;
+    }
+
+    public StoreConfig setOffHeapChunks(boolean offHeapChunks) {
+        this.offHeapChunks = offHeapChunks;
+        return this;
+    }
+
+    public int getQueryParallelism() {
+        return queryParallelism;
+    }
+
+    public StoreConfig setQueryParallelism(int queryParallelism) {
+        if (queryParallelism <= 0) {
+            throw new IllegalArgumentException("Query parallelism must be positive: " + queryParallelism);
+        }
+        this.queryParallelism = queryParallelism;
+        return this;
+    }
+
+    public long getParallelQueryThreshold() {
+        return parallelQueryThreshold;
+    }
+
+    public StoreConfig setParallelQueryThreshold(long parallelQueryThreshold) {
+        if (parallelQueryThreshold <= 0) {
+            throw new IllegalArgumentException("Parallel query threshold must be positive: " + parallelQueryThreshold);
+        }
+        this.parallelQueryThreshold = parallelQueryThreshold;
+        return this;
+    }
+}
@@ -0,0 +1,59 @@
+package com.interview.timeseries;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The store's own instrumentation: striped counters and histograms updated on the hot paths.
+ * Recording costs a few uncontended atomic increments, so it is always on. Single-point inserts are
+ * too short for two clock reads each, so only a random sample of them is timed.
+ */
+final class StoreMetrics {
+
+    // One in this many single-point inserts is timed
+    static final int INSERT_SAMPLE_RATE = 16;
+
+    // Samples accepted and rejected by inserts, single or batched
+    final LongAdder insertedPoints = new LongAdder();
+    final LongAdder rejectedPoints = new LongAdder();
+
+    // Latency of a sample of single-point inserts, in nanoseconds
+    final Histogram insertLatency = new Histogram();
+
+    // Latency of query() and aggregate(), in nanoseconds
+    final Histogram queryLatency = new Histogram();
+
+    // Samples read from series chunks per query; rollup tiers read none
+    final Histogram pointsPerQuery = new Histogram();
+
+    // Asynchronous inserts refused or evicted because the ingestion queue was full
+    final LongAdder ingestRejected = new LongAdder();
+    final LongAdder ingestDropped = new LongAdder();
+
+    // Time producers spent waiting for room in the ingestion queue, in nanoseconds
+    final Histogram ingestBlockedTime = new Histogram();
+
+    // Queued inserts applied per writer batch, i.e. the queue depth each writer found
+    final Histogram ingestBatchSize = new Histogram();
+
+    // Duration of write-ahead log fsyncs, cleanups, segment writes and compactions, in nanoseconds
+    final Histogram walSyncLatency = new Histogram();
+    final Histogram cleanupTime = new Histogram();
+    final Histogram checkpointTime = new Histogram();
+    final Histogram compactionTime = new Histogram();
+
+    // Bytes of chunks re-encoded by compaction
+    final LongAdder compactedBytes = new LongAdder();
+
+    /**
+     * @return true if the calling insert should be timed.
+     */
+    boolean sampleInsert() {
+        return ThreadLocalRandom.current().nextInt(INSERT_SAMPLE_RATE) == 0;
+    }
+
+    void recordQuery(long startNanos, long points) {
+        queryLatency.recordSince(startNanos);
+        pointsPerQuery.record(points);
+    }
+}
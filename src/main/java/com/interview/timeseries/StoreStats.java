@@ -0,0 +1,243 @@
+package com.interview.timeseries;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the store's own metrics, from {@link TimeSeriesStoreImpl#getStats()}. Counters and
+ * histograms cover the time since the store was created; latencies are in nanoseconds.
+ */
+public class StoreStats {
+    private final long insertedPoints;
+    private final long rejectedPoints;
+    private final HistogramSnapshot insertLatency;
+    private final long ingestQueueDepth;
+    private final HistogramSnapshot ingestBatchSize;
+    private final HistogramSnapshot ingestBlockedTime;
+    private final long ingestRejected;
+    private final long ingestDropped;
+    private final HistogramSnapshot queryLatency;
+    private final HistogramSnapshot pointsPerQuery;
+    private final HistogramSnapshot walSyncLatency;
+    private final HistogramSnapshot cleanupTime;
+    private final HistogramSnapshot checkpointTime;
+    private final HistogramSnapshot compactionTime;
+    private final long compactedBytes;
+    private final long queryCacheHits;
+    private final long queryCacheMisses;
+    private final long queryCacheEvictions;
+    private final long queryCacheInvalidations;
+    private final long queryCacheBytes;
+    private final int series;
+    private final Map<Long, Long> blockBytes;
+
+    StoreStats(StoreMetrics metrics, QueryCache queryCache, long ingestQueueDepth, int series,
+               Map<Long, Long> blockBytes) {
+        this.insertedPoints = metrics.insertedPoints.sum();
+        this.rejectedPoints = metrics.rejectedPoints.sum();
+        this.insertLatency = metrics.insertLatency.snapshot();
+        this.ingestQueueDepth = ingestQueueDepth;
+        this.ingestBatchSize = metrics.ingestBatchSize.snapshot();
+        this.ingestBlockedTime = metrics.ingestBlockedTime.snapshot();
+        this.ingestRejected = metrics.ingestRejected.sum();
+        this.ingestDropped = metrics.ingestDropped.sum();
+        this.queryLatency = metrics.queryLatency.snapshot();
+        this.pointsPerQuery = metrics.pointsPerQuery.snapshot();
+        this.walSyncLatency = metrics.walSyncLatency.snapshot();
+        this.cleanupTime = metrics.cleanupTime.snapshot();
+        this.checkpointTime = metrics.checkpointTime.snapshot();
+        this.compactionTime = metrics.compactionTime.snapshot();
+        this.compactedBytes = metrics.compactedBytes.sum();
+        this.queryCacheHits = queryCache.hits();
+        this.queryCacheMisses = queryCache.misses();
+        this.queryCacheEvictions = queryCache.evictions();
+        this.queryCacheInvalidations = queryCache.invalidations();
+        this.queryCacheBytes = queryCache.bytes();
+        this.series = series;
+        this.blockBytes = blockBytes;
+    }
+
+    /**
+     * @return The number of data points accepted by inserts, single or batched.
+     */
+    public long getInsertedPoints() {
+        return insertedPoints;
+    }
+
+    /**
+     * @return The number of data points rejected as too late or by the series limits.
+     */
+    public long getRejectedPoints() {
+        return rejectedPoints;
+    }
+
+    /**
+     * @return The latency of single-point inserts, write-ahead log append included, sampled from one in
+     *         16 inserts.
+     */
+    public HistogramSnapshot getInsertLatency() {
+        return insertLatency;
+    }
+
+    /**
+     * @return The number of asynchronous inserts queued, waiting for the ingest threads.
+     */
+    public long getIngestQueueDepth() {
+        return ingestQueueDepth;
+    }
+
+    /**
+     * @return The number of queued inserts each ingest thread batch applied, that is, the queue depth it found.
+     */
+    public HistogramSnapshot getIngestBatchSize() {
+        return ingestBatchSize;
+    }
+
+    /**
+     * @return The time asynchronous inserts waited for room in a full ingestion queue.
+     */
+    public HistogramSnapshot getIngestBlockedTime() {
+        return ingestBlockedTime;
+    }
+
+    /**
+     * @return The number of asynchronous inserts refused because the ingestion queue was full.
+     */
+    public long getIngestRejected() {
+        return ingestRejected;
+    }
+
+    /**
+     * @return The number of queued asynchronous inserts evicted to make room for newer ones.
+     */
+    public long getIngestDropped() {
+        return ingestDropped;
+    }
+
+    /**
+     * @return The latency of query() and aggregate() calls.
+     */
+    public HistogramSnapshot getQueryLatency() {
+        return queryLatency;
+    }
+
+    /**
+     * @return The number of samples read per query, query cursors included. Aggregations answered
+     *         from rollup tiers read none.
+     */
+    public HistogramSnapshot getPointsPerQuery() {
+        return pointsPerQuery;
+    }
+
+    /**
+     * @return The duration of write-ahead log fsyncs.
+     */
+    public HistogramSnapshot getWalSyncLatency() {
+        return walSyncLatency;
+    }
+
+    /**
+     * @return The duration of cleanups dropping expired blocks.
+     */
+    public HistogramSnapshot getCleanupTime() {
+        return cleanupTime;
+    }
+
+    /**
+     * @return The duration of checkpoints writing changed blocks to their segment files.
+     */
+    public HistogramSnapshot getCheckpointTime() {
+        return checkpointTime;
+    }
+
+    /**
+     * @return The duration of compactions, throttling included.
+     */
+    public HistogramSnapshot getCompactionTime() {
+        return compactionTime;
+    }
+
+    /**
+     * @return The encoded bytes of the chunks compaction wrote in place of less compact ones.
+     */
+    public long getCompactedBytes() {
+        return compactedBytes;
+    }
+
+    /**
+     * @return The number of time blocks of query() calls served from the query cache.
+     */
+    public long getQueryCacheHits() {
+        return queryCacheHits;
+    }
+
+    /**
+     * @return The number of time blocks of query() calls the query cache did not hold, read from the series.
+     */
+    public long getQueryCacheMisses() {
+        return queryCacheMisses;
+    }
+
+    /**
+     * @return The number of query cache entries evicted to stay within its budget.
+     */
+    public long getQueryCacheEvictions() {
+        return queryCacheEvictions;
+    }
+
+    /**
+     * @return The number of query cache entries dropped because a late insert or cleanup changed their block.
+     */
+    public long getQueryCacheInvalidations() {
+        return queryCacheInvalidations;
+    }
+
+    /**
+     * @return The estimated heap bytes held by the query cache.
+     */
+    public long getQueryCacheBytes() {
+        return queryCacheBytes;
+    }
+
+    /**
+     * @return The number of series held.
+     */
+    public int getSeries() {
+        return series;
+    }
+
+    /**
+     * @return Block start time -> estimated bytes of sample data held in the block, sealed chunks at their
+     *         encoded size and other samples at 16 bytes each, in time order.
+     */
+    public Map<Long, Long> getBlockBytes() {
+        return blockBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreStats{" +
+                "insertedPoints=" + insertedPoints +
+                ", rejectedPoints=" + rejectedPoints +
+                ", insertLatency=" + insertLatency +
+                ", ingestQueueDepth=" + ingestQueueDepth +
+                ", ingestBatchSize=" + ingestBatchSize +
+                ", ingestBlockedTime=" + ingestBlockedTime +
+                ", ingestRejected=" + ingestRejected +
+                ", ingestDropped=" + ingestDropped +
+                ", queryLatency=" + queryLatency +
+                ", pointsPerQuery=" + pointsPerQuery +
+                ", walSyncLatency=" + walSyncLatency +
+                ", cleanupTime=" + cleanupTime +
+                ", checkpointTime=" + checkpointTime +
+                ", compactionTime=" + compactionTime +
+                ", compactedBytes=" + compactedBytes +
+                ", queryCacheHits=" + queryCacheHits +
+                ", queryCacheMisses=" + queryCacheMisses +
+                ", queryCacheEvictions=" + queryCacheEvictions +
+                ", queryCacheInvalidations=" + queryCacheInvalidations +
+                ", queryCacheBytes=" + queryCacheBytes +
+                ", series=" + series +
+                ", blockBytes=" + blockBytes +
+                '}';
+    }
+}
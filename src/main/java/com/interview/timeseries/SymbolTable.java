@@ -0,0 +1,63 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Store-wide dictionary of metric names and tag keys and values. Each distinct string is held once
+ * and given a dense int ID, so series keys share string instances and compare by ID.
+ * Symbols are never removed; like series IDs, their IDs are never reused.
+ */
+final class SymbolTable {
+
+    static final int NONE = -1;
+
+    // Stores symbol -> ID
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Stores ID -> symbol; grown under this, with each entry written before its ID is published
+    private volatile String[] symbols = new String[256];
+
+    // Number of IDs assigned; guarded by this
+    private int size;
+
+    /**
+     * Returns the ID of the string, assigning one if it is new.
+     */
+    int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id != null) return id;
+            String[] current = symbols;
+            if (size == current.length) current = symbols = Arrays.copyOf(current, size * 2);
+            current[size] = symbol;
+            ids.put(symbol, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @return The ID of the string, or {@link #NONE} if it was never interned.
+     */
+    int find(String symbol) {
+        Integer id = ids.get(symbol);
+        return id == null ? NONE : id;
+    }
+
+    /**
+     * @return The string with the given ID, as first interned.
+     */
+    String symbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * @return The number of distinct symbols.
+     */
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,96 @@
+package com.interview.timeseries;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The metric and tag filters of a query, resolved to symbol IDs once per query, so that index
+ * lookups and matching each candidate series compare ints instead of strings.
+ * A filter with an empty value matches series without the tag, mirroring {@link DataPoint#getTag(String)}.
+ */
+final class TagFilter {
+
+    // Value ID of a filter that matches an absent or empty tag
+    static final int ABSENT = -2;
+
+    private final int metricId;
+    private final int[] keyIds;
+    private final int[] valueIds;
+    private final int emptyValueId;
+
+    private TagFilter(int metricId, int[] keyIds, int[] valueIds, int emptyValueId) {
+        this.metricId = metricId;
+        this.keyIds = keyIds;
+        this.valueIds = valueIds;
+        this.emptyValueId = emptyValueId;
+    }
+
+    /**
+     * Resolves the filters against the symbol table. Strings never interned cannot match any series.
+     *
+     * @return the compiled filter, or null if no series can match.
+     */
+    static TagFilter compile(SymbolTable symbols, String metric, Map<String, String> tagFilters) {
+        int metricId = symbols.find(metric);
+        if (metricId == SymbolTable.NONE) return null;
+        int size = tagFilters == null ? 0 : tagFilters.size();
+        int[] keyIds = new int[size];
+        int[] valueIds = new int[size];
+        int n = 0;
+        if (tagFilters != null) {
+            for (Map.Entry<String, String> filter : tagFilters.entrySet()) {
+                int keyId = symbols.find(filter.getKey());
+                if (filter.getValue().isEmpty()) {
+                    // No series has a tag key that was never interned, so the filter always holds
+                    if (keyId == SymbolTable.NONE) continue;
+                    keyIds[n] = keyId;
+                    valueIds[n++] = ABSENT;
+                } else {
+                    int valueId = symbols.find(filter.getValue());
+                    if (keyId == SymbolTable.NONE || valueId == SymbolTable.NONE) return null;
+                    keyIds[n] = keyId;
+                    valueIds[n++] = valueId;
+                }
+            }
+        }
+        return new TagFilter(metricId, Arrays.copyOf(keyIds, n), Arrays.copyOf(valueIds, n), symbols.find(""));
+    }
+
+    int getMetricId() {
+        return metricId;
+    }
+
+    /**
+     * @return The number of tag filters.
+     */
+    int size() {
+        return keyIds.length;
+    }
+
+    int keyId(int i) {
+        return keyIds[i];
+    }
+
+    /**
+     * @return The value ID the i-th filter requires, or {@link #ABSENT}.
+     */
+    int valueId(int i) {
+        return valueIds[i];
+    }
+
+    /**
+     * Returns true if the series has the filtered metric and every filter matches its tags.
+     */
+    boolean matches(SeriesKey key) {
+        if (key.getMetricId() != metricId) return false;
+        for (int i = 0; i < keyIds.length; i++) {
+            int actual = key.valueIdOf(keyIds[i]);
+            if (valueIds[i] == ABSENT) {
+                if (actual != SymbolTable.NONE && actual != emptyValueId) return false;
+            } else if (actual != valueIds[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+package com.interview.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Inverted index from metric names and tag key=value pairs to sorted posting lists of series IDs.
+ * Metrics and tags are keyed by their symbol IDs. Multi-tag filters are answered by intersecting
+ * posting lists, smallest first.
+ */
+final class TagIndex {
+
+    // Stores metric ID -> index of that metric's series
+    private final ConcurrentMap<Integer, MetricIndex> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a series to the posting lists of its metric and each of its tags. The key must be canonical.
+     */
+    void add(int seriesId, SeriesKey key) {
+        MetricIndex index = metrics.computeIfAbsent(key.getMetricId(), m -> new MetricIndex());
+        index.all.add(seriesId);
+        for (int i = 0; i < key.tagCount(); i++) {
+            index.postings(key.tagKeyId(i), key.tagValueId(i)).add(seriesId);
+        }
+    }
+
+    /**
+     * Removes a series from every posting list it was added to.
+     * Empty posting lists are kept; they are cheap and are likely to be reused.
+     */
+    void remove(int seriesId, SeriesKey key) {
+        MetricIndex index = metrics.get(key.getMetricId());
+        if (index == null) return;
+        index.all.remove(seriesId);
+        for (int i = 0; i < key.tagCount(); i++) {
+            index.postings(key.tagKeyId(i), key.tagValueId(i)).remove(seriesId);
+        }
+    }
+
+    /**
+     * Returns the sorted IDs of series of the filter's metric that carry every tag it requires.
+     * Filters matching an absent tag cannot be answered from postings and must be checked
+     * by the caller against the series key.
+     */
+    int[] lookup(TagFilter filter) {
+        MetricIndex index = metrics.get(filter.getMetricId());
+        if (index == null) return new int[0];
+
+        List<int[]> terms = new ArrayList<>(filter.size());
+        for (int i = 0; i < filter.size(); i++) {
+            if (filter.valueId(i) == TagFilter.ABSENT) continue;
+            PostingList postings = index.byTag.get(term(filter.keyId(i), filter.valueId(i)));
+            if (postings == null) return new int[0];
+            terms.add(postings.snapshot());
+        }
+        if (terms.isEmpty()) return index.all.snapshot();
+
+        // Start from the most selective term so every intersection is bounded by it
+        terms.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = terms.get(0);
+        for (int i = 1; i < terms.size() && result.length > 0; i++) {
+            result = PostingList.intersect(result, terms.get(i));
+        }
+        return result;
+    }
+
+    void clear() {
+        metrics.clear();
+    }
+
+    /**
+     * @return The map key of a tag key=value pair.
+     */
+    private static long term(int keyId, int valueId) {
+        return (long) keyId << 32 | (valueId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Posting lists of a single metric.
+     */
+    private static final class MetricIndex {
+        private final PostingList all = new PostingList();
+
+        // Stores tag key=value term -> posting list
+        private final ConcurrentMap<Long, PostingList> byTag = new ConcurrentHashMap<>();
+
+        PostingList postings(int keyId, int valueId) {
+            return byTag.computeIfAbsent(term(keyId, valueId), t -> new PostingList());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.interview.timeseries;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Network front end of a store, so clients need not embed it: a TCP endpoint taking samples in a line
+ * protocol, and an HTTP endpoint answering queries and aggregations in JSON and taking line-protocol
+ * writes. See {@link LineProtocolParser} for the protocol and {@link HttpEndpoint} for the requests.
+ * Line-protocol connections are multiplexed over a small pool of NIO selector threads, so thousands of
+ * clients can stay connected at once.
+ *
+ * The server does not own the store: close the server before shutting the store down.
+ */
+public class TimeSeriesServer implements AutoCloseable {
+
+    private final TimeSeriesStore store;
+    private final ServerConfig config;
+
+    // Samples parsed and lines skipped as malformed, over both endpoints
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    private LineProtocolServer lineServer;
+    private HttpEndpoint httpEndpoint;
+
+    public TimeSeriesServer(TimeSeriesStore store, ServerConfig config) {
+        this.store = store;
+        this.config = config;
+    }
+
+    /**
+     * Binds both endpoints and starts serving.
+     *
+     * @throws IOException if a port cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (lineServer != null) throw new IllegalStateException("Server already started");
+        lineServer = new LineProtocolServer(store, new InetSocketAddress(config.getBindAddress(), config.getLinePort()),
+                config.getSelectorThreads(), config.getReadBufferBytes(), lines, malformed);
+        try {
+            httpEndpoint = new HttpEndpoint(store, new InetSocketAddress(config.getBindAddress(), config.getHttpPort()),
+                    config.getHttpThreads(), config.getReadBufferBytes(), lines, malformed);
+        } catch (IOException e) {
+            lineServer.close();
+            lineServer = null;
+            throw e;
+        }
+        lineServer.start();
+        httpEndpoint.start();
+    }
+
+    /**
+     * @return The port the line-protocol endpoint listens on, once started.
+     */
+    public synchronized int getLinePort() {
+        return lineServer.getPort();
+    }
+
+    /**
+     * @return The port the HTTP endpoint listens on, once started.
+     */
+    public synchronized int getHttpPort() {
+        return httpEndpoint.getPort();
+    }
+
+    /**
+     * @return The number of line-protocol connections open.
+     */
+    public synchronized int getConnections() {
+        return lineServer == null ? 0 : lineServer.getConnections();
+    }
+
+    /**
+     * @return The number of samples read over either endpoint.
+     */
+    public long getLinesReceived() {
+        return lines.sum();
+    }
+
+    /**
+     * @return The number of lines skipped as malformed over either endpoint.
+     */
+    public long getMalformedLines() {
+        return malformed.sum();
+    }
+
+    /**
+     * Stops both endpoints. Samples already read from a connection are inserted before it is closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (httpEndpoint != null) httpEndpoint.close();
+        if (lineServer != null) lineServer.close();
+    }
+}
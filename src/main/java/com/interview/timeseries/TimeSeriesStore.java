@@ -1,7 +1,12 @@
 package com.interview.timeseries;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for the Time Series Store.
@@ -18,6 +23,62 @@ public interface TimeSeriesStore {
      */
     boolean insert(DataPoint datapoint);
 
+    /**
+     * Inserts a batch of data points, which may belong to different series.
+     *
+     * @param dataPoints The data points to insert.
+     * @return true if every insertion was successful, false otherwise.
+     */
+    default boolean insertBatch(Collection<DataPoint> dataPoints) {
+        boolean success = true;
+        for (DataPoint dataPoint : dataPoints) {
+            success &= insert(dataPoint);
+        }
+        return success;
+    }
+
+    /**
+     * Inserts a batch of samples of a single series, given as parallel timestamp and value arrays.
+     *
+     * @param metric The metric name.
+     * @param tags The tags of the series (can be null).
+     * @param timestamps The sample timestamps in milliseconds since the epoch.
+     * @param values The sample values; must have the same length as timestamps.
+     * @return true if every insertion was successful, false otherwise.
+     */
+    default boolean insertBatch(String metric, Map<String, String> tags, long[] timestamps, double[] values) {
+        if (timestamps.length != values.length) {
+            throw new IllegalArgumentException("timestamps and values differ in length");
+        }
+        boolean success = true;
+        for (int i = 0; i < timestamps.length; i++) {
+            success &= insert(new DataPoint(timestamps[i], metric, values[i], tags));
+        }
+        return success;
+    }
+
+    /**
+     * Inserts a single data point asynchronously. Implementations with an ingestion queue should override
+     * this to return before the point is applied.
+     *
+     * @param dataPoint The data point to insert.
+     * @return A future completing with true if the insertion was successful, false otherwise; it fails if
+     *         the store is overloaded and refused the point.
+     */
+    default CompletableFuture<Boolean> insertAsync(DataPoint dataPoint) {
+        return CompletableFuture.completedFuture(insert(dataPoint));
+    }
+
+    /**
+     * Inserts a batch of data points asynchronously, as {@link #insertAsync(DataPoint)} does.
+     *
+     * @param dataPoints The data points to insert.
+     * @return A future completing with true if every insertion was successful, false otherwise.
+     */
+    default CompletableFuture<Boolean> insertBatchAsync(Collection<DataPoint> dataPoints) {
+        return CompletableFuture.completedFuture(insertBatch(dataPoints));
+    }
+
     /**
      * Queries data points matching the given metric and tag filters within the specified time range.
      *
@@ -29,6 +90,78 @@ public interface TimeSeriesStore {
      */
     List<DataPoint> query(String metric, long startTime, long endTime, Map<String, String> tagFilters);
 
+    /**
+     * Opens a cursor over the data points matching the given metric and tag filters within the specified
+     * time range, in timestamp order. Implementations should override this to produce data points lazily.
+     *
+     * @param metric The metric name to query.
+     * @param startTime The start of the time range (inclusive), in milliseconds.
+     * @param endTime The end of the time range (exclusive), in milliseconds.
+     * @param tagFilters Optional filters on tags (can be null or empty).
+     * @param offset The number of leading data points to skip.
+     * @param limit The maximum number of data points to return.
+     * @return A cursor over the matching data points; must be closed.
+     */
+    default QueryCursor queryCursor(String metric, long startTime, long endTime, Map<String, String> tagFilters,
+                                    long offset, long limit) {
+        Iterator<DataPoint> results = query(metric, startTime, endTime, tagFilters).stream()
+                .skip(Math.max(0, offset)).limit(Math.max(0, limit)).iterator();
+        return new QueryCursor() {
+            private boolean closed;
+
+            @Override
+            public boolean hasNext() {
+                return !closed && results.hasNext();
+            }
+
+            @Override
+            public DataPoint next() {
+                if (closed) throw new NoSuchElementException();
+                return results.next();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+            }
+        };
+    }
+
+    /**
+     * Opens a cursor over all data points matching the given metric and tag filters within the specified
+     * time range, in timestamp order.
+     *
+     * @return A cursor over the matching data points; must be closed.
+     */
+    default QueryCursor queryCursor(String metric, long startTime, long endTime, Map<String, String> tagFilters) {
+        return queryCursor(metric, startTime, endTime, tagFilters, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Aggregates data points matching the given metric and tag filters within the specified time range
+     * into time buckets, optionally split into groups by tag values.
+     * Implementations should override this to aggregate without materializing the matching data points.
+     *
+     * @param metric The metric name to query.
+     * @param startTime The start of the time range (inclusive), in milliseconds.
+     * @param endTime The end of the time range (exclusive), in milliseconds.
+     * @param tagFilters Optional filters on tags (can be null or empty).
+     * @param bucketWidthMs The bucket width in milliseconds; buckets are aligned to multiples of it since the epoch.
+     * @param aggregator The function applied to the values of each bucket.
+     * @param groupBy Optional tag keys to group series by (can be null or empty for a single group).
+     * @return One result per group, holding the non-empty buckets in time order.
+     * @throws IllegalArgumentException if the bucket width is not positive or the range spans too many buckets.
+     */
+    default List<AggregateSeries> aggregate(String metric, long startTime, long endTime, Map<String, String> tagFilters,
+                                            long bucketWidthMs, Aggregator aggregator, List<String> groupBy) {
+        if (startTime >= endTime) return new ArrayList<>();
+        GroupedAggregation groups = new GroupedAggregation(startTime, endTime, bucketWidthMs, aggregator, groupBy);
+        for (DataPoint dp : query(metric, startTime, endTime, tagFilters)) {
+            groups.accumulatorFor(dp.getTags()).accept(dp.getTimestamp(), dp.getValue());
+        }
+        return groups.results(metric);
+    }
+
     /**
      * Initializes the store, including loading data from disk if available.
      * Should be called once before any read/write operations.
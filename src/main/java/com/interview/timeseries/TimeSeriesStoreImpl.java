@@ -1,68 +1,599 @@
 package com.interview.timeseries;
 
+import com.google.common.util.concurrent.RateLimiter;
+
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread-safe, persistent implementation of the TimeSeriesStore interface.
- * Supports in-memory storage with periodic cleanup of expired entries and disk persistence via CSV.
+ * Data is organized per series (metric + tag set) so queries only visit the series of the requested metric.
+ * Series are partitioned into shards by key hash, each with its own index and write-ahead log, so concurrent
+ * writers to different series do not contend. Within a shard, samples are held in fixed-duration time blocks,
+ * and expiry drops whole blocks once they fall out of the retention period of their metric.
+ * Supports in-memory storage with periodic cleanup of expired entries and disk persistence via
+ * binary, memory-mapped segment files, one per time block. Inserts are logged to a write-ahead log, so data inserted since the last checkpoint survives a crash.
  */
 public class TimeSeriesStoreImpl implements TimeSeriesStore {
 
-    // Stores timestamp -> List of DataPoints, sorted by timestamp
-    private final ConcurrentNavigableMap<Long, List<DataPoint>> timeSeriesMap = new ConcurrentSkipListMap<>();
+    // Partitions of the series, picked by series key hash
+    private final Shard[] shards;
+
+    // Source of series IDs, shared by all shards; IDs are never reused
+    private final AtomicInteger nextSeriesId = new AtomicInteger();
+
+    // Dictionary of metric names and tag keys and values, shared by all shards
+    private final SymbolTable symbols = new SymbolTable();
+
+    // Series limits and per-metric cardinality estimates
+    private final CardinalityLimiter cardinality;
+
+    // Counters and histograms of the store's own operations
+    private final StoreMetrics metrics = new StoreMetrics();
+
+    // Per-block results of past query() calls; disabled unless the config gives it a budget
+    private final QueryCache queryCache;
+
+    // Asynchronous inserts waiting for the ingest writer threads
+    private final IngestQueue ingestQueue;
+
+    // Stats the last self-metrics were computed from, for per-interval percentiles; guarded by this
+    private StoreStats lastStats;
+
+    // Bucket widths of the rollup tiers every series maintains, finest first
+    private final long[] rollupWidthsMs;
+
+    private final StoreConfig config;
 
-    // Path to the persistence CSV file
-    private final String persistenceFile = "data_store.csv";
+    // Path to the CSV file written by earlier versions; imported once, then replaced by segments
+    private final Path persistenceFile;
+
+    // Directory holding one segment file per time block
+    private final Path segmentDirectory;
+
+    // Blocks to rewrite at the next checkpoint that the write-ahead log does not track
+    // (replayed or imported data, partially expired blocks, or all inserts when the WAL is disabled)
+    private final Set<Long> pendingBlocks = ConcurrentHashMap.newKeySet();
+
+    // Directory holding one write-ahead log directory per shard
+    private final Path walDirectory;
+
+    // Write-ahead log directories found at startup that no shard appends to (written with a different
+    // shard count, or before sharding); deleted once their replayed data is checkpointed
+    private final List<Path> staleWalDirectories = new CopyOnWriteArrayList<>();
+
+    // Completes once every segment is loaded; only pending while a lazy recovery runs in the background
+    private volatile CompletableFuture<Void> recovery = CompletableFuture.completedFuture(null);
+
+    // Queries starting before this time must wait for the background recovery to finish
+    private volatile long recoveredFrom = Long.MIN_VALUE;
+
+    // Time from the start of initialize() until all persisted data was loaded, or -1 before that
+    private volatile long recoveryTimeMs = -1;
+
+    // Runs large queries as fork-join tasks; threads are only started once a query needs them
+    private final ForkJoinPool queryPool;
 
     // Background cleaner for expired entries
     private final ScheduledExecutorService cleanerExecuter = Executors.newSingleThreadScheduledExecutor();
 
-    // Data older than this duration (24 hours) will be removed
-    private final long EXPIRY_DURATION_MS = 24L * 60 * 60 * 1000;
+    // How often blocks that fell out of retention are dropped
+    private static final long CLEANUP_INTERVAL_MS = 60_000;
+
+    // Runs compactions, which are throttled and may take long, apart from cleanups and checkpoints
+    private final ScheduledExecutorService compactionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "compaction");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Paces compaction to the configured bytes per second
+    private final RateLimiter compactionLimiter;
 
     // Lock for synchronizing file operations
     private final Object diskLock = new Object();
 
+    public TimeSeriesStoreImpl() {
+        this(new StoreConfig());
+    }
+
+    public TimeSeriesStoreImpl(StoreConfig config) {
+        this.config = config;
+        this.persistenceFile = config.getDataDirectory().resolve("data_store.csv");
+        this.segmentDirectory = config.getDataDirectory().resolve("segments");
+        this.walDirectory = config.getDataDirectory().resolve("wal");
+        this.rollupWidthsMs = config.getRollupWidthsMs();
+        AtomicInteger queryThreads = new AtomicInteger();
+        this.queryPool = new ForkJoinPool(Math.max(1, config.getQueryParallelism()), pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("query-" + queryThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+        this.cardinality = new CardinalityLimiter(config);
+        this.queryCache = new QueryCache(config.getQueryCacheBytes(), config.getBlockDurationMs());
+        this.compactionLimiter = RateLimiter.create(config.getCompactionBytesPerSecond());
+        this.ingestQueue = new IngestQueue(config.getIngestQueueCapacity(), config.getIngestThreads(),
+                config.getOverloadPolicy(), this::applyQueued, metrics);
+        this.shards = new Shard[Math.max(1, config.getShardCount())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(nextSeriesId, symbols, cardinality, walDirectory.resolve("shard-" + i),
+                    config.getBlockDurationMs(), rollupWidthsMs, config.isOffHeapChunks(), config::getRetentionMs);
+        }
+    }
+
     /**
-     * Inserts a new DataPoint into the in-memory store.
-     * Avoids duplicates and ensures thread-safe writes.
+     * Inserts a new DataPoint into the in-memory store and logs it to the write-ahead log.
+     * Avoids duplicates and ensures thread-safe writes. Points older than the newest point of their
+     * series by more than the configured out-of-order tolerance are rejected, as are points that would
+     * create a series over a series limit, subject to the configured {@link CardinalityLimitPolicy}.
+     *
+     * @return false if the point was rejected, or could not be logged and is not durable.
      */
     @Override
     public boolean insert(DataPoint dataPoint) {
-        return timeSeriesMap.compute(dataPoint.getTimestamp(), (k, v) -> {
-            if (v == null) v = new CopyOnWriteArrayList<>();
-            if (!v.contains(dataPoint)) v.add(dataPoint);
-            return v;
-        }).contains(dataPoint);
+        boolean timed = metrics.sampleInsert();
+        long start = timed ? System.nanoTime() : 0;
+        long timestamp = dataPoint.getTimestamp();
+        double value = dataPoint.getValue();
+        SeriesRef series = touch(SeriesKey.probe(dataPoint.getMetric(), dataPoint.getTags()), timestamp);
+        if (series == null || timestamp < series.acceptedFrom(config.getOutOfOrderToleranceMs())) {
+            metrics.rejectedPoints.increment();
+            return false;
+        }
+        series.insert(timestamp, value);
+        queryCache.invalidate(timestamp);
+        metrics.insertedPoints.increment();
+        Shard shard = shardFor(series.getKey());
+
+        // Logged after the in-memory apply, so a checkpoint taken after rolling the WAL always sees
+        // every sample that was logged to an older segment
+        WriteAheadLog log = shard.getWal();
+        try {
+            if (log == null) {
+                pendingBlocks.add(blockStart(timestamp));
+            } else {
+                log.append(series, timestamp, value);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (timed) metrics.insertLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Inserts a batch of DataPoints. Points are grouped by series, sorted by timestamp within each
+     * series, and applied and logged with one lock acquisition per series instead of one per point.
+     *
+     * @return false if some points were rejected, or could not be logged.
+     */
+    @Override
+    public boolean insertBatch(Collection<DataPoint> dataPoints) {
+        boolean success = true;
+        for (Map.Entry<SeriesKey, SampleBuffer> group : groupBySeries(dataPoints).entrySet()) {
+            SampleBuffer samples = group.getValue();
+            success &= insertAll(group.getKey(), samples.timestamps(), samples.values(), samples.size());
+        }
+        return success;
+    }
+
+    /**
+     * @return the samples of the data points by series, each sorted by timestamp.
+     */
+    private static Map<SeriesKey, SampleBuffer> groupBySeries(Collection<DataPoint> dataPoints) {
+        Map<SeriesKey, SampleBuffer> groups = new HashMap<>();
+        for (DataPoint dp : dataPoints) {
+            groups.computeIfAbsent(SeriesKey.probe(dp.getMetric(), dp.getTags()), k -> new SampleBuffer())
+                    .add(dp.getTimestamp(), dp.getValue());
+        }
+        for (SampleBuffer samples : groups.values()) samples.sortByTime();
+        return groups;
+    }
+
+    /**
+     * Inserts a batch of samples of one series without creating a DataPoint per sample.
+     *
+     * @return false if some samples were rejected, or could not be logged.
+     */
+    @Override
+    public boolean insertBatch(String metric, Map<String, String> tags, long[] timestamps, double[] values) {
+        if (timestamps.length != values.length) {
+            throw new IllegalArgumentException("timestamps and values differ in length");
+        }
+        if (timestamps.length == 0) return true;
+        SeriesKey key = SeriesKey.probe(metric, tags);
+        if (SampleBuffer.isSorted(timestamps, 0, timestamps.length)) {
+            return insertAll(key, timestamps, values, timestamps.length);
+        }
+        SampleBuffer samples = new SampleBuffer(timestamps.length);
+        for (int i = 0; i < timestamps.length; i++) samples.add(timestamps[i], values[i]);
+        samples.sortByTime();
+        return insertAll(key, samples.timestamps(), samples.values(), samples.size());
+    }
+
+    /**
+     * Applies and logs the first count samples of the given columns, sorted by timestamp, to one series.
+     * Each sample is judged against the newest sample before it, in the series or earlier in the batch,
+     * as one insert() per sample would judge it. Sorted, the samples too late form a prefix, which is skipped.
+     */
+    private boolean insertAll(SeriesKey key, long[] timestamps, double[] values, int count) {
+        // Touched at the oldest sample, so the series' newest timestamp is still the one before the batch
+        SeriesRef series = touch(key, timestamps[0]);
+        if (series == null) {
+            metrics.rejectedPoints.add(count);
+            return false;
+        }
+        long newest = series.acceptedFrom(0);
+        // Sorted, so an earlier sample of the batch never makes a later one late; only the series can
+        long acceptedFrom = SeriesRef.acceptedFrom(newest, config.getOutOfOrderToleranceMs());
+        int from = 0;
+        while (from < count && timestamps[from] < acceptedFrom) from++;
+        if (from == count) {
+            metrics.rejectedPoints.add(count);
+            return false;
+        }
+        // Retired by cleanup in the meantime: start over on the fresh series
+        if (!series.touch(timestamps[count - 1])) return insertAll(key, timestamps, values, count);
+        metrics.rejectedPoints.add(from);
+        return applyAll(series, timestamps, values, from, count) && from == 0;
+    }
+
+    /**
+     * Applies and logs the samples in [from, to) of the given columns, sorted by timestamp, to a series
+     * already touched at their newest timestamp.
+     *
+     * @return false if the samples could not be logged.
+     */
+    private boolean applyAll(SeriesRef series, long[] timestamps, double[] values, int from, int to) {
+        Shard shard = shardFor(series.getKey());
+        shard.applyAll(series, timestamps, values, from, to);
+        queryCache.invalidate(timestamps, from, to);
+        metrics.insertedPoints.add(to - from);
+
+        WriteAheadLog log = shard.getWal();
+        if (log == null) {
+            long last = Long.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                long block = blockStart(timestamps[i]);
+                if (block != last) pendingBlocks.add(last = block);
+            }
+            return true;
+        }
+        try {
+            log.appendBatch(series, timestamps, values, from, to);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Queues a data point to be inserted by the ingest writer threads, which apply queued points in
+     * batches, one lock acquisition and log append per series. Points of one series are applied in the
+     * order they were queued. When the queue is full, the configured {@link OverloadPolicy} decides.
+     * The future is completed on an ingest thread, so callbacks chained to it without an executor
+     * should be short.
+     *
+     * @return a future completing with what {@link #insert(DataPoint)} would return, or failing with a
+     *         {@link RejectedExecutionException} if the point was refused or evicted by the overload policy.
+     */
+    @Override
+    public CompletableFuture<Boolean> insertAsync(DataPoint dataPoint) {
+        SeriesKey key = SeriesKey.probe(dataPoint.getMetric(), dataPoint.getTags());
+        return ingestQueue.submit(new IngestQueue.Request(key, dataPoint), key.hashCode());
+    }
+
+    /**
+     * Queues a batch of data points to be inserted as {@link #insertBatch(Collection)} does, on the ingest
+     * writer threads, subject to the {@link OverloadPolicy} like {@link #insertAsync(DataPoint)}. The batch
+     * is split by series, and each series' share is queued behind the inserts of that series queued before.
+     *
+     * @return a future completing with whether every point was accepted and logged, or failing if the
+     *         share of some series was refused or evicted.
+     */
+    @Override
+    public CompletableFuture<Boolean> insertBatchAsync(Collection<DataPoint> dataPoints) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Map.Entry<SeriesKey, SampleBuffer> group : groupBySeries(dataPoints).entrySet()) {
+            SeriesKey key = group.getKey();
+            futures.add(ingestQueue.submit(new IngestQueue.Request(key, group.getValue()), key.hashCode()));
+        }
+        if (futures.isEmpty()) return CompletableFuture.completedFuture(true);
+        if (futures.size() == 1) return futures.get(0);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> futures.stream().allMatch(CompletableFuture::join));
+    }
+
+    /**
+     * Applies a batch of queued inserts on an ingest thread. Requests are grouped by series, and each
+     * sample is judged against the out-of-order tolerance in queue order, against the newest sample
+     * before it as one insert() per sample would be; the accepted samples are sorted by timestamp and
+     * applied and logged in one call per series. Each future completes with whether all of its own
+     * samples were accepted.
+     */
+    private void applyQueued(List<IngestQueue.Request> requests) {
+        Map<SeriesKey, List<IngestQueue.Request>> groups = new LinkedHashMap<>();
+        for (IngestQueue.Request request : requests) {
+            groups.computeIfAbsent(request.key, k -> new ArrayList<>()).add(request);
+        }
+        long tolerance = config.getOutOfOrderToleranceMs();
+        SampleBuffer accepted = new SampleBuffer();
+        for (Map.Entry<SeriesKey, List<IngestQueue.Request>> group : groups.entrySet()) {
+            List<IngestQueue.Request> queued = group.getValue();
+            // Whether each request had all of its samples accepted
+            boolean[] whole = new boolean[queued.size()];
+            SeriesRef series;
+            long newest;
+            do {
+                // Touched at the first queued sample, so the series' newest timestamp is still the one before
+                series = touch(group.getKey(), queued.get(0).oldestTimestamp());
+                if (series == null) break;
+                newest = series.acceptedFrom(0);
+                accepted.clear();
+                for (int r = 0; r < queued.size(); r++) {
+                    IngestQueue.Request request = queued.get(r);
+                    if (request.point != null) {
+                        long timestamp = request.point.getTimestamp();
+                        whole[r] = timestamp >= SeriesRef.acceptedFrom(newest, tolerance);
+                        if (whole[r]) {
+                            accepted.add(timestamp, request.point.getValue());
+                            newest = Math.max(newest, timestamp);
+                        }
+                    } else {
+                        long[] timestamps = request.samples.timestamps();
+                        double[] values = request.samples.values();
+                        whole[r] = true;
+                        for (int i = 0; i < request.size(); i++) {
+                            if (timestamps[i] >= SeriesRef.acceptedFrom(newest, tolerance)) {
+                                accepted.add(timestamps[i], values[i]);
+                                newest = Math.max(newest, timestamps[i]);
+                            } else {
+                                whole[r] = false;
+                            }
+                        }
+                    }
+                }
+                // Retired by cleanup in the meantime: judge again against the fresh series
+            } while (accepted.size() > 0 && !series.touch(newest));
+
+            int queuedSamples = 0;
+            for (IngestQueue.Request request : queued) queuedSamples += request.size();
+            if (series == null) {
+                metrics.rejectedPoints.add(queuedSamples);
+                for (IngestQueue.Request request : queued) request.future.complete(false);
+                continue;
+            }
+            metrics.rejectedPoints.add(queuedSamples - accepted.size());
+
+            boolean logged = true;
+            if (accepted.size() > 0) {
+                accepted.sortByTime();
+                logged = applyAll(series, accepted.timestamps(), accepted.values(), 0, accepted.size());
+            }
+            for (int r = 0; r < queued.size(); r++) queued.get(r).future.complete(whole[r] && logged);
+        }
+    }
+
+    /**
+     * Returns the live series for the key with a write at the timestamp recorded, creating it if needed.
+     * If creating it would exceed a series limit, the cardinality policy picks the series to use instead.
+     *
+     * @return null if the sample is rejected by the series limits.
+     */
+    private SeriesRef touch(SeriesKey key, long timestamp) {
+        SeriesRef series = shardFor(key).touch(key, timestamp, true);
+        if (series != null) return series;
+        cardinality.refused(key);
+        for (SeriesKey fallback = cardinality.fallback(key); fallback != null;
+             fallback = cardinality.fallback(fallback)) {
+            series = shardFor(fallback).touch(fallback, timestamp, !CardinalityLimiter.isOverflow(fallback));
+            if (series != null) return series;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the shard owning the series with the given key.
+     */
+    private Shard shardFor(SeriesKey key) {
+        int h = key.hashCode();
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    /**
+     * Applies a sample that is already durable elsewhere (a segment or an old WAL segment) but must be
+     * included in the next checkpoint.
+     */
+    private void recover(SeriesKey key, long timestamp, double value) {
+        // Recovered series were admitted when first written, so the limits do not apply again
+        shardFor(key).touch(key, timestamp, false).insert(timestamp, value);
+        queryCache.invalidate(timestamp);
+        pendingBlocks.add(blockStart(timestamp));
+    }
+
+    /**
+     * @return The start time of the time block containing the timestamp.
+     */
+    private long blockStart(long timestamp) {
+        long duration = config.getBlockDurationMs();
+        return Math.floorDiv(timestamp, duration) * duration;
     }
 
     /**
      * Returns all DataPoints matching the given metric, timestamp range, and tag filters.
      * End time is exclusive. Tag filters must all match.
+     * Candidate series come from each shard's tag index, so the cost follows the number of matching series.
+     * Queries spanning at least parallelQueryThreshold series-blocks are split into fork-join tasks over
+     * series and time blocks; smaller ones run on the caller thread.
+     * Samples older than the retention period of the metric are never returned, even before cleanup drops them.
+     * With the query cache enabled, the part of the range in blocks that have ended is served from the
+     * cache where possible.
      */
     @Override
     public List<DataPoint> query(String metric, long startTime, long endTime, Map<String, String> tagFilters) {
-        return timeSeriesMap.subMap(startTime, true, endTime, false)
-                .values()
-                .stream()
-                .flatMap(List::stream)
-                .filter(dp -> dp.getMetric().equals(metric))
-                .filter(dp -> tagFilters == null || tagFilters.entrySet().stream()
-                        .allMatch(e -> e.getValue().equals(dp.getTag(e.getKey()))))
-                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        TagFilter filter = TagFilter.compile(symbols, metric, tagFilters);
+        List<DataPoint> results = queryCache.isEnabled()
+                ? collectCached(metric, startTime, endTime, tagFilters, filter)
+                : collect(metric, startTime, endTime, filter);
+        metrics.recordQuery(start, results.size());
+        return results;
     }
 
     /**
-     * Initializes the store by loading existing data from disk and starting the cleanup scheduler.
+     * Collects the results block by block: each block that has ended is read whole into the cache, or
+     * taken from it, and cut to the range; the rest of the range, from the open head block on, is read
+     * from the series.
+     */
+    private List<DataPoint> collectCached(String metric, long startTime, long endTime,
+                                          Map<String, String> tagFilters, TagFilter filter) {
+        long from = retainedFrom(metric, startTime);
+        long headStart = Math.min(endTime, blockStart(System.currentTimeMillis()));
+        if (from >= headStart) return collect(metric, startTime, endTime, filter);
+
+        List<DataPoint> results = new ArrayList<>();
+        long duration = config.getBlockDurationMs();
+        for (long block = blockStart(from); block < headStart; block += duration) {
+            QueryCache.Key key = new QueryCache.Key(metric, tagFilters, block);
+            List<DataPoint> points = queryCache.get(key);
+            if (points == null) {
+                long generation = queryCache.begin(block + duration);
+                points = collect(metric, block, block + duration, filter);
+                queryCache.put(key, points, generation);
+            }
+            QueryCache.slice(points, from, endTime, results);
+        }
+        if (headStart < endTime) results.addAll(collect(metric, headStart, endTime, filter));
+        return results;
+    }
+
+    private List<DataPoint> collect(String metric, long startTime, long endTime, TagFilter filter) {
+        List<DataPoint> results = new ArrayList<>();
+        startTime = retainedFrom(metric, startTime);
+        if (startTime >= endTime) return results;
+        if (startTime < recoveredFrom) awaitRecovery();
+        if (filter == null) return results;
+
+        List<SeriesRef> matching = new ArrayList<>();
+        for (Shard shard : shards) shard.select(filter, matching::add);
+        long blockDuration = config.getBlockDurationMs();
+        long units = ParallelQuery.units(matching.size(), startTime, endTime, blockDuration);
+        if (units >= config.getParallelQueryThreshold() && queryPool.getParallelism() > 1 && !queryPool.isShutdown()) {
+            long leafUnits = Math.max(1, units / (queryPool.getParallelism() * 4L));
+            return queryPool.invoke(new ParallelQuery(matching, startTime, endTime, blockDuration, leafUnits));
+        }
+        MergingCursor cursor = new MergingCursor(0, Long.MAX_VALUE);
+        for (SeriesRef series : matching) cursor.add(series.getKey(), series.iterator(startTime, endTime));
+        while (cursor.hasNext()) results.add(cursor.next());
+        return results;
+    }
+
+    /**
+     * Opens a cursor that merges the matching series by timestamp as it is read. Each series is read
+     * from a snapshot of its chunks taken here, decoding one chunk at a time, so memory use is bounded
+     * by the number of matching series rather than the number of matching data points.
+     */
+    @Override
+    public QueryCursor queryCursor(String metric, long startTime, long endTime, Map<String, String> tagFilters,
+                                   long offset, long limit) {
+        MergingCursor cursor = new MergingCursor(offset, limit, metrics.pointsPerQuery);
+        long from = retainedFrom(metric, startTime);
+        if (from >= endTime || limit <= 0) return cursor;
+        if (from < recoveredFrom) awaitRecovery();
+        TagFilter filter = TagFilter.compile(symbols, metric, tagFilters);
+        if (filter == null) return cursor;
+
+        for (Shard shard : shards) {
+            shard.select(filter, series -> cursor.add(series.getKey(), series.iterator(from, endTime)));
+        }
+        return cursor;
+    }
+
+    /**
+     * Aggregates the matching samples into epoch-aligned time buckets, per group of series sharing the
+     * values of the group-by tags. If a rollup tier fits the request, its pre-aggregated buckets are merged
+     * (percentiles then come from the tier's sketches, within their relative accuracy); otherwise samples
+     * are streamed from the series chunks straight into per-bucket accumulators, without building DataPoints.
+     */
+    @Override
+    public List<AggregateSeries> aggregate(String metric, long startTime, long endTime, Map<String, String> tagFilters,
+                                           long bucketWidthMs, Aggregator aggregator, List<String> groupBy) {
+        long start = System.nanoTime();
+        long from = retainedFrom(metric, startTime);
+        if (from >= endTime) return new ArrayList<>();
+        GroupedAggregation groups = new GroupedAggregation(startTime, endTime, bucketWidthMs, aggregator, groupBy);
+        if (from < recoveredFrom) awaitRecovery();
+        TagFilter filter = TagFilter.compile(symbols, metric, tagFilters);
+        if (filter == null) return groups.results(metric);
+
+        // Alignment is checked on the requested range: clamping to retention rarely leaves it aligned, so
+        // only the partial tier bucket the clamped start falls into is scanned raw
+        int tier = rollupTierFor(startTime, endTime, bucketWidthMs);
+        long tierFrom = tier < 0 ? endTime : Math.min(endTime, ceil(from, rollupWidthsMs[tier]));
+        long[] points = {0};
+        for (Shard shard : shards) {
+            shard.select(filter, series -> {
+                BucketAccumulator accumulator = groups.accumulatorFor(series.getKey().getTags());
+                if (from < tierFrom) points[0] += series.scan(from, tierFrom, accumulator);
+                if (tierFrom < endTime) series.mergeRollups(tier, tierFrom, endTime, accumulator);
+            });
+        }
+        List<AggregateSeries> results = groups.results(metric);
+        metrics.recordQuery(start, points[0]);
+        return results;
+    }
+
+    /**
+     * Picks the coarsest rollup tier that can answer an aggregation exactly: its width divides the bucket
+     * width and the range is aligned to it.
+     *
+     * @return the tier index, or -1 to aggregate the raw samples.
+     */
+    private int rollupTierFor(long startTime, long endTime, long bucketWidthMs) {
+        for (int i = rollupWidthsMs.length - 1; i >= 0; i--) {
+            long width = rollupWidthsMs[i];
+            if (bucketWidthMs % width == 0 && Math.floorMod(startTime, width) == 0
+                    && Math.floorMod(endTime, width) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The smallest multiple of the width at or after the time.
+     */
+    private static long ceil(long time, long width) {
+        return time + Math.floorMod(-time, width);
+    }
+
+    /**
+     * @return The start time clamped to the oldest sample of the metric still within retention.
+     */
+    private long retainedFrom(String metric, long startTime) {
+        return Math.max(startTime, System.currentTimeMillis() - config.getRetentionMs(metric));
+    }
+
+    /**
+     * Initializes the store by mapping the persisted segments, replaying the write-ahead log on top of it,
+     * and starting the cleanup and checkpoint schedulers.
+     * With lazy recovery enabled, older segments keep loading in the background after this returns.
      */
     @Override
     public boolean initialize() {
         try {
             loadFromDisk();
+            replayWal();
+            if (config.isWalEnabled()) {
+                for (Shard shard : shards) shard.setWal(WriteAheadLog.open(shard.getWalDirectory(), config, metrics.walSyncLatency));
+            }
             startCleanupTask();
             return true;
         } catch (Exception e) {
@@ -73,13 +604,26 @@ public class TimeSeriesStoreImpl implements TimeSeriesStore {
 
     /**
      * Shuts down the store gracefully, running cleanup and persisting data.
+     * The final checkpoint makes the write-ahead log redundant, so it is removed.
      */
     @Override
     public boolean shutdown() {
         try {
-            runCleanupNow();
+            // Queued inserts are applied first, so the final checkpoint includes them
+            ingestQueue.close();
             cleanerExecuter.shutdown();
-            saveToDisk();
+            compactionExecutor.shutdown();
+            queryPool.shutdown();
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            runCleanupNow();
+            for (Shard shard : shards) {
+                WriteAheadLog log = shard.getWal();
+                shard.setWal(null);
+                if (log != null) {
+                    log.close();
+                    WriteAheadLog.deleteAll(shard.getWalDirectory());
+                }
+            }
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -88,27 +632,232 @@ public class TimeSeriesStoreImpl implements TimeSeriesStore {
     }
 
     /**
-     * Schedules automatic cleanup of data older than 24 hours every hour.
+     * Replays the write-ahead log directory of every shard, plus any directories left by a different
+     * shard count or by an unsharded log. Samples are routed by key, so they reach the right shard either way.
+     */
+    private void replayWal() throws IOException {
+        long replayed = 0;
+        for (Path directory : walDirectories()) {
+            replayed += WriteAheadLog.replay(directory, this::recover);
+            if (!isShardWalDirectory(directory)) staleWalDirectories.add(directory);
+        }
+        if (replayed > 0) System.out.println("Replayed " + replayed + " data points from the write-ahead log.");
+    }
+
+    /**
+     * @return The top-level write-ahead log directory followed by every shard directory present on disk.
+     */
+    private List<Path> walDirectories() throws IOException {
+        List<Path> directories = new ArrayList<>();
+        directories.add(walDirectory);
+        if (Files.isDirectory(walDirectory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(walDirectory, "shard-*")) {
+                for (Path path : stream) directories.add(path);
+            }
+        }
+        return directories;
+    }
+
+    private boolean isShardWalDirectory(Path directory) {
+        for (Shard shard : shards) {
+            if (shard.getWalDirectory().equals(directory)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Schedules automatic cleanup of blocks past their retention every minute, which is cheap since
+     * whole blocks are dropped, and periodic checkpoints that let old write-ahead log segments be deleted.
      */
     private void startCleanupTask() {
-        cleanerExecuter.scheduleAtFixedRate(() -> {
-            long threshold = System.currentTimeMillis() - EXPIRY_DURATION_MS;
-            synchronized (timeSeriesMap) {
-                timeSeriesMap.headMap(threshold, false).clear();
+        cleanerExecuter.scheduleAtFixedRate(() -> removeExpired(System.currentTimeMillis()),
+                CLEANUP_INTERVAL_MS, CLEANUP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        long interval = config.getCheckpointIntervalMs();
+        cleanerExecuter.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        }, 1, 1, TimeUnit.HOURS);
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        long compactionInterval = config.getCompactionIntervalMs();
+        if (compactionInterval > 0) {
+            compactionExecutor.scheduleWithFixedDelay(() -> compact(System.currentTimeMillis()),
+                    compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+        }
+        long selfInterval = config.getSelfMetricsIntervalMs();
+        if (selfInterval > 0) {
+            cleanerExecuter.scheduleAtFixedRate(this::recordSelfMetrics, selfInterval, selfInterval,
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * Writes all in-memory data to the CSV file. Thread-safe via diskLock.
+     * Inserts the store's own metrics as untagged "timeseries.*" data points, so they can be queried like
+     * any other metric. Counters are totals since the store was created; latency percentiles (in
+     * microseconds) and durations (in milliseconds) cover the time since the previous call.
      */
-    private void saveToDisk() {
+    synchronized void recordSelfMetrics() {
+        StoreStats stats = getStats();
+        StoreStats last = lastStats;
+        lastStats = stats;
+        HistogramSnapshot insertLatency = stats.getInsertLatency();
+        HistogramSnapshot queryLatency = stats.getQueryLatency();
+        HistogramSnapshot walSyncLatency = stats.getWalSyncLatency();
+        HistogramSnapshot cleanupTime = stats.getCleanupTime();
+        HistogramSnapshot checkpointTime = stats.getCheckpointTime();
+        if (last != null) {
+            insertLatency = insertLatency.since(last.getInsertLatency());
+            queryLatency = queryLatency.since(last.getQueryLatency());
+            walSyncLatency = walSyncLatency.since(last.getWalSyncLatency());
+            cleanupTime = cleanupTime.since(last.getCleanupTime());
+            checkpointTime = checkpointTime.since(last.getCheckpointTime());
+        }
+        long blockBytes = 0;
+        for (long bytes : stats.getBlockBytes().values()) blockBytes += bytes;
+
+        long now = System.currentTimeMillis();
+        List<DataPoint> points = new ArrayList<>();
+        points.add(selfMetric(now, "insert.points", stats.getInsertedPoints()));
+        points.add(selfMetric(now, "insert.rejected", stats.getRejectedPoints()));
+        points.add(selfMetric(now, "insert.latency.p99", insertLatency.getPercentile(99) / 1e3));
+        points.add(selfMetric(now, "ingest.queue.depth", stats.getIngestQueueDepth()));
+        points.add(selfMetric(now, "query.count", stats.getQueryLatency().getCount()));
+        points.add(selfMetric(now, "query.points", stats.getPointsPerQuery().getSum()));
+        points.add(selfMetric(now, "query.latency.p99", queryLatency.getPercentile(99) / 1e3));
+        points.add(selfMetric(now, "query.cache.hits", stats.getQueryCacheHits()));
+        points.add(selfMetric(now, "query.cache.misses", stats.getQueryCacheMisses()));
+        points.add(selfMetric(now, "wal.sync.p99", walSyncLatency.getPercentile(99) / 1e3));
+        points.add(selfMetric(now, "cleanup.ms", cleanupTime.getSum() / 1e6));
+        points.add(selfMetric(now, "checkpoint.ms", checkpointTime.getSum() / 1e6));
+        points.add(selfMetric(now, "compaction.bytes", stats.getCompactedBytes()));
+        points.add(selfMetric(now, "series", stats.getSeries()));
+        points.add(selfMetric(now, "memory.bytes", blockBytes));
+        insertBatch(points);
+    }
+
+    private static DataPoint selfMetric(long timestamp, String name, double value) {
+        return new DataPoint(timestamp, "timeseries." + name, value, Collections.emptyMap());
+    }
+
+    /**
+     * Rewrites the segments of every block changed since the last checkpoint and truncates the
+     * write-ahead log up to that point. The WAL is rolled first: every sample logged to an older
+     * segment was applied to memory before being logged, so the segments written afterwards contain it.
+     */
+    private void checkpoint() throws IOException {
+        // Rewriting a block before its segment was loaded would drop the segment's data
+        awaitRecovery();
         synchronized (diskLock) {
-            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(persistenceFile))) {
-                for (List<DataPoint> dps : timeSeriesMap.values()) {
-                    for (DataPoint dp : dps) {
-                        writer.write(toCSV(dp));
-                        writer.newLine();
+            Set<Long> blocks = new TreeSet<>();
+            long[] sequences = new long[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                WriteAheadLog log = shards[i].getWal();
+                sequences[i] = log == null ? -1 : log.roll(blocks);
+            }
+            for (Iterator<Long> it = pendingBlocks.iterator(); it.hasNext(); ) {
+                blocks.add(it.next());
+                it.remove();
+            }
+            long start = System.nanoTime();
+            try {
+                saveToDisk(blocks);
+                metrics.checkpointTime.recordSince(start);
+            } catch (IOException e) {
+                pendingBlocks.addAll(blocks); // retry them at the next checkpoint
+                throw e;
+            }
+            for (int i = 0; i < shards.length; i++) {
+                WriteAheadLog log = shards[i].getWal();
+                if (log != null) log.deleteSegmentsBefore(sequences[i]);
+            }
+            // Replayed data, legacy CSV included, is fully converted to segments by now
+            for (Path directory : staleWalDirectories) {
+                WriteAheadLog.deleteAll(directory);
+                staleWalDirectories.remove(directory);
+            }
+            Files.deleteIfExists(persistenceFile);
+        }
+    }
+
+    /**
+     * Drops every block past the retention of its metrics and unmaps the series left without samples.
+     *
+     * @return the number of expired data points removed.
+     */
+    private long removeExpired(long now) {
+        awaitRecovery();
+        long begin = System.nanoTime();
+        long removed = 0;
+        Set<Long> dropped = new HashSet<>();
+        for (Shard shard : shards) removed += shard.removeExpired(now, dropped);
+        for (long start : dropped) queryCache.invalidateBlock(start);
+        long threshold = now - config.getMaxRetentionMs();
+        for (long start : dropped) {
+            // A segment shared with metrics kept longer still holds the dropped samples
+            if (start + config.getBlockDurationMs() > threshold) pendingBlocks.add(start);
+        }
+        deleteExpiredSegments(threshold);
+        metrics.cleanupTime.recordSince(begin);
+        return removed;
+    }
+
+    /**
+     * Compacts every block that has ended by more than the out-of-order tolerance (at most one block
+     * duration): each series is re-encoded into as few full chunks as it needs, exact duplicates dropped,
+     * and swapped in without blocking its readers or writers (see {@link Series#compact()}). Blocks that
+     * changed and already have a segment file get it rewritten, unless the next checkpoint rewrites them
+     * anyway. Re-encoded and written bytes are paced by the configured compaction rate. Stops early once
+     * the store shuts down.
+     *
+     * @return the number of blocks compacted.
+     */
+    private int compact(long now) {
+        awaitRecovery();
+        long begin = System.nanoTime();
+        long endedBy = now - Math.min(config.getOutOfOrderToleranceMs(), config.getBlockDurationMs());
+        Set<Long> compacted = new TreeSet<>();
+        try {
+            for (Shard shard : shards) {
+                shard.compact(endedBy, compacted, bytes -> {
+                    metrics.compactedBytes.add(bytes);
+                    throttleCompaction(bytes);
+                });
+            }
+            for (long start : compacted) {
+                Path segment = SegmentFile.pathFor(segmentDirectory, start);
+                if (pendingBlocks.contains(start) || !Files.exists(segment)) continue;
+                saveToDisk(Collections.singleton(start));
+                if (Files.exists(segment)) throttleCompaction(Files.size(segment));
+            }
+        } catch (CancellationException e) {
+            // Shutting down; the remaining blocks are compacted at the next start
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        metrics.compactionTime.recordSince(begin);
+        return compacted.size();
+    }
+
+    /**
+     * Blocks until compaction may go on after handling the given bytes.
+     *
+     * @throws CancellationException if the store is shutting down.
+     */
+    private void throttleCompaction(long bytes) {
+        if (compactionExecutor.isShutdown()) throw new CancellationException();
+        compactionLimiter.acquire((int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes)));
+    }
+
+    /**
+     * Deletes segment files whose whole block is older than the threshold.
+     */
+    private void deleteExpiredSegments(long threshold) {
+        synchronized (diskLock) {
+            try {
+                for (Path segment : SegmentFile.list(segmentDirectory)) {
+                    if (SegmentFile.blockStartOf(segment) + config.getBlockDurationMs() <= threshold) {
+                        Files.deleteIfExists(segment);
                     }
                 }
             } catch (IOException e) {
@@ -118,33 +867,178 @@ public class TimeSeriesStoreImpl implements TimeSeriesStore {
     }
 
     /**
-     * Loads data from disk and inserts it into the in-memory store.
+     * Writes the segment file of each given block from the in-memory data. Thread-safe via diskLock.
+     * Sealed chunks are written as they are; each file is written under a temporary name and moved
+     * into place, so a crash never leaves a partial segment.
+     */
+    private void saveToDisk(Set<Long> blocks) throws IOException {
+        synchronized (diskLock) {
+            Files.createDirectories(segmentDirectory);
+            long duration = config.getBlockDurationMs();
+            for (long start : blocks) {
+                // Held until written, since the chunks may live in an arena freed when the block expires
+                List<Block> held = new ArrayList<>();
+                try {
+                    for (Shard shard : shards) shard.acquireBlocks(start, held);
+                    List<SegmentFile.Entry> entries = new ArrayList<>();
+                    for (Block block : held) {
+                        for (Series series : block.series()) {
+                            entries.add(new SegmentFile.Entry(series.getKey(), series.sealedChunks(start, start + duration)));
+                        }
+                    }
+                    SegmentFile.write(segmentDirectory, start, start + duration, entries);
+                } finally {
+                    for (Block block : held) block.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads persisted data into the in-memory store, bypassing the write-ahead log.
+     * Segment files are memory-mapped in parallel and their chunks attached to series without decoding;
+     * segments of fully expired blocks are deleted instead. With lazy recovery, only the newest block
+     * is loaded here and the rest in the background. A CSV file left by an earlier version is imported
+     * and converted to segments at the next checkpoint.
+     */
+    private void loadFromDisk() throws IOException {
+        long begin = System.nanoTime();
+        long threshold = System.currentTimeMillis() - config.getMaxRetentionMs();
+        List<Path> segments = new ArrayList<>();
+        synchronized (diskLock) {
+            for (Path path : SegmentFile.list(segmentDirectory)) {
+                if (SegmentFile.blockStartOf(path) + config.getBlockDurationMs() <= threshold) {
+                    Files.deleteIfExists(path);
+                } else {
+                    segments.add(path);
+                }
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, config.getRecoveryThreads()), r -> {
+            Thread t = new Thread(r, "recovery-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (config.isLazyRecovery() && segments.size() > 1) {
+            List<Path> newest = segments.subList(segments.size() - 1, segments.size());
+            List<Path> older = segments.subList(0, segments.size() - 1);
+            loadSegments(newest, pool);
+            recoveredFrom = SegmentFile.blockStartOf(newest.get(0));
+            recovery = CompletableFuture.runAsync(() -> {
+                try {
+                    loadSegments(older, pool);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, r -> {
+                Thread t = new Thread(r, "recovery");
+                t.setDaemon(true);
+                t.start();
+            }).whenComplete((v, e) -> {
+                pool.shutdown();
+                recoveredFrom = Long.MIN_VALUE;
+                if (e != null) e.printStackTrace();
+                finishRecovery(begin, segments.size());
+            });
+        } else {
+            try {
+                loadSegments(segments, pool);
+            } finally {
+                pool.shutdown();
+            }
+            finishRecovery(begin, segments.size());
+        }
+
+        importLegacyCsv();
+    }
+
+    /**
+     * Maps the given segments in parallel, then attaches their chunks to series in parallel. A segment
+     * holds one time block, so each entry carries all chunks of one series in that block, in time order,
+     * and is attached in a single call; recovered data skips the per-point insert and duplicate checks.
+     * Entries of metrics kept for less time than the longest retention may already be expired; they are skipped.
      */
-    private void loadFromDisk() {
-        Path path = Paths.get(persistenceFile);
-        if (!Files.exists(path)) return;
+    private void loadSegments(List<Path> paths, ExecutorService pool) throws IOException {
+        List<Future<SegmentFile>> opened = new ArrayList<>();
+        for (Path path : paths) {
+            opened.add(pool.submit(() -> SegmentFile.open(path)));
+        }
+        List<SegmentFile.Entry> work = new ArrayList<>();
+        for (Future<SegmentFile> future : opened) work.addAll(await(future).getEntries());
+
+        long now = System.currentTimeMillis();
+        int tasks = Math.max(1, config.getRecoveryThreads());
+        List<Future<?>> attached = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            int first = t;
+            attached.add(pool.submit(() -> {
+                for (int i = first; i < work.size(); i += tasks) {
+                    SegmentFile.Entry entry = work.get(i);
+                    if (entry.chunks.isEmpty()) continue;
+                    long maxTime = entry.chunks.get(entry.chunks.size() - 1).maxTime();
+                    if (maxTime < now - config.getRetentionMs(entry.key.getMetric())) continue;
+                    shardFor(entry.key).touch(entry.key, maxTime, false).addSealed(entry.chunks);
+                }
+            }));
+        }
+        for (Future<?> future : attached) await(future);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading segments");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
 
+    private void finishRecovery(long beginNanos, int segmentCount) {
+        recoveryTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beginNanos);
+        System.out.println("Recovered " + segmentCount + " segments in " + recoveryTimeMs + " ms.");
+    }
+
+    /**
+     * Imports a data_store.csv file written by earlier versions of the store.
+     */
+    private void importLegacyCsv() throws IOException {
         synchronized (diskLock) {
-            try (BufferedReader reader = Files.newBufferedReader(path)) {
+            if (!Files.exists(persistenceFile)) return;
+            try (BufferedReader reader = Files.newBufferedReader(persistenceFile)) {
                 String line;
                 while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
                     DataPoint dp = fromCSV(line);
-                    insert(dp); // already thread-safe
+                    recover(SeriesKey.probe(dp.getMetric(), dp.getTags()), dp.getTimestamp(), dp.getValue());
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
     }
 
     /**
-     * Serializes a DataPoint to CSV format.
+     * Blocks until all persisted data has been loaded. Returns immediately unless lazy recovery is
+     * still loading older blocks in the background.
      */
-    private String toCSV(DataPoint dp) {
-        String tagsStr = dp.getTags().entrySet().stream()
-                .map(e -> e.getKey() + "=" + e.getValue())
-                .collect(Collectors.joining(";"));
-        return dp.getTimestamp() + "," + dp.getMetric() + "," + dp.getValue() + "," + tagsStr;
+    public void awaitRecovery() {
+        try {
+            recovery.join();
+        } catch (CompletionException | CancellationException e) {
+            // Already reported when the background recovery failed
+        }
+    }
+
+    /**
+     * @return The time the last recovery took to load all persisted data, in milliseconds,
+     *         or -1 while it is still running.
+     */
+    public long getRecoveryTimeMs() {
+        return recoveryTimeMs;
     }
 
     /**
@@ -171,31 +1065,137 @@ public class TimeSeriesStoreImpl implements TimeSeriesStore {
      * Runs immediate cleanup of expired entries and persists the result.
      */
     public void runCleanupNow() {
-        long threshold = System.currentTimeMillis() - EXPIRY_DURATION_MS;
-        synchronized (timeSeriesMap) {
-            int before = timeSeriesMap.size();
-            timeSeriesMap.headMap(threshold, false).clear();
-            int after = timeSeriesMap.size();
-            System.out.println("Cleanup executed. Removed " + (before - after) + " expired timestamps.");
+        long removed = removeExpired(System.currentTimeMillis());
+        System.out.println("Cleanup executed. Removed " + removed + " expired data points.");
+        try {
+            checkpoint(); // diskLock is handled inside
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        saveToDisk(); // diskLock is handled inside
     }
 
     /**
-     * Clears all data from memory and deletes the CSV file.
+     * Runs an immediate compaction of the blocks that have ended.
+     *
+     * @return the number of blocks compacted.
+     */
+    public int runCompactionNow() {
+        return compact(System.currentTimeMillis());
+    }
+
+    /**
+     * Forces all logged inserts to disk, as the periodic group commit would.
+     */
+    void syncWal() throws IOException {
+        for (Shard shard : shards) {
+            WriteAheadLog log = shard.getWal();
+            if (log != null) log.sync();
+        }
+    }
+
+    /**
+     * Stops background work and closes the write-ahead log without a checkpoint, leaving the files on
+     * disk as a process crash after the last group commit would. Used by recovery tests.
+     */
+    void crash() throws IOException {
+        try {
+            ingestQueue.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cleanerExecuter.shutdownNow();
+        compactionExecutor.shutdownNow();
+        queryPool.shutdownNow();
+        for (Shard shard : shards) {
+            WriteAheadLog log = shard.getWal();
+            shard.setWal(null);
+            if (log != null) log.close();
+        }
+    }
+
+    /**
+     * @return The number of samples held in memory.
+     */
+    long pointCount() {
+        long[] count = {0};
+        for (Shard shard : shards) shard.forEachSeries(series -> count[0] += series.pointCount());
+        return count[0];
+    }
+
+    /**
+     * @return The number of samples held in sealed, compressed chunks.
+     */
+    long sealedPointCount() {
+        long[] count = {0};
+        for (Shard shard : shards) shard.forEachSeries(series -> count[0] += series.sealedPointCount());
+        return count[0];
+    }
+
+    /**
+     * @return The bytes of encoded sample data held in sealed chunks.
+     */
+    long sealedBytes() {
+        long[] bytes = {0};
+        for (Shard shard : shards) shard.forEachSeries(series -> bytes[0] += series.sealedBytes());
+        return bytes[0];
+    }
+
+    /**
+     * @return A snapshot of the store's own metrics: insert and query rates and latencies, points read per
+     *         query, series count, memory per block, and time spent in fsyncs, cleanups and checkpoints.
+     */
+    public StoreStats getStats() {
+        Map<Long, Long> blockBytes = new TreeMap<>();
+        for (Shard shard : shards) shard.blockBytes(blockBytes);
+        return new StoreStats(metrics, queryCache, ingestQueue.depth(), cardinality.seriesCount(),
+                Collections.unmodifiableMap(blockBytes));
+    }
+
+    /**
+     * Returns the series count and cardinality estimates of every metric inserted into since the store
+     * started, the metric with the most distinct series first.
+     */
+    public List<MetricCardinality> getCardinality() {
+        return cardinality.snapshot();
+    }
+
+    /**
+     * @return The bytes of direct memory held by off-heap chunks.
+     */
+    long offHeapBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) bytes += shard.offHeapBytes();
+        return bytes;
+    }
+
+    /**
+     * Clears all data from memory and deletes the segment files, write-ahead log and any CSV file.
      * Useful for resetting the store between tests.
      */
     public void clearAllData() {
+        awaitRecovery();
         synchronized (diskLock) {
-            timeSeriesMap.clear();
-            File file = new File(persistenceFile);
-            if (file.exists()) {
-                boolean deleted = file.delete();
-                if (!deleted) {
-                    System.err.println("Warning: Could not delete " + persistenceFile);
+            for (Shard shard : shards) shard.clear();
+            cardinality.clear();
+            queryCache.clear();
+            pendingBlocks.clear();
+            try {
+                Set<Path> open = new HashSet<>();
+                for (Shard shard : shards) {
+                    WriteAheadLog log = shard.getWal();
+                    if (log == null) continue;
+                    log.deleteSegmentsBefore(log.roll(new HashSet<>()));
+                    open.add(shard.getWalDirectory());
                 }
+                for (Path directory : walDirectories()) {
+                    if (!open.contains(directory)) WriteAheadLog.deleteAll(directory);
+                }
+                staleWalDirectories.clear();
+                for (Path segment : SegmentFile.list(segmentDirectory)) Files.deleteIfExists(segment);
+                Files.deleteIfExists(persistenceFile);
+            } catch (IOException e) {
+                System.err.println("Warning: Could not delete persisted data: " + e.getMessage());
             }
-            saveToDisk(); // will create a new empty file
         }
     }
 }
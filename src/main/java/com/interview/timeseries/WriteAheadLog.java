@@ -0,0 +1,375 @@
+package com.interview.timeseries;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+
+/**
+ * Segmented, append-only binary write-ahead log of inserted samples.
+ *
+ * Each record is framed as [payload length][CRC32C of payload][payload]. A series is described once
+ * per segment by a SERIES record (ID, metric, tags); its samples are then logged as compact SAMPLE
+ * records (ID, timestamp, value). Appends go to an in-memory buffer and are fsynced in groups, either
+ * every sync interval or once enough unsynced bytes have accumulated.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final byte SERIES_RECORD = 1;
+    private static final byte SAMPLE_RECORD = 2;
+    private static final int HEADER_BYTES = 8;
+    private static final int SAMPLE_PAYLOAD_BYTES = 1 + 4 + 8 + 8;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final String SUFFIX = ".wal";
+
+    /**
+     * Receives samples read back from the log.
+     */
+    interface ReplayHandler {
+        void apply(SeriesKey key, long timestamp, double value);
+    }
+
+    private final Path directory;
+    private final long blockDurationMs;
+    private final long syncBytes;
+    private final long segmentBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private final ScheduledExecutorService syncExecutor;
+    private final AtomicBoolean syncPending = new AtomicBoolean();
+
+    // Receives the duration of every fsync
+    private final Histogram syncLatency;
+
+    // Current segment; guarded by this
+    private FileChannel channel;
+    private long segmentSequence;
+    private long segmentSize;
+    private long unsyncedBytes;
+
+    // Series IDs already described in the current segment
+    private BitSet loggedSeries = new BitSet();
+
+    // Start times of the time blocks that received samples since the last roll
+    private final Set<Long> touchedBlocks = new HashSet<>();
+    private long lastTouchedBlock = Long.MIN_VALUE;
+
+    private WriteAheadLog(Path directory, StoreConfig config, Histogram syncLatency, long firstSequence)
+            throws IOException {
+        this.directory = directory;
+        this.syncLatency = syncLatency;
+        this.blockDurationMs = config.getBlockDurationMs();
+        this.syncBytes = config.getWalSyncBytes();
+        this.segmentBytes = config.getWalSegmentBytes();
+        openSegment(firstSequence);
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wal-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::syncQuietly,
+                config.getWalSyncIntervalMs(), config.getWalSyncIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the log for appending, starting a new segment after any existing ones.
+     *
+     * @param syncLatency receives the duration of every fsync, in nanoseconds.
+     */
+    static WriteAheadLog open(Path directory, StoreConfig config, Histogram syncLatency) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments(directory);
+        long next = segments.isEmpty() ? 0 : sequenceOf(segments.get(segments.size() - 1)) + 1;
+        return new WriteAheadLog(directory, config, syncLatency, next);
+    }
+
+    /**
+     * Feeds every intact record of every segment, oldest first, to the handler.
+     * Reading a segment stops at the first torn or corrupt record, which is where a crash cut it off.
+     *
+     * @return the number of samples replayed.
+     */
+    static long replay(Path directory, ReplayHandler handler) throws IOException {
+        if (!Files.isDirectory(directory)) return 0;
+        long samples = 0;
+        CRC32C crc = new CRC32C();
+        for (Path segment : listSegments(directory)) {
+            Map<Integer, SeriesKey> series = new HashMap<>();
+            try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                while (data.remaining() >= HEADER_BYTES) {
+                    int length = data.getInt();
+                    int checksum = data.getInt();
+                    if (length <= 0 || length > data.remaining()) break;
+                    ByteBuffer payload = data.slice();
+                    payload.limit(length);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != checksum) break;
+                    data.position(data.position() + length);
+
+                    byte type = payload.get();
+                    if (type == SERIES_RECORD) {
+                        int id = payload.getInt();
+                        series.put(id, readSeriesKey(payload));
+                    } else if (type == SAMPLE_RECORD) {
+                        SeriesKey key = series.get(payload.getInt());
+                        long timestamp = payload.getLong();
+                        double value = payload.getDouble();
+                        if (key != null) {
+                            handler.apply(key, timestamp, value);
+                            samples++;
+                        }
+                    }
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Logs a sample of the given series. The record becomes durable at the next group commit.
+     */
+    synchronized void append(SeriesRef series, long timestamp, double value) throws IOException {
+        writeSample(series, timestamp, value);
+    }
+
+    /**
+     * Logs the samples in [from, to) of the given columns under a single lock acquisition.
+     */
+    synchronized void appendBatch(SeriesRef series, long[] timestamps, double[] values, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i++) writeSample(series, timestamps[i], values[i]);
+    }
+
+    private void writeSample(SeriesRef series, long timestamp, double value) throws IOException {
+        if (segmentSize >= segmentBytes) {
+            // A size-based roll keeps the touched blocks for the next checkpoint. It happens before
+            // the series check, since replay resolves series IDs per segment.
+            nextSegment();
+        }
+        if (!loggedSeries.get(series.getId())) {
+            writeSeriesRecord(series);
+            loggedSeries.set(series.getId());
+        }
+        int start = reserve(SAMPLE_PAYLOAD_BYTES);
+        buffer.put(SAMPLE_RECORD);
+        buffer.putInt(series.getId());
+        buffer.putLong(timestamp);
+        buffer.putDouble(value);
+        finishRecord(start);
+
+        long block = Math.floorDiv(timestamp, blockDurationMs) * blockDurationMs;
+        if (block != lastTouchedBlock) {
+            touchedBlocks.add(block);
+            lastTouchedBlock = block;
+        }
+    }
+
+    /**
+     * Writes buffered records to the segment and fsyncs it.
+     */
+    void sync() throws IOException {
+        FileChannel current;
+        synchronized (this) {
+            flushBuffer();
+            current = channel;
+            unsyncedBytes = 0;
+        }
+        long start = System.nanoTime();
+        try {
+            current.force(false);
+            syncLatency.recordSince(start);
+        } catch (ClosedChannelException e) {
+            // The segment was rolled in the meantime, and rolling forces it before closing
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one. Every record appended before this call
+     * lives in a segment with a smaller sequence number than the returned one.
+     *
+     * @param touched receives the start times of the blocks that got samples since the previous roll.
+     *                Collected under the same lock as appends, so a sample logged to an older segment
+     *                is always reported here.
+     * @return the sequence number of the new segment.
+     */
+    synchronized long roll(Set<Long> touched) throws IOException {
+        nextSegment();
+        touched.addAll(touchedBlocks);
+        touchedBlocks.clear();
+        lastTouchedBlock = Long.MIN_VALUE;
+        return segmentSequence;
+    }
+
+    /**
+     * Deletes all segments older than the given sequence number, once their data has been checkpointed.
+     */
+    void deleteSegmentsBefore(long sequence) throws IOException {
+        for (Path segment : listSegments(directory)) {
+            if (sequenceOf(segment) < sequence) Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Deletes every segment in the directory. Only valid while no log is open on it.
+     */
+    static void deleteAll(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        for (Path segment : listSegments(directory)) Files.deleteIfExists(segment);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Not shutdownNow(): interrupting a thread inside force() would close the channel under us
+        syncExecutor.shutdown();
+        try {
+            syncExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            flushBuffer();
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void syncQuietly() {
+        syncPending.set(false);
+        try {
+            sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeSeriesRecord(SeriesRef series) throws IOException {
+        SeriesKey key = series.getKey();
+        byte[] metric = key.getMetric().getBytes(StandardCharsets.UTF_8);
+        List<byte[]> tags = new ArrayList<>();
+        int size = 1 + 4 + 4 + metric.length + 4;
+        for (Map.Entry<String, String> tag : key.getTags().entrySet()) {
+            byte[] k = tag.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] v = tag.getValue().getBytes(StandardCharsets.UTF_8);
+            tags.add(k);
+            tags.add(v);
+            size += 8 + k.length + v.length;
+        }
+        if (size + HEADER_BYTES > BUFFER_BYTES) throw new IOException("Series key too large for WAL: " + key);
+
+        int start = reserve(size);
+        buffer.put(SERIES_RECORD);
+        buffer.putInt(series.getId());
+        buffer.putInt(metric.length).put(metric);
+        buffer.putInt(tags.size() / 2);
+        for (byte[] bytes : tags) buffer.putInt(bytes.length).put(bytes);
+        finishRecord(start);
+    }
+
+    private static SeriesKey readSeriesKey(ByteBuffer payload) {
+        String metric = readString(payload);
+        int tagCount = payload.getInt();
+        Map<String, String> tags = new TreeMap<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.put(readString(payload), readString(payload));
+        }
+        return SeriesKey.probe(metric, tags);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes room for a record and positions the buffer at the start of its payload.
+     *
+     * @return the buffer position of the record header.
+     */
+    private int reserve(int payloadBytes) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES + payloadBytes) flushBuffer();
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        return start;
+    }
+
+    private void finishRecord(int start) {
+        int end = buffer.position();
+        int length = end - start - HEADER_BYTES;
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + HEADER_BYTES).limit(end);
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) crc.getValue());
+
+        segmentSize += end - start;
+        unsyncedBytes += end - start;
+        if (unsyncedBytes >= syncBytes && !syncExecutor.isShutdown() && syncPending.compareAndSet(false, true)) {
+            try {
+                syncExecutor.execute(this::syncQuietly);
+            } catch (RejectedExecutionException e) {
+                // close() shut the executor down after the check above; it forces the channel itself
+                syncPending.set(false);
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void nextSegment() throws IOException {
+        flushBuffer();
+        channel.force(false);
+        channel.close();
+        openSegment(segmentSequence + 1);
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        segmentSequence = sequence;
+        channel = FileChannel.open(directory.resolve(String.format("%020d%s", sequence, SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+        loggedSeries = new BitSet();
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) segments.add(path);
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,317 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for bucketed aggregation queries.
+ */
+public class AggregationTest {
+
+    private static final long BUCKET = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStore store;
+    private long base;
+
+    @Before
+    public void setUp() {
+        TimeSeriesStoreImpl impl = new TimeSeriesStoreImpl();
+        impl.clearAllData();
+        store = impl;
+        store.initialize();
+        // Start on a bucket boundary an hour ago
+        base = (System.currentTimeMillis() - 3_600_000) / BUCKET * BUCKET;
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void testAggregatorsPerBucket() {
+        // Two minutes of samples, one per second, with values 0..59 in each minute
+        for (int i = 0; i < 120; i++) {
+            store.insert(new DataPoint(base + i * 1000L, "cpu.usage", i % 60, Map.of("host", "server1")));
+        }
+
+        assertBuckets(Aggregator.COUNT, 60, 60);
+        assertBuckets(Aggregator.SUM, 1770, 1770);
+        assertBuckets(Aggregator.AVG, 29.5, 29.5);
+        assertBuckets(Aggregator.MIN, 0, 0);
+        assertBuckets(Aggregator.MAX, 59, 59);
+        // The aligned range is answered from the 1m rollups, whose percentiles are approximate
+        assertBuckets(Aggregator.P50, 29, 29);
+        assertBuckets(Aggregator.P99, 59, 59);
+
+        // An unaligned range scans the raw samples, giving exact percentiles
+        List<AggregateSeries> raw = store.aggregate("cpu.usage", base - 1, base + 2 * BUCKET, null,
+                BUCKET, Aggregator.P50, null);
+        assertEquals(29.0, raw.get(0).getValue(0), 0.0);
+    }
+
+    @Test
+    public void testRollupsMatchRawAggregation() {
+        TimeSeriesStoreImpl rawOnly = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.getRoot().toPath()).setRollupWidthsMs());
+        rawOnly.initialize();
+        try {
+            // Out-of-order samples with duplicates across two hours and three hosts
+            Random random = new Random(42);
+            for (int i = 0; i < 5000; i++) {
+                long ts = base - 3_600_000 + random.nextInt(2 * 3_600_000);
+                DataPoint dp = new DataPoint(ts, "cpu.usage", random.nextInt(100),
+                        Map.of("host", "server" + random.nextInt(3)));
+                store.insert(dp);
+                store.insert(dp);
+                rawOnly.insert(dp);
+            }
+            for (Aggregator aggregator : new Aggregator[]{Aggregator.SUM, Aggregator.COUNT, Aggregator.MIN, Aggregator.MAX}) {
+                for (long width : new long[]{BUCKET, 5 * BUCKET, 60 * BUCKET}) {
+                    long start = base - 3_600_000;
+                    List<AggregateSeries> expected = rawOnly.aggregate("cpu.usage", start, base + 3_600_000,
+                            null, width, aggregator, List.of("host"));
+                    List<AggregateSeries> actual = store.aggregate("cpu.usage", start, base + 3_600_000,
+                            null, width, aggregator, List.of("host"));
+                    assertEquals(expected.size(), actual.size());
+                    for (int g = 0; g < expected.size(); g++) {
+                        assertEquals(expected.get(g).size(), actual.get(g).size());
+                        for (int i = 0; i < expected.get(g).size(); i++) {
+                            assertEquals(expected.get(g).getTimestamp(i), actual.get(g).getTimestamp(i));
+                            assertEquals(expected.get(g).getValue(i), actual.get(g).getValue(i), 1e-6);
+                        }
+                    }
+                }
+            }
+        } finally {
+            rawOnly.shutdown();
+        }
+    }
+
+    @Test
+    public void testRollupsServeAlignedRangeReachingPastRetention() throws Exception {
+        long retention = 2 * 3_600_000L;
+        TimeSeriesStoreImpl tiered = new TimeSeriesStoreImpl(new StoreConfig().setRetentionMs(retention)
+                .setDataDirectory(folder.newFolder("tiered").toPath()));
+        TimeSeriesStoreImpl rawOnly = new TimeSeriesStoreImpl(new StoreConfig().setRetentionMs(retention)
+                .setDataDirectory(folder.newFolder("raw").toPath()).setRollupWidthsMs());
+        tiered.initialize();
+        rawOnly.initialize();
+        try {
+            long now = System.currentTimeMillis();
+            // Samples keep a minute clear of the retention edge, so both stores clamp to the same samples
+            int samples = 0;
+            for (long ts = now - retention + 60_000; ts < now; ts += 10_000, samples++) {
+                DataPoint dp = new DataPoint(ts, "cpu.usage", samples % 100, Map.of("host", "server1"));
+                tiered.insert(dp);
+                rawOnly.insert(dp);
+            }
+
+            // An hour-aligned range starting before the retention edge, as a dashboard would ask for
+            long hour = 60 * BUCKET;
+            long start = Math.floorDiv(now - retention, hour) * hour;
+            long end = Math.floorDiv(now, hour) * hour + hour;
+            AggregateSeries expected =
+                    rawOnly.aggregate("cpu.usage", start, end, null, hour, Aggregator.SUM, null).get(0);
+            AggregateSeries actual =
+                    tiered.aggregate("cpu.usage", start, end, null, hour, Aggregator.SUM, null).get(0);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getTimestamp(i), actual.getTimestamp(i));
+                assertEquals(expected.getValue(i), actual.getValue(i), 1e-6);
+            }
+
+            // Only the partial leading hour is scanned raw; the rest comes from the 1h tier
+            assertTrue(tiered.getStats().getPointsPerQuery().getMax()
+                    < rawOnly.getStats().getPointsPerQuery().getMax());
+        } finally {
+            tiered.shutdown();
+            rawOnly.shutdown();
+        }
+    }
+
+    @Test
+    public void testPercentileBucketStraddlingRetentionEdgeCountsRawSamples() throws Exception {
+        long hour = 60 * BUCKET;
+        long now = System.currentTimeMillis();
+        // Retention puts the clamped start 30.5 minutes into an hour, so that hour's bucket is read half
+        // a minute raw and the rest from the 1m tier
+        long hourStart = Math.floorDiv(now - 2 * hour, hour) * hour;
+        long from = hourStart + 30 * BUCKET + 30_000;
+        StoreConfig tieredConfig = new StoreConfig().setRetentionMs(now - from).setRollupWidthsMs(BUCKET)
+                .setDataDirectory(folder.newFolder("tiered").toPath());
+        StoreConfig rawConfig = new StoreConfig().setRetentionMs(now - from).setRollupWidthsMs()
+                .setDataDirectory(folder.newFolder("raw").toPath());
+        TimeSeriesStoreImpl tiered = new TimeSeriesStoreImpl(tieredConfig);
+        TimeSeriesStoreImpl rawOnly = new TimeSeriesStoreImpl(rawConfig);
+        tiered.initialize();
+        rawOnly.initialize();
+        try {
+            List<DataPoint> points = new ArrayList<>();
+            // High values in the raw half minute, low ones in the minutes answered from the tier
+            for (long ts = from + 5_000; ts < from + 26_000; ts += 1000) {
+                points.add(new DataPoint(ts, "cpu.usage", 1000, null));
+            }
+            for (long ts = hourStart + 31 * BUCKET; ts < hourStart + hour; ts += 10_000) {
+                points.add(new DataPoint(ts, "cpu.usage", points.size() % 100, null));
+            }
+            for (DataPoint dp : points) {
+                tiered.insert(dp);
+                rawOnly.insert(dp);
+            }
+
+            for (Aggregator aggregator : new Aggregator[]{Aggregator.P50, Aggregator.P99, Aggregator.COUNT}) {
+                double expected = rawOnly.aggregate("cpu.usage", hourStart, hourStart + hour, null, hour,
+                        aggregator, null).get(0).getValue(0);
+                double actual = tiered.aggregate("cpu.usage", hourStart, hourStart + hour, null, hour,
+                        aggregator, null).get(0).getValue(0);
+                assertEquals(aggregator.name(), expected, actual,
+                        Math.abs(expected) * 2 * QuantileSketch.RELATIVE_ACCURACY);
+            }
+        } finally {
+            tiered.shutdown();
+            rawOnly.shutdown();
+        }
+    }
+
+    @Test
+    public void testBucketsAreEpochAlignedAndEmptyBucketsOmitted() {
+        store.insert(new DataPoint(base + 10, "cpu.usage", 1.0, null));
+        store.insert(new DataPoint(base + 3 * BUCKET + 5, "cpu.usage", 2.0, null));
+
+        // The range starts mid-bucket; the first bucket still starts on the boundary
+        List<AggregateSeries> results = store.aggregate("cpu.usage", base + 5, base + 4 * BUCKET, null,
+                BUCKET, Aggregator.SUM, null);
+        assertEquals(1, results.size());
+        AggregateSeries series = results.get(0);
+        assertEquals(2, series.size());
+        assertEquals(base, series.getTimestamp(0));
+        assertEquals(base + 3 * BUCKET, series.getTimestamp(1));
+        assertEquals(2.0, series.getValue(1), 0.001);
+        assertTrue(series.getGroupTags().isEmpty());
+    }
+
+    @Test
+    public void testGroupByTagsWithFilters() {
+        for (int i = 0; i < 60; i++) {
+            String host = "server" + (i % 3);
+            String dc = i % 2 == 0 ? "us-west" : "us-east";
+            store.insert(new DataPoint(base + i * 1000L, "cpu.usage", 1.0, Map.of("host", host, "datacenter", dc)));
+        }
+        store.insert(new DataPoint(base, "cpu.usage", 1.0, Map.of("datacenter", "us-west")));
+
+        List<AggregateSeries> results = store.aggregate("cpu.usage", base, base + BUCKET,
+                Map.of("datacenter", "us-west"), BUCKET, Aggregator.COUNT, List.of("host"));
+        assertEquals(4, results.size());
+        // Series without the tag come first, grouped under an empty value
+        assertEquals("", results.get(0).getGroupTags().get("host"));
+        assertEquals(1.0, results.get(0).getValue(0), 0.001);
+        for (int i = 1; i < 4; i++) {
+            assertEquals("server" + (i - 1), results.get(i).getGroupTags().get("host"));
+            assertEquals(10.0, results.get(i).getValue(0), 0.001);
+        }
+    }
+
+    @Test
+    public void testKernelsMatchSequentialReductions() {
+        Random random = new Random(7);
+        for (AggregationKernels kernels : new AggregationKernels[]{new AggregationKernels(), AggregationKernels.get()}) {
+            for (int length = 1; length < 70; length++) {
+                double[] values = new double[length + 3];
+                for (int i = 0; i < values.length; i++) values[i] = random.nextGaussian() * 1000;
+                double sum = 0;
+                double min = values[2];
+                double max = values[2];
+                for (int i = 2; i < 2 + length; i++) {
+                    sum += values[i];
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                }
+                assertEquals(sum, kernels.sum(values, 2, 2 + length), 1e-9 * length * 1000);
+                assertEquals(min, kernels.min(values, 2, 2 + length), 0.0);
+                assertEquals(max, kernels.max(values, 2, 2 + length), 0.0);
+
+                // NaNs are skipped unless first, as by the per-sample path and the rollup tiers
+                values[2 + random.nextInt(length)] = Double.NaN;
+                min = values[2];
+                max = values[2];
+                for (int i = 3; i < 2 + length; i++) {
+                    min = values[i] < min ? values[i] : min;
+                    max = values[i] > max ? values[i] : max;
+                }
+                assertEquals(min, kernels.min(values, 2, 2 + length), 0.0);
+                assertEquals(max, kernels.max(values, 2, 2 + length), 0.0);
+            }
+        }
+
+        long[] timestamps = new long[1000];
+        for (int i = 1; i < timestamps.length; i++) timestamps[i] = timestamps[i - 1] + random.nextInt(3);
+        for (int i = 0; i < 500; i++) {
+            int from = random.nextInt(timestamps.length);
+            long key = timestamps[from] + random.nextInt(200) - 1;
+            assertEquals(AggregationKernels.lowerBound(timestamps, from, timestamps.length, key),
+                    AggregationKernels.runEnd(timestamps, from, timestamps.length, key));
+        }
+    }
+
+    @Test
+    public void testRawAggregationCoversSealedHeadAndLateSamples() {
+        // Enough in-order samples to seal several chunks, then late ones landing in the late buffer
+        Random random = new Random(3);
+        Map<String, String> tags = Map.of("host", "server1");
+        for (int i = 0; i < 2000; i++) {
+            store.insert(new DataPoint(base + i * 100L, "cpu.usage", random.nextInt(1000), tags));
+        }
+        for (int i = 0; i < 50; i++) {
+            store.insert(new DataPoint(base + random.nextInt(200_000) + 1, "cpu.usage", random.nextInt(1000), tags));
+        }
+
+        // A 7 second bucket fits no rollup tier, so the raw samples are aggregated
+        long start = base + 1234;
+        long end = base + 190_000;
+        long width = 7000;
+        List<DataPoint> points = store.query("cpu.usage", start, end, null);
+        for (Aggregator aggregator : new Aggregator[]{Aggregator.COUNT, Aggregator.SUM, Aggregator.MIN,
+                Aggregator.MAX, Aggregator.P90}) {
+            GroupedAggregation expected = new GroupedAggregation(start, end, width, aggregator, null);
+            for (DataPoint dp : points) expected.accumulatorFor(dp.getTags()).accept(dp.getTimestamp(), dp.getValue());
+            AggregateSeries want = expected.results("cpu.usage").get(0);
+            AggregateSeries got = store.aggregate("cpu.usage", start, end, null, width, aggregator, null).get(0);
+            assertEquals(want.size(), got.size());
+            for (int i = 0; i < want.size(); i++) {
+                assertEquals(want.getTimestamp(i), got.getTimestamp(i));
+                assertEquals(aggregator.name(), want.getValue(i), got.getValue(i), 1e-9);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTooManyBuckets() {
+        store.aggregate("cpu.usage", 0, Long.MAX_VALUE, null, 1, Aggregator.SUM, null);
+    }
+
+    private void assertBuckets(Aggregator aggregator, double first, double second) {
+        List<AggregateSeries> results = store.aggregate("cpu.usage", base, base + 2 * BUCKET, null,
+                BUCKET, aggregator, null);
+        assertEquals(1, results.size());
+        AggregateSeries series = results.get(0);
+        assertEquals(2, series.size());
+        assertEquals(base + BUCKET, series.getTimestamp(1));
+        double delta = aggregator.isPercentile() ? first * QuantileSketch.RELATIVE_ACCURACY : 0.001;
+        assertEquals(aggregator.name(), first, series.getValue(0), delta);
+        assertEquals(aggregator.name(), second, series.getValue(1), delta);
+    }
+}
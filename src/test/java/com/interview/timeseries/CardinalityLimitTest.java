@@ -0,0 +1,109 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the series limits under each policy, modelled on request.latency tagged with a request_id.
+ */
+public class CardinalityLimitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStoreImpl store;
+
+    private TimeSeriesStoreImpl open(StoreConfig config) {
+        store = new TimeSeriesStoreImpl(config.setDataDirectory(folder.getRoot().toPath()));
+        assertTrue(store.initialize());
+        return store;
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) store.shutdown();
+    }
+
+    private static DataPoint request(long timestamp, int requestId) {
+        return new DataPoint(timestamp, "request.latency", requestId,
+                Map.of("endpoint", "/api/users", "request_id", "req-" + requestId));
+    }
+
+    @Test
+    public void testRejectKeepsExistingSeriesWritable() {
+        open(new StoreConfig().setMaxSeriesPerMetric("request.latency", 10).setMaxSeries(15));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) assertEquals(i < 10, store.insert(request(now, i)));
+        assertTrue(store.insert(request(now + 1, 3)));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i < 5, store.insert(new DataPoint(now, "cpu.usage", i, Map.of("host", "h" + i))));
+        }
+
+        MetricCardinality stats = store.getCardinality().get(0);
+        assertEquals("request.latency", stats.getMetric());
+        assertEquals(10, stats.getSeries());
+        assertEquals(100, stats.getEstimatedSeries(), 5);
+        assertEquals(90, stats.getLimitedInserts());
+        assertEquals(1, (long) stats.getEstimatedTagValues().get("endpoint"));
+        assertEquals(100, stats.getEstimatedTagValues().get("request_id"), 5);
+    }
+
+    @Test
+    public void testDropTagFoldsHighCardinalityTag() {
+        open(new StoreConfig().setMaxSeriesPerMetric(5).setCardinalityLimitPolicy(CardinalityLimitPolicy.DROP_TAG));
+        long now = System.currentTimeMillis();
+        assertTrue(store.insert(new DataPoint(now, "request.latency", 0, Map.of("endpoint", "/api/users"))));
+        for (int i = 1; i < 50; i++) assertTrue(store.insert(request(now + i, i)));
+
+        List<DataPoint> folded = store.query("request.latency", now, now + 50, Map.of("endpoint", "/api/users"));
+        assertEquals(50, folded.size());
+        assertEquals(46, store.query("request.latency", now, now + 50, Map.of("request_id", "")).size());
+        MetricCardinality stats = store.getCardinality().get(0);
+        assertEquals(5, stats.getSeries());
+        assertEquals(45, stats.getLimitedInserts());
+    }
+
+    @Test
+    public void testDropTagKeepsLimitWithTwoHighCardinalityTags() {
+        open(new StoreConfig().setMaxSeriesPerMetric(10).setCardinalityLimitPolicy(CardinalityLimitPolicy.DROP_TAG));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(store.insert(new DataPoint(now + i, "request.latency", i,
+                    Map.of("endpoint", "/api/users", "customer_id", "cust-" + i, "request_id", "req-" + i))));
+        }
+
+        // Dropping request_id still leaves one new series per customer_id, so those go to the overflow series
+        assertEquals(11, store.getCardinality().get(0).getSeries());
+        assertEquals(90, store.query("request.latency", now, now + 100,
+                Map.of(CardinalityLimiter.OVERFLOW_TAG, "true")).size());
+        assertEquals(100, store.pointCount());
+    }
+
+    @Test
+    public void testOverflowSeriesCollectsSamplesOverTheLimit() {
+        open(new StoreConfig().setMaxSeries(3).setCardinalityLimitPolicy(CardinalityLimitPolicy.OVERFLOW));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) assertTrue(store.insert(request(now + i, i)));
+
+        assertEquals(17, store.query("request.latency", now, now + 20,
+                Map.of(CardinalityLimiter.OVERFLOW_TAG, "true")).size());
+        assertEquals(4, store.getCardinality().get(0).getSeries());
+        assertEquals(20, store.pointCount());
+    }
+
+    @Test
+    public void testHyperLogLogEstimate() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int repeat = 0; repeat < 2; repeat++) {
+            for (int i = 0; i < 100_000; i++) hll.addHash(HyperLogLog.hash("customer-" + i));
+        }
+        assertEquals(100_000, hll.estimate(), 5_000);
+    }
+}
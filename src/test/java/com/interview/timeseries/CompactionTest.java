@@ -0,0 +1,118 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that compaction keeps every sample, shrinks fragmented blocks, rewrites their segments and is paced.
+ */
+public class CompactionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Map<String, String> TAGS = Map.of("host", "server1");
+
+    private TimeSeriesStoreImpl store;
+
+    private StoreConfig config() {
+        return new StoreConfig().setDataDirectory(folder.getRoot().toPath()).setBlockDurationMs(60_000);
+    }
+
+    private TimeSeriesStoreImpl open(StoreConfig config) {
+        store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        return store;
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) store.shutdown();
+    }
+
+    /**
+     * Inserts 1000 samples of a block that ended minutes ago, newest first, so late merges leave its
+     * chunks split and part-full.
+     */
+    private long insertBackwards() {
+        long blockStart = Math.floorDiv(System.currentTimeMillis() - 600_000, 60_000) * 60_000;
+        for (int i = 999; i >= 0; i--) store.insert(new DataPoint(blockStart + i * 50L, "cpu.usage", i % 7, TAGS));
+        return blockStart;
+    }
+
+    private long blockBytes() {
+        return store.getStats().getBlockBytes().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Test
+    public void testCompactionKeepsSamplesAndShrinksBlock() {
+        open(config().setWalEnabled(false));
+        long blockStart = insertBackwards();
+        List<DataPoint> before = store.query("cpu.usage", blockStart, blockStart + 60_000, TAGS);
+        long bytesBefore = blockBytes();
+
+        assertEquals(1, store.runCompactionNow());
+        assertEquals(before, store.query("cpu.usage", blockStart, blockStart + 60_000, TAGS));
+        assertTrue(blockBytes() < bytesBefore);
+        assertTrue(store.getStats().getCompactedBytes() > 0);
+        assertEquals(0, store.runCompactionNow());
+
+        // A late sample reopens the block for the next pass
+        assertTrue(store.insert(new DataPoint(blockStart + 25, "cpu.usage", 9, TAGS)));
+        assertEquals(1, store.runCompactionNow());
+        assertEquals(1001, store.query("cpu.usage", blockStart, blockStart + 60_000, TAGS).size());
+    }
+
+    @Test
+    public void testCompactionRewritesCheckpointedSegment() throws Exception {
+        StoreConfig config = config();
+        open(config);
+        long blockStart = insertBackwards();
+        store.runCleanupNow();
+        assertTrue(store.insert(new DataPoint(blockStart + 25, "cpu.usage", 9, TAGS)));
+        assertEquals(1, store.runCompactionNow());
+        store.crash();
+        store = null;
+
+        // Without the write-ahead log, the late sample can only come from the rewritten segment
+        try (Stream<Path> files = Files.walk(folder.getRoot().toPath().resolve("wal"))) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        open(config);
+        List<DataPoint> points = store.query("cpu.usage", blockStart, blockStart + 60_000, TAGS);
+        assertEquals(1001, points.size());
+        assertEquals(9, points.get(1).getValue(), 0.0);
+    }
+
+    @Test
+    public void testCompactionIsThrottled() {
+        open(config().setWalEnabled(false).setCompactionBytesPerSecond(10_000));
+        long blockStart = Math.floorDiv(System.currentTimeMillis() - 600_000, 60_000) * 60_000;
+        Random random = new Random(42);
+        for (int s = 0; s < 4; s++) {
+            Map<String, String> tags = Map.of("host", "server" + s);
+            // Newest first, so no chunk is left full and compaction re-encodes every sample
+            for (int i = 599; i >= 0; i--) {
+                store.insert(new DataPoint(blockStart + i * 50L, "cpu.usage", random.nextDouble(), tags));
+            }
+        }
+
+        long begin = System.nanoTime();
+        assertEquals(1, store.runCompactionNow());
+        long elapsedMs = (System.nanoTime() - begin) / 1_000_000;
+        // Each series re-encodes to about 5 KB, and all but the last are paid for by waiting
+        assertTrue("compaction took " + elapsedMs + " ms", elapsedMs >= 1000);
+    }
+}
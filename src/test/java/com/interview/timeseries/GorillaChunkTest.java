@@ -0,0 +1,66 @@
+package com.interview.timeseries;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip tests for the Gorilla chunk encoding.
+ */
+public class GorillaChunkTest {
+
+    @Test
+    public void testRoundTripRegularSeries() {
+        Chunk chunk = new Chunk();
+        long ts = 1_700_000_000_000L;
+        for (int i = 0; i < Chunk.CAPACITY; i++) {
+            chunk.append(ts + i * 15_000L, 42.5 + (i % 10) * 0.25);
+        }
+        GorillaChunk encoded = GorillaChunk.encode(chunk);
+
+        assertRoundTrip(chunk, encoded);
+        // Regular intervals with small value changes should take far less than 16 bytes per sample
+        assertTrue(encoded.sizeInBytes() < chunk.size() * 4);
+    }
+
+    @Test
+    public void testRoundTripIrregularSeries() {
+        Random random = new Random(7);
+        Chunk chunk = new Chunk();
+        long ts = 1_700_000_000_000L;
+        double[] specials = {Double.NaN, -0.0, 0.0, Double.MAX_VALUE, Double.MIN_VALUE, Double.NEGATIVE_INFINITY};
+        for (int i = 0; i < Chunk.CAPACITY; i++) {
+            // Mix of equal timestamps, small jitter, and large gaps
+            int kind = random.nextInt(4);
+            ts += kind == 0 ? 0 : kind == 1 ? random.nextInt(100) : kind == 2 ? random.nextInt(5000) : random.nextInt(Integer.MAX_VALUE);
+            double value = i % 17 == 0 ? specials[i % specials.length] : random.nextGaussian() * 1e6;
+            chunk.append(ts, value);
+        }
+
+        assertRoundTrip(chunk, GorillaChunk.encode(chunk));
+    }
+
+    @Test
+    public void testSingleSample() {
+        Chunk chunk = new Chunk();
+        chunk.append(-5, 1.5);
+        GorillaChunk encoded = GorillaChunk.encode(chunk);
+
+        assertRoundTrip(chunk, encoded);
+        assertEquals(-5, encoded.minTime());
+        assertEquals(-5, encoded.maxTime());
+    }
+
+    private static void assertRoundTrip(Chunk expected, GorillaChunk encoded) {
+        assertEquals(expected.size(), encoded.size());
+        ChunkIterator it = encoded.iterator();
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(it.next());
+            assertEquals(expected.getTimestamp(i), it.timestamp());
+            assertEquals(Double.doubleToRawLongBits(expected.getValue(i)), Double.doubleToRawLongBits(it.value()));
+        }
+        assertFalse(it.next());
+    }
+}
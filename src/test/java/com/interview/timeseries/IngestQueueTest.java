@@ -0,0 +1,200 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks asynchronous inserts through the ingestion queue and each overload policy.
+ */
+public class IngestQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStoreImpl store;
+
+    @After
+    public void tearDown() {
+        if (store != null) store.shutdown();
+    }
+
+    @Test
+    public void testAsyncInsertsFromManyProducers() throws Exception {
+        store = new TimeSeriesStoreImpl(new StoreConfig().setDataDirectory(folder.getRoot().toPath())
+                .setIngestThreads(2).setOutOfOrderToleranceMs(1000));
+        assertTrue(store.initialize());
+        long now = System.currentTimeMillis();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        List<Future<List<CompletableFuture<Boolean>>>> submitted = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            Map<String, String> tags = Map.of("host", "server" + p);
+            submitted.add(producers.submit(() -> {
+                List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+                for (int i = 0; i < 5000; i++) futures.add(store.insertAsync(new DataPoint(now + i, "cpu.usage", i, tags)));
+                return futures;
+            }));
+        }
+        for (Future<List<CompletableFuture<Boolean>>> futures : submitted) {
+            for (CompletableFuture<Boolean> future : futures.get()) assertTrue(future.get(10, TimeUnit.SECONDS));
+        }
+        producers.shutdown();
+
+        assertFalse(store.insertAsync(new DataPoint(now - 5000, "cpu.usage", 0, Map.of("host", "server0"))).get());
+        assertTrue(store.insertBatchAsync(List.of(new DataPoint(now, "memory.used", 1, null))).get());
+        assertEquals(20_000, store.query("cpu.usage", now, now + 5000, null).size());
+        StoreStats stats = store.getStats();
+        assertEquals(20_001, stats.getInsertedPoints());
+        assertEquals(1, stats.getRejectedPoints());
+        assertEquals(0, stats.getIngestQueueDepth());
+        assertEquals(20_002, stats.getIngestBatchSize().getSum());
+    }
+
+    @Test
+    public void testMixedAsyncInsertsApplyInQueueOrder() throws Exception {
+        store = new TimeSeriesStoreImpl(new StoreConfig().setDataDirectory(folder.newFolder("async").toPath())
+                .setIngestThreads(2).setOutOfOrderToleranceMs(1000));
+        TimeSeriesStoreImpl sync = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.newFolder("sync").toPath()).setOutOfOrderToleranceMs(1000));
+        assertTrue(store.initialize());
+        assertTrue(sync.initialize());
+        try {
+            long now = System.currentTimeMillis();
+            Map<String, String> tags = Map.of("host", "server1");
+            // Each entry is a single point or a batch; the series' newest sample moves the tolerance edge
+            List<List<DataPoint>> inserts = List.of(
+                    List.of(new DataPoint(now, "cpu.usage", 1, tags)),
+                    List.of(new DataPoint(now + 2000, "cpu.usage", 2, tags), new DataPoint(now, "memory.used", 1, null)),
+                    List.of(new DataPoint(now + 1500, "cpu.usage", 3, tags)),
+                    List.of(new DataPoint(now + 500, "cpu.usage", 4, tags)),
+                    List.of(new DataPoint(now + 900, "cpu.usage", 5, tags), new DataPoint(now + 1200, "cpu.usage", 6, tags)),
+                    List.of(new DataPoint(now + 3100, "cpu.usage", 7, tags)),
+                    List.of(new DataPoint(now + 2050, "cpu.usage", 8, tags)),
+                    List.of(new DataPoint(now + 2100, "cpu.usage", 9, tags), new DataPoint(now + 2150, "cpu.usage", 10, tags)),
+                    // Spans more than the tolerance, but each sample is within it of the newest before it
+                    List.of(new DataPoint(now + 2200, "cpu.usage", 11, tags), new DataPoint(now + 3000, "cpu.usage", 12, tags),
+                            new DataPoint(now + 3800, "cpu.usage", 13, tags)));
+
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (List<DataPoint> points : inserts) {
+                futures.add(points.size() == 1 ? store.insertAsync(points.get(0)) : store.insertBatchAsync(points));
+            }
+            for (int i = 0; i < inserts.size(); i++) {
+                assertEquals("insert " + i, sync.insertBatch(inserts.get(i)), futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(sync.query("cpu.usage", now - 5000, now + 5000, null),
+                    store.query("cpu.usage", now - 5000, now + 5000, null));
+            assertEquals(10, store.query("cpu.usage", now - 5000, now + 5000, null).size());
+            assertTrue(futures.get(futures.size() - 1).get());
+            assertEquals(sync.getStats().getRejectedPoints(), store.getStats().getRejectedPoints());
+        } finally {
+            sync.shutdown();
+        }
+    }
+
+    /**
+     * Opens a queue whose single writer stalls on its first batch until released, with two free slots.
+     */
+    private IngestQueue stalledQueue(OverloadPolicy policy, StoreMetrics metrics, CountDownLatch stalled,
+                                     CountDownLatch release, List<IngestQueue.Request> applied) {
+        IngestQueue queue = new IngestQueue(2, 1, policy, batch -> {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied.addAll(batch);
+            for (IngestQueue.Request request : batch) request.future.complete(true);
+        }, metrics);
+        return queue;
+    }
+
+    private static IngestQueue.Request request(long timestamp) {
+        return new IngestQueue.Request(SeriesKey.probe("cpu.usage", Map.of()), new DataPoint(timestamp, "cpu.usage", 0, null));
+    }
+
+    @Test
+    public void testRejectAndDropOldestPolicies() throws Exception {
+        for (OverloadPolicy policy : new OverloadPolicy[]{OverloadPolicy.REJECT, OverloadPolicy.DROP_OLDEST}) {
+            StoreMetrics metrics = new StoreMetrics();
+            CountDownLatch stalled = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<IngestQueue.Request> applied = new ArrayList<>();
+            IngestQueue queue = stalledQueue(policy, metrics, stalled, release, applied);
+
+            CompletableFuture<Boolean> first = queue.submit(request(0), 0);
+            assertTrue(stalled.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> second = queue.submit(request(1), 0);
+            CompletableFuture<Boolean> third = queue.submit(request(2), 0);
+            CompletableFuture<Boolean> fourth = queue.submit(request(3), 0);
+            assertEquals(2, queue.depth());
+            release.countDown();
+            queue.close();
+
+            assertTrue(first.get());
+            CompletableFuture<Boolean> refused = policy == OverloadPolicy.REJECT ? fourth : second;
+            try {
+                refused.get();
+                fail("expected the " + policy + " policy to refuse an insert");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals(3, applied.size());
+            assertEquals(policy == OverloadPolicy.REJECT ? 1 : 0, metrics.ingestRejected.sum());
+            assertEquals(policy == OverloadPolicy.DROP_OLDEST ? 1 : 0, metrics.ingestDropped.sum());
+            assertTrue(third.get());
+        }
+    }
+
+    @Test
+    public void testBlockPolicyWaitsForRoom() throws Exception {
+        StoreMetrics metrics = new StoreMetrics();
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<IngestQueue.Request> applied = new ArrayList<>();
+        IngestQueue queue = stalledQueue(OverloadPolicy.BLOCK, metrics, stalled, release, applied);
+
+        queue.submit(request(0), 0);
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+        queue.submit(request(1), 0);
+        queue.submit(request(2), 0);
+        CompletableFuture<CompletableFuture<Boolean>> blocked = CompletableFuture.supplyAsync(() -> queue.submit(request(3), 0));
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        release.countDown();
+        assertTrue(blocked.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+        queue.close();
+        assertEquals(4, applied.size());
+        assertEquals(1, metrics.ingestBlockedTime.snapshot().getCount());
+    }
+
+    @Test
+    public void testRingKeepsOrderAndBound() {
+        IngestRing<Integer> ring = new IngestRing<>(5);
+        assertEquals(8, ring.capacity());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 8; i++) assertTrue(ring.offer(i));
+            assertFalse(ring.offer(8));
+            assertEquals(8, ring.size());
+            for (int i = 0; i < 8; i++) assertEquals(i, (int) ring.poll());
+            assertNull(ring.poll());
+        }
+    }
+}
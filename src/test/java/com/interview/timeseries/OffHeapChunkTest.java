@@ -0,0 +1,136 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that chunks kept in off-heap arenas read back like heap chunks, survive expiry while read and
+ * are not copied again by compaction.
+ */
+public class OffHeapChunkTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStoreImpl heap;
+    private TimeSeriesStoreImpl offHeap;
+
+    @Before
+    public void setUp() throws Exception {
+        heap = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.newFolder("heap").toPath())
+                .setBlockDurationMs(HOUR));
+        offHeap = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.newFolder("offheap").toPath())
+                .setBlockDurationMs(HOUR)
+                .setOffHeapChunks(true));
+        assertTrue(heap.initialize());
+        assertTrue(offHeap.initialize());
+    }
+
+    @After
+    public void tearDown() {
+        heap.shutdown();
+        offHeap.shutdown();
+    }
+
+    @Test
+    public void testOffHeapChunksMatchHeapChunks() {
+        long now = System.currentTimeMillis();
+        long start = now - 3 * HOUR;
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            points.add(new DataPoint(start + i * 500L, "cpu.usage", i % 97, Map.of("host", "server" + (i % 3))));
+        }
+        // Late samples and duplicates rewrite sealed chunks
+        for (int i = 0; i < 2_000; i += 7) {
+            points.add(new DataPoint(start + i * 500L + 1, "cpu.usage", -i, Map.of("host", "server0")));
+            points.add(points.get(i));
+        }
+        Collections.shuffle(points.subList(0, 5_000));
+        for (DataPoint dp : points) {
+            heap.insert(dp);
+            offHeap.insert(dp);
+        }
+
+        assertTrue(offHeap.offHeapBytes() > 0);
+        assertEquals(0, heap.offHeapBytes());
+        assertEquals(heap.pointCount(), offHeap.pointCount());
+        assertEquals(heap.query("cpu.usage", start, now, null), offHeap.query("cpu.usage", start, now, null));
+        assertEquals(heap.query("cpu.usage", start + HOUR / 2, start + 2 * HOUR, Map.of("host", "server0")),
+                offHeap.query("cpu.usage", start + HOUR / 2, start + 2 * HOUR, Map.of("host", "server0")));
+    }
+
+    @Test
+    public void testDroppedBlockStaysReadableUntilReleased() {
+        Partition partition = new Partition(HOUR, HOUR, new long[0], true);
+        SeriesRef ref = new SeriesRef(0, SeriesKey.probe("cpu.usage", null), partition);
+        long start = 10 * HOUR;
+        for (int i = 0; i < 5_000; i++) ref.insert(start + i, i);
+        assertTrue(partition.offHeapBytes() > 0);
+
+        ChunkIterator open = ref.iterator(start, start + HOUR);
+        List<Long> expired = new ArrayList<>();
+        partition.dropExpired(start + 3 * HOUR, expired);
+        assertEquals(List.of(start), expired);
+        assertEquals(0, partition.offHeapBytes());
+        assertFalse(ref.iterator(start, start + HOUR).next());
+
+        // The cursor opened before expiry still holds the block's arena
+        int count = 0;
+        while (open.next()) {
+            assertEquals(start + count, open.timestamp());
+            assertEquals(count, open.value(), 0.0);
+            count++;
+        }
+        assertEquals(5_000, count);
+    }
+
+    @Test
+    public void testCompactionCopiesOnlyNewChunksIntoArena() {
+        Partition partition = new Partition(HOUR, HOUR, new long[0], true);
+        SeriesRef ref = new SeriesRef(0, SeriesKey.probe("cpu.usage", null), partition);
+        long start = 10 * HOUR;
+        Random random = new Random(42);
+        // Random values encode to several bytes each, so the sealed chunks fill a few megabytes of slabs
+        for (int i = 0; i < 600_000; i++) ref.insert(start + i * 5L, random.nextDouble());
+        ref.insert(start + 2_999_000 + 1, -1);
+        List<Double> before = samples(ref.iterator(start, start + HOUR));
+        long allocated = partition.offHeapBytes();
+        assertTrue(allocated > 2 * ChunkArena.MAX_SLAB_BYTES);
+
+        Block block = partition.blocks().iterator().next();
+        for (Series series : block.series()) assertTrue(series.compact() > 0);
+        for (Series series : block.series()) assertEquals(0, series.compact());
+
+        // Only the head and the chunks the late sample falls into were re-encoded, into at most one more slab
+        assertTrue(partition.offHeapBytes() - allocated <= ChunkArena.MAX_SLAB_BYTES);
+        assertEquals(before, samples(ref.iterator(start, start + HOUR)));
+    }
+
+    /**
+     * @return the timestamps and values of the cursor, interleaved.
+     */
+    private static List<Double> samples(ChunkIterator it) {
+        List<Double> out = new ArrayList<>();
+        while (it.next()) {
+            out.add((double) it.timestamp());
+            out.add(it.value());
+        }
+        it.close();
+        return out;
+    }
+}
@@ -0,0 +1,68 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that queries split into fork-join tasks return exactly what a sequential query returns.
+ */
+public class ParallelQueryTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStoreImpl store;
+
+    @Before
+    public void setUp() {
+        store = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.getRoot().toPath())
+                .setBlockDurationMs(HOUR)
+                .setQueryParallelism(4)
+                .setParallelQueryThreshold(1));
+        assertTrue(store.initialize());
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void testParallelQueryMatchesSequentialOrder() {
+        long now = System.currentTimeMillis();
+        long start = now - 6 * HOUR;
+        // Equal timestamps across series and a backwards-inserted series spanning every block
+        for (int i = 0; i < 6000; i++) {
+            long ts = start + (i / 10) * 36_000L;
+            store.insert(new DataPoint(ts, "cpu.usage", i, Map.of("host", "server" + (i % 10))));
+        }
+        for (int i = 599; i >= 0; i--) {
+            store.insert(new DataPoint(start + i * 36_000L + 1, "cpu.usage", -i, Map.of("host", "backfill")));
+        }
+
+        assertSameAsCursor("cpu.usage", start, now, null);
+        assertSameAsCursor("cpu.usage", start + 1, start + 3 * HOUR + 7, null);
+        assertSameAsCursor("cpu.usage", start, now, Map.of("host", "backfill"));
+        assertSameAsCursor("cpu.usage", start, now, Map.of("host", "missing"));
+    }
+
+    private void assertSameAsCursor(String metric, long startTime, long endTime, Map<String, String> filters) {
+        List<DataPoint> expected = new ArrayList<>();
+        try (QueryCursor cursor = store.queryCursor(metric, startTime, endTime, filters)) {
+            while (cursor.hasNext()) expected.add(cursor.next());
+        }
+        assertEquals(expected, store.query(metric, startTime, endTime, filters));
+    }
+}
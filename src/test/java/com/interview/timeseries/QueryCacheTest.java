@@ -0,0 +1,115 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that cached query results match the series and follow late inserts, cleanup and the budget.
+ */
+public class QueryCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Map<String, String> TAGS = Map.of("host", "server1");
+
+    private TimeSeriesStoreImpl store;
+
+    private TimeSeriesStoreImpl open(StoreConfig config) {
+        store = new TimeSeriesStoreImpl(config.setDataDirectory(folder.getRoot().toPath()).setWalEnabled(false));
+        assertTrue(store.initialize());
+        return store;
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) store.shutdown();
+    }
+
+    /**
+     * Inserts one sample per second over the last ten minutes.
+     */
+    private void insertLastMinutes(long now) {
+        for (long t = now - 600_000; t < now; t += 1000) store.insert(new DataPoint(t, "cpu.usage", t % 97, TAGS));
+    }
+
+    @Test
+    public void testSlidingWindowServesPastBlocksFromCache() {
+        open(new StoreConfig().setBlockDurationMs(60_000).setQueryCacheBytes(1 << 20));
+        long now = System.currentTimeMillis();
+        insertLastMinutes(now);
+
+        List<DataPoint> first = store.query("cpu.usage", now - 300_000, now + 1, TAGS);
+        assertEquals(300, first.size());
+        long misses = store.getStats().getQueryCacheMisses();
+        assertTrue(misses >= 5);
+        assertEquals(0, store.getStats().getQueryCacheHits());
+
+        List<DataPoint> second = store.query("cpu.usage", now - 300_000, now + 1, TAGS);
+        assertEquals(first, second);
+        for (int i = 1; i < second.size(); i++) {
+            assertTrue(second.get(i - 1).getTimestamp() <= second.get(i).getTimestamp());
+        }
+        StoreStats stats = store.getStats();
+        assertEquals(misses, stats.getQueryCacheHits());
+        assertEquals(misses, stats.getQueryCacheMisses());
+        assertTrue(stats.getQueryCacheBytes() > 0);
+
+        // A shifted window reuses the same blocks, cut to the new range
+        assertEquals(first.subList(10, 300), store.query("cpu.usage", now - 290_000, now + 1, TAGS));
+    }
+
+    @Test
+    public void testLateInsertInvalidatesCachedBlock() {
+        open(new StoreConfig().setBlockDurationMs(60_000).setQueryCacheBytes(1 << 20));
+        long now = System.currentTimeMillis();
+        insertLastMinutes(now);
+        long late = now - 450_500;
+        int before = store.query("cpu.usage", now - 600_000, now, TAGS).size();
+
+        assertTrue(store.insert(new DataPoint(late, "cpu.usage", -1, TAGS)));
+        List<DataPoint> results = store.query("cpu.usage", now - 600_000, now, TAGS);
+        assertEquals(before + 1, results.size());
+        assertTrue(results.stream().anyMatch(dp -> dp.getTimestamp() == late && dp.getValue() == -1));
+        assertEquals(1, store.getStats().getQueryCacheInvalidations());
+
+        store.insertBatch("cpu.usage", TAGS, new long[]{late + 1, late + 120_000}, new double[]{-2, -3});
+        assertEquals(before + 3, store.query("cpu.usage", now - 600_000, now, TAGS).size());
+        assertEquals(3, store.getStats().getQueryCacheInvalidations());
+    }
+
+    @Test
+    public void testBudgetEvictsLeastRecentlyUsedBlocks() {
+        // Room for about two blocks of 60 points each
+        open(new StoreConfig().setBlockDurationMs(60_000).setQueryCacheBytes(7_000));
+        long now = System.currentTimeMillis();
+        insertLastMinutes(now);
+
+        assertEquals(600, store.query("cpu.usage", now - 600_000, now + 1, TAGS).size());
+        StoreStats stats = store.getStats();
+        assertTrue(stats.getQueryCacheEvictions() > 0);
+        assertTrue(stats.getQueryCacheBytes() <= 7_000);
+        assertEquals(600, store.query("cpu.usage", now - 600_000, now + 1, TAGS).size());
+    }
+
+    @Test
+    public void testCleanupDropsCachedBlocks() throws InterruptedException {
+        open(new StoreConfig().setBlockDurationMs(100).setRetentionMs(500).setQueryCacheBytes(1 << 20));
+        long now = System.currentTimeMillis();
+        for (long t = now - 400; t < now; t += 10) store.insert(new DataPoint(t, "cpu.usage", 1, TAGS));
+        assertFalse(store.query("cpu.usage", now - 400, now, TAGS).isEmpty());
+        assertTrue(store.getStats().getQueryCacheBytes() > 0);
+
+        Thread.sleep(1000);
+        store.runCleanupNow();
+        assertEquals(0, store.getStats().getQueryCacheBytes());
+        assertTrue(store.query("cpu.usage", now - 400, now, TAGS).isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+package com.interview.timeseries;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Workload data for performance tests, shaped like the output of generate_sample_data.py.
+ * Reads the CSV written by the script if present (path from the "timeseries.sampleData" system
+ * property, default time_series_data.csv), otherwise synthesizes comparable data:
+ * per-host metrics at a 15 second interval with slowly varying values rounded to 2 decimals.
+ */
+final class SampleData {
+
+    private static final String[] METRICS = {
+            "cpu.usage", "memory.used", "disk.io", "network.in.bytes", "network.out.bytes",
+            "latency.ms", "requests.count", "disk.free", "errors.count", "temperature"
+    };
+    private static final String[] DATACENTERS = {"us-east", "us-west", "eu-central", "ap-south", "ap-northeast"};
+    private static final String[] SERVICES = {"api", "web", "db", "cache", "auth", "worker", "queue", "storage"};
+
+    private SampleData() {
+    }
+
+    /**
+     * Loads up to {@code maxPoints} data points, ordered by timestamp.
+     */
+    static List<DataPoint> load(int maxPoints) {
+        Path path = Paths.get(System.getProperty("timeseries.sampleData", "time_series_data.csv"));
+        if (Files.exists(path)) {
+            try {
+                return readCsv(path, maxPoints);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return synthesize(maxPoints, 35, System.currentTimeMillis() - 24L * 60 * 60 * 1000, 15_000);
+    }
+
+    /**
+     * Generates data points for {@code hosts} hosts and the default metric set, one sample per
+     * metric and host every {@code intervalMs}, starting at {@code startTime}.
+     */
+    static List<DataPoint> synthesize(int maxPoints, int hosts, long startTime, long intervalMs) {
+        Random random = new Random(42);
+        List<Map<String, String>> hostTags = new ArrayList<>();
+        for (int h = 0; h < hosts; h++) {
+            hostTags.add(Map.of(
+                    "host", String.format("server%02d", h + 1),
+                    "datacenter", DATACENTERS[random.nextInt(DATACENTERS.length)],
+                    "service", SERVICES[random.nextInt(SERVICES.length)]));
+        }
+        double[] last = new double[hosts * METRICS.length];
+        for (int i = 0; i < last.length; i++) last[i] = 20 + random.nextInt(60);
+
+        List<DataPoint> points = new ArrayList<>(maxPoints);
+        for (long ts = startTime; points.size() < maxPoints; ts += intervalMs) {
+            for (int h = 0; h < hosts && points.size() < maxPoints; h++) {
+                for (int m = 0; m < METRICS.length && points.size() < maxPoints; m++) {
+                    int k = h * METRICS.length + m;
+                    double drift = random.nextDouble() < 0.02 ? random.nextGaussian() * 20 : random.nextGaussian();
+                    last[k] = Math.max(0, Math.min(100, last[k] + drift));
+                    double value = Math.round(last[k] * 100) / 100.0;
+                    // Collectors stamp samples with a little jitter around the nominal interval
+                    points.add(new DataPoint(ts + random.nextInt(5), METRICS[m], value, hostTags.get(h)));
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Reads the script's CSV layout: timestamp (seconds), metric, value, then one column per tag key.
+     */
+    private static List<DataPoint> readCsv(Path path, int maxPoints) throws IOException {
+        List<DataPoint> points = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String[] header = reader.readLine().split(",");
+            String line;
+            while (points.size() < maxPoints && (line = reader.readLine()) != null) {
+                String[] parts = line.split(",", -1);
+                Map<String, String> tags = new HashMap<>();
+                for (int i = 3; i < parts.length && i < header.length; i++) {
+                    if (!parts[i].isEmpty()) tags.put(header[i], parts[i]);
+                }
+                points.add(new DataPoint(Long.parseLong(parts[0]) * 1000, parts[1], Double.parseDouble(parts[2]), tags));
+            }
+        }
+        return points;
+    }
+}
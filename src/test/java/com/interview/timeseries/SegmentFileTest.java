@@ -0,0 +1,129 @@
+package com.interview.timeseries;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the binary segment files used for persistence.
+ */
+public class SegmentFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRestartMapsOneSegmentPerBlock() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        StoreConfig config = new StoreConfig().setDataDirectory(dir).setBlockDurationMs(60_000);
+        long start = (System.currentTimeMillis() / 60_000 - 10) * 60_000;
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        // 5 minutes of data at 100ms for two hosts: 5 blocks, several sealed chunks per block
+        for (int i = 0; i < 3000; i++) {
+            store.insert(new DataPoint(start + i * 100L, "cpu.usage", i % 100, Map.of("host", "server1")));
+            store.insert(new DataPoint(start + i * 100L, "cpu.usage", -i, Map.of("host", "server2")));
+        }
+        List<DataPoint> before = store.query("cpu.usage", start, start + 300_000, null);
+        assertTrue(store.shutdown());
+
+        assertEquals(5, SegmentFile.list(dir.resolve("segments")).size());
+
+        TimeSeriesStoreImpl restored = new TimeSeriesStoreImpl(config);
+        assertTrue(restored.initialize());
+        try {
+            assertEquals(before, restored.query("cpu.usage", start, start + 300_000, null));
+            // A range crossing a block boundary reads from both mapped segments
+            List<DataPoint> server2 = restored.query("cpu.usage", start + 59_850, start + 60_150, Map.of("host", "server2"));
+            assertEquals(3, server2.size());
+            assertEquals(-600.0, server2.get(1).getValue(), 0.001);
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    @Test
+    public void testLazyParallelRecovery() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        StoreConfig config = new StoreConfig().setDataDirectory(dir).setBlockDurationMs(60_000).setRecoveryThreads(4);
+        long start = (System.currentTimeMillis() / 60_000 - 30) * 60_000;
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        for (int i = 0; i < 20 * 600; i++) {
+            store.insert(new DataPoint(start + i * 100L, "cpu.usage", i, Map.of("host", "server" + (i % 7))));
+        }
+        assertTrue(store.shutdown());
+
+        TimeSeriesStoreImpl restored = new TimeSeriesStoreImpl(config.setLazyRecovery(true));
+        assertTrue(restored.initialize());
+        try {
+            // Recent data is served right away; older ranges wait for the background load
+            assertEquals(600, restored.query("cpu.usage", start + 19 * 60_000, start + 20 * 60_000, null).size());
+            assertEquals(20 * 600, restored.query("cpu.usage", start, start + 20 * 60_000, null).size());
+            restored.awaitRecovery();
+            assertTrue(restored.getRecoveryTimeMs() >= 0);
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    @Test
+    public void testCheckpointRewritesOnlyChangedBlocks() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        StoreConfig config = new StoreConfig().setDataDirectory(dir).setBlockDurationMs(60_000);
+        long start = (System.currentTimeMillis() / 60_000 - 10) * 60_000;
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        store.insert(new DataPoint(start, "cpu.usage", 1.0, Map.of("host", "server1")));
+        store.insert(new DataPoint(start + 60_000, "cpu.usage", 2.0, Map.of("host", "server1")));
+        store.runCleanupNow();
+
+        Path first = SegmentFile.pathFor(dir.resolve("segments"), start);
+        Path second = SegmentFile.pathFor(dir.resolve("segments"), start + 60_000);
+        long firstModified = Files.getLastModifiedTime(first).toMillis();
+        Files.setLastModifiedTime(first, FileTime.fromMillis(firstModified - 10_000));
+
+        // A late sample for the second block only rewrites that block's segment
+        store.insert(new DataPoint(start + 60_001, "cpu.usage", 3.0, Map.of("host", "server1")));
+        store.runCleanupNow();
+        assertEquals(firstModified - 10_000, Files.getLastModifiedTime(first).toMillis());
+        assertEquals(2, SegmentFile.open(second).getEntries().get(0).chunks.get(0).size());
+        store.shutdown();
+    }
+
+    @Test
+    public void testImportsLegacyCsv() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        long now = System.currentTimeMillis();
+        Files.write(dir.resolve("data_store.csv"), List.of(
+                now + ",cpu.usage,45.2,host=server1",
+                (now + 1000) + ",memory.used,60.0,host=server1;datacenter=us-west"));
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(new StoreConfig().setDataDirectory(dir));
+        assertTrue(store.initialize());
+        assertTrue(store.shutdown());
+        assertFalse(Files.exists(dir.resolve("data_store.csv")));
+
+        TimeSeriesStoreImpl restored = new TimeSeriesStoreImpl(new StoreConfig().setDataDirectory(dir));
+        assertTrue(restored.initialize());
+        try {
+            List<DataPoint> memory = restored.query("memory.used", now, now + 2000, Map.of("datacenter", "us-west"));
+            assertEquals(1, memory.size());
+            assertEquals(60.0, memory.get(0).getValue(), 0.001);
+        } finally {
+            restored.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the store's own metrics and the histograms behind them.
+ */
+public class StoreStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStoreImpl store;
+
+    @Before
+    public void setUp() {
+        store = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.getRoot().toPath())
+                .setOutOfOrderToleranceMs(60_000));
+        assertTrue(store.initialize());
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void testHistogramPercentilesWithinPrecision() {
+        Histogram histogram = new Histogram();
+        for (long v = 1; v <= 100_000; v++) histogram.record(v * 1000);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(50_000_500.0, snapshot.getMean(), 1.0);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            double expected = p * 1000 * 1000;
+            assertEquals(expected, snapshot.getPercentile(p), expected / 32);
+        }
+        assertEquals(100_000_000, snapshot.getMax(), 100_000_000 / 32);
+
+        histogram.record(7);
+        HistogramSnapshot delta = histogram.snapshot().since(snapshot);
+        assertEquals(1, delta.getCount());
+        assertEquals(7, delta.getPercentile(50));
+    }
+
+    @Test
+    public void testStatsCountInsertsQueriesAndBlocks() {
+        long now = System.currentTimeMillis();
+        Map<String, String> tags = Map.of("host", "server1");
+        for (int i = 0; i < 100; i++) store.insert(new DataPoint(now + i, "cpu.usage", i, tags));
+        assertFalse(store.insert(new DataPoint(now - 120_000, "cpu.usage", 0, tags)));
+        store.insertBatch("memory.used", tags, new long[]{now, now + 1}, new double[]{1, 2});
+
+        assertEquals(100, store.query("cpu.usage", now, now + 100, tags).size());
+        store.aggregate("cpu.usage", now, now + 100, tags, 7, Aggregator.SUM, Collections.emptyList());
+        try (QueryCursor cursor = store.queryCursor("cpu.usage", now, now + 100, tags)) {
+            cursor.next();
+        }
+
+        StoreStats stats = store.getStats();
+        assertEquals(102, stats.getInsertedPoints());
+        assertEquals(1, stats.getRejectedPoints());
+        assertTrue(stats.getInsertLatency().getCount() <= 100);
+        assertEquals(2, stats.getQueryLatency().getCount());
+        assertEquals(3, stats.getPointsPerQuery().getCount());
+        assertEquals(201, stats.getPointsPerQuery().getSum());
+        assertEquals(2, stats.getSeries());
+        assertTrue(stats.getBlockBytes().values().stream().mapToLong(Long::longValue).sum() >= 102 * 2);
+    }
+
+    @Test
+    public void testSelfMetricsAreQueryable() {
+        long now = System.currentTimeMillis();
+        store.insert(new DataPoint(now, "cpu.usage", 1, Map.of("host", "server1")));
+        store.recordSelfMetrics();
+
+        assertEquals(1.0, store.query("timeseries.insert.points", now, now + 60_000, null).get(0).getValue(), 0.0);
+        assertEquals(1.0, store.query("timeseries.series", now, now + 60_000, null).get(0).getValue(), 0.0);
+    }
+}
@@ -0,0 +1,348 @@
+package com.interview.timeseries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the line-protocol parser and both network endpoints of the server, on localhost.
+ */
+public class TimeSeriesServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimeSeriesStoreImpl store;
+    private TimeSeriesServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        store = new TimeSeriesStoreImpl(new StoreConfig().setDataDirectory(folder.getRoot().toPath()));
+        assertTrue(store.initialize());
+        server = new TimeSeriesServer(store, new ServerConfig()
+                .setLinePort(0)
+                .setHttpPort(0)
+                .setSelectorThreads(2)
+                .setReadBufferBytes(256));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        store.shutdown();
+    }
+
+    @Test
+    public void testParserReadsLinesAcrossBuffers() {
+        long now = System.currentTimeMillis();
+        String input = "# comment\n"
+                + "cpu.usage,host=server1,dc=us-west 25.5 " + now + "\r\n"
+                + "\n"
+                + "cpu.usage,host=server1,dc=us-west -1.25e1 " + (now + 1) + "\n"
+                + "cpu.usage,host=server2 7 " + (now + 2) + "\n"
+                + "memory.used 0.001 " + now + "\n"
+                + "cpu.usage,host 1 " + now + "\n"
+                + "cpu.usage,host=server1 abc " + now + "\n"
+                + "cpu.usage,host=server1 1 " + now + " extra\n"
+                + "cpu.usage,host=server1,dc=us-west 3";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+        // Fed a few bytes at a time, so lines are split between reads
+        LineProtocolParser parser = new LineProtocolParser(new LongAdder(), new LongAdder());
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        for (int i = 0; i < bytes.length; i += 7) {
+            buffer.put(bytes, i, Math.min(7, bytes.length - i));
+            buffer.flip();
+            parser.parse(buffer, now + 10);
+            buffer.compact();
+            parser.flush(store);
+        }
+        buffer.flip();
+        parser.finish(buffer, now + 10);
+        parser.flush(store);
+
+        assertEquals(5, parser.lines());
+        assertEquals(3, parser.malformed());
+        List<DataPoint> cpu = store.query("cpu.usage", now, now + 100, Map.of("host", "server1"));
+        assertEquals(3, cpu.size());
+        assertEquals(25.5, cpu.get(0).getValue(), 0.0);
+        assertEquals("us-west", cpu.get(0).getTag("dc"));
+        assertEquals(-12.5, cpu.get(1).getValue(), 0.0);
+        assertEquals(now + 10, cpu.get(2).getTimestamp());
+        assertEquals(0.001, store.query("memory.used", now, now + 1, null).get(0).getValue(), 0.0);
+    }
+
+    @Test
+    public void testParserValuesMatchParseDouble() {
+        long now = System.currentTimeMillis();
+        Random random = new Random(42);
+        List<String> values = new ArrayList<>(List.of("0", "-0", "+3", "1e22", "1e23", "4.9e-324", "NaN",
+                "-Infinity", "123456789012345678", "0.1", "3.14159265358979", "00012.50", "1E-5"));
+        for (int i = 0; i < 2000; i++) {
+            values.add(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(20) - 10)));
+            values.add(String.format(Locale.ROOT, "%." + random.nextInt(8) + "f",
+                    (random.nextDouble() - 0.5) * 1e6));
+        }
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            input.append("m ").append(values.get(i)).append(' ').append(now + i).append('\n');
+        }
+
+        LineProtocolParser parser = new LineProtocolParser(new LongAdder(), new LongAdder());
+        parser.parse(ByteBuffer.wrap(input.toString().getBytes(StandardCharsets.US_ASCII)), now);
+        parser.flush(store);
+
+        List<DataPoint> points = store.query("m", now, now + values.size(), null);
+        assertEquals(values.size(), points.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(values.get(i), Double.parseDouble(values.get(i)), points.get(i).getValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testManyLineProtocolClients() throws Exception {
+        int clients = 50;
+        int linesPerClient = 400;
+        long now = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> sent = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            sent.add(pool.submit(() -> {
+                try (SocketChannel channel = SocketChannel.open(
+                        new InetSocketAddress("127.0.0.1", server.getLinePort()))) {
+                    StringBuilder lines = new StringBuilder();
+                    for (int i = 0; i < linesPerClient; i++) {
+                        lines.append("cpu.usage,host=agent").append(client).append(' ')
+                                .append(i).append(' ').append(now + i).append('\n');
+                    }
+                    ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    // Written in odd-sized pieces, so reads end mid-line
+                    while (bytes.hasRemaining()) {
+                        ByteBuffer piece = bytes.duplicate();
+                        piece.limit(Math.min(bytes.limit(), bytes.position() + 333));
+                        bytes.position(bytes.position() + channel.write(piece));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : sent) f.get();
+        pool.shutdown();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (server.getLinesReceived() < clients * linesPerClient && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        while (server.getConnections() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(clients * linesPerClient, server.getLinesReceived());
+        assertEquals(0, server.getMalformedLines());
+        assertEquals(0, server.getConnections());
+        assertEquals(clients * linesPerClient, store.query("cpu.usage", now, now + linesPerClient, null).size());
+        List<DataPoint> agent = store.query("cpu.usage", now, now + linesPerClient, Map.of("host", "agent7"));
+        assertEquals(linesPerClient, agent.size());
+        assertEquals(linesPerClient - 1, agent.get(linesPerClient - 1).getValue(), 0.0);
+    }
+
+    @Test
+    public void testOverlongLineIsSkipped() throws Exception {
+        long now = System.currentTimeMillis();
+        StringBuilder longName = new StringBuilder("cpu");
+        while (longName.length() < 600) longName.append(",k").append(longName.length()).append("=v");
+        String lines = longName + " 1 " + now + "\ncpu.usage 2 " + now + "\n";
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getLinePort()))) {
+            channel.write(ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8)));
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (server.getLinesReceived() < 1 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        // A connection is closed only after its samples are inserted
+        while (server.getConnections() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+        assertEquals(1, server.getLinesReceived());
+        assertEquals(1, server.getMalformedLines());
+        assertEquals(2.0, store.query("cpu.usage", now, now + 1, null).get(0).getValue(), 0.0);
+    }
+
+    @Test
+    public void testHttpWriteQueryAndAggregate() throws Exception {
+        // Aligned to the aggregation bucket, so all samples fall into one
+        long now = System.currentTimeMillis() / 120_000 * 120_000;
+        String body = "cpu.usage,host=server1 10 " + now + "\n"
+                + "cpu.usage,host=server1 20 " + (now + 1000) + "\n"
+                + "cpu.usage,host=server2 30 " + now + "\n";
+        assertEquals(204, request("POST", "/write", body).status);
+        assertEquals(400, request("POST", "/write", "cpu.usage nope " + now).status);
+
+        Response query = request("GET", "/query?metric=cpu.usage&start=" + now + "&end=" + (now + 2000)
+                + "&tag.host=server1", null);
+        assertEquals(200, query.status);
+        assertEquals("{\"metric\":\"cpu.usage\",\"points\":["
+                + "{\"timestamp\":" + now + ",\"value\":10.0,\"tags\":{\"host\":\"server1\"}},"
+                + "{\"timestamp\":" + (now + 1000) + ",\"value\":20.0,\"tags\":{\"host\":\"server1\"}}]}", query.body);
+
+        Response aggregate = request("GET", "/aggregate?metric=cpu.usage&start=" + now
+                + "&end=" + (now + 120_000) + "&bucket=120000&fn=sum", null);
+        assertEquals(200, aggregate.status);
+        assertEquals("{\"metric\":\"cpu.usage\",\"series\":[{\"groupTags\":{},\"points\":[["
+                + now + ",60.0]]}]}", aggregate.body);
+
+        Response missing = request("GET", "/query?start=0&end=1", null);
+        assertEquals(400, missing.status);
+        assertTrue(missing.body.contains("Missing parameter: metric"));
+        assertEquals(405, request("GET", "/write", null).status);
+    }
+
+    @Test
+    public void testHttpFailureAfterResponseStarted() throws Exception {
+        long now = System.currentTimeMillis();
+        // Its cursors fail after the first point, once the response has started; its aggregations at once
+        TimeSeriesStoreImpl failing = new TimeSeriesStoreImpl(
+                new StoreConfig().setDataDirectory(folder.newFolder("failing").toPath())) {
+            @Override
+            public QueryCursor queryCursor(String metric, long startTime, long endTime, Map<String, String> tagFilters,
+                                           long offset, long limit) {
+                QueryCursor cursor = super.queryCursor(metric, startTime, endTime, tagFilters, offset, limit);
+                return new QueryCursor() {
+                    private int read;
+
+                    @Override
+                    public boolean hasNext() {
+                        return cursor.hasNext();
+                    }
+
+                    @Override
+                    public DataPoint next() {
+                        if (read++ > 0) throw new IllegalStateException("Chunk went away");
+                        return cursor.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        cursor.close();
+                    }
+                };
+            }
+
+            @Override
+            public List<AggregateSeries> aggregate(String metric, long startTime, long endTime,
+                                                   Map<String, String> tagFilters, long bucketMs,
+                                                   Aggregator aggregator, List<String> groupByTags) {
+                throw new IllegalStateException("Store is busy");
+            }
+        };
+        assertTrue(failing.initialize());
+        try (TimeSeriesServer failingServer = new TimeSeriesServer(failing, new ServerConfig()
+                .setLinePort(0).setHttpPort(0))) {
+            failingServer.start();
+            for (int i = 0; i < 3; i++) assertTrue(failing.insert(new DataPoint(now + i, "cpu.usage", i, null)));
+            String query = "/query?metric=cpu.usage&start=" + now + "&end=" + (now + 3);
+
+            // The 200 stands, and the body stops short instead of carrying a second response
+            Response cutOff = request(failingServer.getHttpPort(), "GET", query, null);
+            assertEquals(200, cutOff.status);
+            assertTrue(cutOff.body, cutOff.body.startsWith("{\"metric\":\"cpu.usage\",\"points\":[{"));
+            assertFalse(cutOff.body, cutOff.body.contains("error"));
+            assertFalse(cutOff.body, cutOff.body.endsWith("]}"));
+
+            // Before the response starts, a failure still gets its status, and the endpoint keeps serving
+            Response busy = request(failingServer.getHttpPort(), "GET", "/aggregate?metric=cpu.usage&start=" + now
+                    + "&end=" + (now + 3) + "&bucket=1000", null);
+            assertEquals(500, busy.status);
+            assertTrue(busy.body.contains("Store is busy"));
+            assertEquals(400, request(failingServer.getHttpPort(), "GET", "/query?metric=cpu.usage&start=x", null).status);
+        } finally {
+            failing.shutdown();
+        }
+    }
+
+    @Test
+    public void testHttpWriteReportsRejectedSamples() throws Exception {
+        long now = System.currentTimeMillis();
+        TimeSeriesStoreImpl limited = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.newFolder("limited").toPath()).setMaxSeries(1).setOutOfOrderToleranceMs(1000));
+        assertTrue(limited.initialize());
+        try (TimeSeriesServer limitedServer = new TimeSeriesServer(limited, new ServerConfig()
+                .setLinePort(0).setHttpPort(0))) {
+            limitedServer.start();
+            String body = "cpu.usage,host=server1 10 " + now + "\n"
+                    + "cpu.usage,host=server2 20 " + now + "\n"
+                    + "cpu.usage,host=server2 30 " + (now + 1) + "\n";
+            Response write = request(limitedServer.getHttpPort(), "POST", "/write", body);
+            assertEquals(400, write.status);
+            assertTrue(write.body, write.body.contains(
+                    "0 malformed lines skipped, 2 of 3 samples in series batches not fully accepted"));
+            assertEquals(1, limited.query("cpu.usage", now, now + 2, null).size());
+
+            // A minute of in-order samples in one request spans far more than the tolerance
+            StringBuilder minute = new StringBuilder();
+            for (int i = 1; i <= 60; i++) {
+                minute.append("cpu.usage,host=server1 ").append(i).append(' ').append(now + i * 1000L).append('\n');
+            }
+            assertEquals(204, request(limitedServer.getHttpPort(), "POST", "/write", minute.toString()).status);
+            assertEquals(61, limited.query("cpu.usage", now, now + 61_000, null).size());
+        } finally {
+            limited.shutdown();
+        }
+    }
+
+    private Response request(String method, String path, String body) throws IOException {
+        return request(server.getHttpPort(), method, path, body);
+    }
+
+    private static Response request(int port, String method, String path, String body) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + port + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (in != null) {
+            try (in) {
+                in.transferTo(bytes);
+            }
+        }
+        connection.disconnect();
+        return new Response(status, bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -3,8 +3,13 @@ package com.interview.timeseries;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
@@ -16,6 +21,9 @@ import java.util.concurrent.*;
  * Uncomment the @Ignore annotations to run specific tests.
  */
 public class TimeSeriesStorePerformanceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private TimeSeriesStore store;
 
     /**
@@ -57,6 +65,42 @@ public class TimeSeriesStorePerformanceTest {
         System.out.println("Time taken to run the test: " + (System.currentTimeMillis() - now + "ms"));
     }
 
+    /**
+     * Inserts 8 million data points from 8 threads in batches of 1,000 to measure batch ingestion throughput.
+     */
+    @Test
+    @Ignore("Manual test: Multi-threaded batch insertion")
+    public void testConcurrentBatchInsertThroughput() throws Exception {
+        int threads = 8;
+        int batches = 1_000;
+        int batchSize = 1_000;
+        long now = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int b = 0; b < batches; b++) {
+                    List<DataPoint> batch = new ArrayList<>(batchSize);
+                    for (int i = 0; i < batchSize; i++) {
+                        long ts = now - 3_600_000L + (long) b * 10 + i / 100;
+                        batch.add(new DataPoint(ts, "metric.batch", i, Map.of("host", "T" + thread + "-" + (i % 100))));
+                    }
+                    store.insertBatch(batch);
+                }
+            }));
+        }
+        for (Future<?> future : futures) future.get();
+        long durationMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        executor.shutdown();
+
+        long total = (long) threads * batches * batchSize;
+        System.out.println("Inserted " + total + " points in " + durationMs + " ms ("
+                + total * 1000 / durationMs + " points/sec)");
+    }
+
     /**
      * Tests performance of querying data points after insertion.
      */
@@ -72,14 +116,144 @@ public class TimeSeriesStorePerformanceTest {
         System.out.println("Query returned " + results.size() + " results in " + duration + " ms");
     }
 
+    /**
+     * Compares a 24h, 300-bucket average computed server-side with fetching the raw points and aggregating
+     * them in the client, over 100 series with a sample every 10 seconds, then times hourly averages
+     * served from the rollup tiers.
+     */
+    @Test
+    @Ignore("Manual test: Aggregation vs raw query")
+    public void testAggregationPerformance() {
+        long now = System.currentTimeMillis();
+        long start = now - 24L * 60 * 60 * 1000;
+        for (int host = 0; host < 100; host++) {
+            long[] timestamps = new long[8640];
+            double[] values = new double[timestamps.length];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = start + i * 10_000L;
+                values[i] = i % 100;
+            }
+            store.insertBatch("metric.dashboard", Map.of("host", "h" + host), timestamps, values);
+        }
+        long bucket = (now - start) / 300;
+
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            List<DataPoint> raw = store.query("metric.dashboard", start, now, null);
+            double[] sums = new double[301];
+            int[] counts = new int[301];
+            for (DataPoint dp : raw) {
+                int i = (int) ((dp.getTimestamp() - start) / bucket);
+                sums[i] += dp.getValue();
+                counts[i]++;
+            }
+            long t1 = System.nanoTime();
+            List<AggregateSeries> aggregated = store.aggregate("metric.dashboard", start, now, null,
+                    bucket, Aggregator.AVG, null);
+            long t2 = System.nanoTime();
+            System.out.println("Raw query + client aggregation of " + raw.size() + " points: "
+                    + (t1 - t0) / 1_000_000 + " ms, server-side aggregation into "
+                    + aggregated.get(0).size() + " buckets: " + (t2 - t1) / 1_000_000 + " ms");
+        }
+
+        // Hour-aligned ranges with hourly buckets are answered from the 1h rollup tier
+        long hour = 60 * 60 * 1000;
+        long alignedStart = (start / hour + 1) * hour;
+        long alignedEnd = now / hour * hour;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            List<AggregateSeries> hourly = store.aggregate("metric.dashboard", alignedStart, alignedEnd, null,
+                    hour, Aggregator.AVG, null);
+            long t1 = System.nanoTime();
+            System.out.println("Hourly averages from rollups (" + hourly.get(0).size() + " buckets): "
+                    + (t1 - t0) / 1_000 + " us");
+        }
+    }
+
+    /**
+     * Reads a 2-million-point result through a cursor and through query(), and reports the heap each holds.
+     */
+    @Test
+    @Ignore("Manual test: Streaming query memory")
+    public void testStreamingQueryMemory() {
+        long now = System.currentTimeMillis();
+        long start = now - 20L * 60 * 60 * 1000;
+        for (int host = 0; host < 20; host++) {
+            long[] timestamps = new long[100_000];
+            double[] values = new double[timestamps.length];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = start + i * 500L;
+                values[i] = i;
+            }
+            store.insertBatch("metric.stream", Map.of("host", "h" + host), timestamps, values);
+        }
+
+        System.gc();
+        logMemory("Before cursor");
+        long t0 = System.currentTimeMillis();
+        long count = 0;
+        double sum = 0;
+        try (QueryCursor cursor = store.queryCursor("metric.stream", start, now, null)) {
+            while (cursor.hasNext()) {
+                sum += cursor.next().getValue();
+                count++;
+            }
+        }
+        logMemory("After cursor");
+        System.out.println("Cursor read " + count + " points in " + (System.currentTimeMillis() - t0) + " ms (sum " + sum + ")");
+
+        System.gc();
+        t0 = System.currentTimeMillis();
+        List<DataPoint> results = store.query("metric.stream", start, now, null);
+        logMemory("Holding query() list");
+        System.out.println("query() returned " + results.size() + " points in " + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+    /**
+     * Times a whole-fleet query over 1,000 series and 12 hours, run in parallel by query() and sequentially
+     * through a cursor on the caller thread.
+     */
+    @Test
+    @Ignore("Manual test: Parallel vs sequential query")
+    public void testParallelQueryPerformance() {
+        long now = System.currentTimeMillis();
+        long start = now - 12L * 60 * 60 * 1000;
+        for (int host = 0; host < 1000; host++) {
+            long[] timestamps = new long[4320];
+            double[] values = new double[timestamps.length];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = start + i * 10_000L;
+                values[i] = i;
+            }
+            store.insertBatch("metric.fleet", Map.of("host", "h" + host), timestamps, values);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            int parallel = store.query("metric.fleet", start, now, null).size();
+            long t1 = System.nanoTime();
+            int sequential = 0;
+            try (QueryCursor cursor = store.queryCursor("metric.fleet", start, now, null)) {
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    sequential++;
+                }
+            }
+            long t2 = System.nanoTime();
+            System.out.println("Parallel query: " + parallel + " points in " + (t1 - t0) / 1_000_000
+                    + " ms, sequential cursor: " + sequential + " points in " + (t2 - t1) / 1_000_000 + " ms");
+        }
+    }
+
     /**
      * Tests concurrent insertions using multiple threads to evaluate thread-safety and parallel performance.
      */
     @Test
     @Ignore("Manual test: Simulate concurrent load")
-    public void testConcurrentInsertAndQuery() {
+    public void testConcurrentInsertAndQuery() throws InterruptedException {
         ExecutorService executor = Executors.newFixedThreadPool(8);
         long now = System.currentTimeMillis();
+        long start = System.nanoTime();
 
         for (int i = 0; i < 500_000; i++) {
             int finalI = i;
@@ -89,7 +263,53 @@ public class TimeSeriesStorePerformanceTest {
             });
         }
 
-        System.out.println("Time taken to insert 500k records concurrently: " + (System.currentTimeMillis() - now + "ms"));
+        // Time until every insert has run, not just until they were submitted
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.MINUTES);
+        System.out.println("Time taken to insert 500k records concurrently: "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * Inserts 1.6 million data points with 1, 2, 4, 8 and 16 writer threads and reports the throughput of each,
+     * to show how ingestion scales with writer threads across the store's shards.
+     */
+    @Test
+    @Ignore("Manual test: Insert throughput per thread count")
+    public void testInsertThroughputByThreadCount() throws Exception {
+        int total = 1_600_000;
+        long now = System.currentTimeMillis();
+
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            String metric = "metric.scale" + threads;
+            int perThread = total / threads;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < perThread; i++) {
+                        long ts = now - 3_600_000L + i / 16;
+                        store.insert(new DataPoint(ts, metric, i, Map.of("host", "T" + thread + "-" + (i % 16))));
+                    }
+                    return null;
+                }));
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> future : futures) future.get();
+            long durationMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            executor.shutdown();
+
+            System.out.println(threads + " writer threads: " + (long) perThread * threads * 1000 / durationMs
+                    + " points/sec (" + durationMs + " ms)");
+        }
     }
 
     /**
@@ -154,18 +374,100 @@ public class TimeSeriesStorePerformanceTest {
 
         store.shutdown();
 
-        TimeSeriesStore newStore = new TimeSeriesStoreImpl();
+        TimeSeriesStoreImpl newStore = new TimeSeriesStoreImpl();
         long start = System.currentTimeMillis();
         newStore.initialize();
         long duration = System.currentTimeMillis() - start;
 
         System.out.println("Restore time from disk: " + duration + " ms");
+        System.out.println("Recovery time metric: " + newStore.getRecoveryTimeMs() + " ms");
 
         List<DataPoint> result = newStore.query("metric.persist", now - 10000, now, Map.of("restore", "test"));
         System.out.println("Restored " + result.size() + " recent points from disk");
         newStore.shutdown();
     }
 
+    /**
+     * Reports bytes per sample before sealing (raw long[]/double[] columns) and after
+     * Gorilla compression, on generate_sample_data.py-style data.
+     */
+    @Test
+    @Ignore("Manual test: Compression ratio on sample data")
+    public void testCompressionBytesPerPoint() {
+        List<DataPoint> points = SampleData.load(2_000_000);
+        TimeSeriesStoreImpl impl = (TimeSeriesStoreImpl) store;
+
+        logMemory("Before insert");
+        long start = System.currentTimeMillis();
+        for (DataPoint dp : points) {
+            impl.insert(dp);
+        }
+        long duration = System.currentTimeMillis() - start;
+        logMemory("After insert");
+
+        long sealedPoints = impl.sealedPointCount();
+        long sealedBytes = impl.sealedBytes();
+        System.out.println("Inserted " + impl.pointCount() + " points in " + duration + " ms");
+        System.out.println("Raw columnar chunks: " + (Long.BYTES + Double.BYTES) + " bytes/point");
+        System.out.printf("Sealed Gorilla chunks: %.2f bytes/point over %d points%n",
+                sealedPoints == 0 ? 0.0 : (double) sealedBytes / sealedPoints, sealedPoints);
+    }
+
+    /**
+     * Loads 5 million points with sealed chunks on the heap and then off-heap, and reports the live heap,
+     * the direct memory and the time spent in full collections over the retained data. Rollups are
+     * disabled, since their per-bucket sketches would dominate the heap either way.
+     */
+    @Test
+    @Ignore("Manual test: Off-heap chunks and GC")
+    public void testOffHeapChunkGcImpact() throws Exception {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            TimeSeriesStoreImpl impl = new TimeSeriesStoreImpl(new StoreConfig()
+                    .setDataDirectory(folder.newFolder(offHeap ? "offheap" : "heap").toPath())
+                    .setWalEnabled(false)
+                    .setRollupWidthsMs()
+                    .setOffHeapChunks(offHeap));
+            impl.initialize();
+            long now = System.currentTimeMillis();
+            long start = now - 20L * 60 * 60 * 1000;
+            for (int host = 0; host < 500; host++) {
+                long[] timestamps = new long[10_000];
+                double[] values = new double[timestamps.length];
+                for (int i = 0; i < timestamps.length; i++) {
+                    timestamps[i] = start + i * 7_000L;
+                    values[i] = (i * 31 + host) % 1000 / 10.0;
+                }
+                impl.insertBatch("metric.gc", Map.of("host", "h" + host), timestamps, values);
+            }
+
+            System.gc();
+            long gcTime = totalGcTimeMs();
+            long gcCount = totalGcCount();
+            for (int i = 0; i < 10; i++) System.gc();
+            gcTime = totalGcTimeMs() - gcTime;
+            gcCount = totalGcCount() - gcCount;
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf("%s chunks: %d points, heap used %d MB, off-heap %d MB, %d collections in %d ms (%.1f ms each)%n",
+                    offHeap ? "Off-heap" : "Heap", impl.pointCount(),
+                    (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024),
+                    impl.offHeapBytes() / (1024 * 1024), gcCount, gcTime, (double) gcTime / Math.max(1, gcCount));
+            impl.clearAllData();
+            impl.shutdown();
+        }
+    }
+
+    private static long totalGcTimeMs() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += gc.getCollectionTime();
+        return total;
+    }
+
+    private static long totalGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) total += gc.getCollectionCount();
+        return total;
+    }
+
     /**
      * Logs memory usage at the current state with a custom label.
      * Helps track JVM heap consumption during performance tests.
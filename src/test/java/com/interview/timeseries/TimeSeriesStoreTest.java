@@ -2,8 +2,11 @@ package com.interview.timeseries;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +19,9 @@ import static org.junit.Assert.*;
  */
 public class TimeSeriesStoreTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private TimeSeriesStore store;
 
     @Before
@@ -49,6 +55,7 @@ public class TimeSeriesStoreTest {
         assertEquals("cpu.usage", dp.getMetric());
         assertEquals(45.2, dp.getValue(), 0.001);
         assertEquals("server1", dp.getTags().get("host"));
+        assertThrows(UnsupportedOperationException.class, () -> dp.getTags().put("host", "server2"));
     }
 
     @Test
@@ -130,6 +137,178 @@ public class TimeSeriesStoreTest {
         }
     }
 
+    @Test
+    public void testQuerySelectiveTagFilterAcrossManySeries() {
+        // Only the series carrying every filtered tag should be returned
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            store.insert(new DataPoint(now, "cpu.usage", i,
+                    Map.of("host", "server" + i, "datacenter", i % 2 == 0 ? "us-west" : "us-east")));
+        }
+        store.insert(new DataPoint(now, "cpu.usage", 99.0, Map.of("datacenter", "us-west")));
+
+        List<DataPoint> results = store.query("cpu.usage", now, now + 1, Map.of("host", "server42", "datacenter", "us-west"));
+        assertEquals(1, results.size());
+        assertEquals(42.0, results.get(0).getValue(), 0.001);
+
+        assertTrue(store.query("cpu.usage", now, now + 1, Map.of("host", "server43", "datacenter", "us-west")).isEmpty());
+
+        // An empty filter value matches points that do not carry the tag at all
+        results = store.query("cpu.usage", now, now + 1, Map.of("host", "", "datacenter", "us-west"));
+        assertEquals(1, results.size());
+        assertEquals(99.0, results.get(0).getValue(), 0.001);
+    }
+
+    @Test
+    public void testSeriesKeysShareInternedStrings() {
+        // Distinct string instances from different writers resolve to one symbol per distinct string
+        long now = System.currentTimeMillis();
+        store.insert(new DataPoint(now, new String("cpu.usage"), 1.0, Map.of(new String("host"), new String("server1"))));
+        store.insert(new DataPoint(now, new String("cpu.usage"), 2.0, Map.of(new String("host"), new String("server2"))));
+
+        List<DataPoint> results = store.query("cpu.usage", now, now + 1, null);
+        assertEquals(2, results.size());
+        assertSame(results.get(0).getMetric(), results.get(1).getMetric());
+        assertSame(results.get(0).getTags().keySet().iterator().next(),
+                results.get(1).getTags().keySet().iterator().next());
+
+        // Filters on strings no series uses match nothing, or everything for an empty value
+        assertTrue(store.query("cpu.usage", now, now + 1, Map.of("host", "server3")).isEmpty());
+        assertTrue(store.query("cpu.usage", now, now + 1, Map.of("rack", "r1")).isEmpty());
+        assertEquals(2, store.query("cpu.usage", now, now + 1, Map.of("rack", "")).size());
+    }
+
+    @Test
+    public void testOutOfOrderAndDuplicateInsertsAcrossChunks() {
+        // Samples spanning several chunks, inserted backwards, must come back sorted and deduplicated
+        long now = System.currentTimeMillis();
+        Map<String, String> tags = Map.of("host", "server1");
+        int count = 2000;
+
+        for (int i = count - 1; i >= 0; i--) {
+            assertTrue(store.insert(new DataPoint(now + i * 10L, "cpu.usage", i, tags)));
+        }
+        for (int i = 0; i < count; i += 7) {
+            assertTrue(store.insert(new DataPoint(now + i * 10L, "cpu.usage", i, tags)));
+        }
+        // Same timestamp with a different value is a distinct data point
+        store.insert(new DataPoint(now, "cpu.usage", -1.0, tags));
+
+        List<DataPoint> results = store.query("cpu.usage", now, now + count * 10L, tags);
+        assertEquals(count + 1, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).getTimestamp() <= results.get(i).getTimestamp());
+        }
+        assertEquals(now + 10, results.get(2).getTimestamp());
+    }
+
+    @Test
+    public void testInsertBatchGroupsSeriesAndDeduplicates() {
+        // A batch mixing series, out-of-order timestamps and duplicates must match single inserts
+        long now = System.currentTimeMillis();
+        List<DataPoint> batch = new ArrayList<>();
+        for (int i = 999; i >= 0; i--) {
+            batch.add(new DataPoint(now + i, "cpu.usage", i, Map.of("host", "server" + (i % 3))));
+        }
+        batch.add(new DataPoint(now, "cpu.usage", 0, Map.of("host", "server0"))); // duplicate
+        assertTrue(store.insertBatch(batch));
+
+        List<DataPoint> results = store.query("cpu.usage", now, now + 1000, Map.of("host", "server0"));
+        assertEquals(334, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(now + i * 3L, results.get(i).getTimestamp());
+        }
+
+        // The primitive variant adds to the same series, with tags given in any map order
+        Map<String, String> tags = new HashMap<>();
+        tags.put("host", "server0");
+        long[] timestamps = {now + 2000, now + 1000, now + 1000, now};
+        double[] values = {2, 1, 1, 0};
+        assertTrue(store.insertBatch("cpu.usage", tags, timestamps, values));
+        assertEquals(336, store.query("cpu.usage", now, now + 2001, tags).size());
+    }
+
+    @Test
+    public void testQueryCursorMergesSeriesWithOffsetAndLimit() {
+        // Interleaved samples of three series come back merged in timestamp order, as from query()
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3000; i++) {
+            store.insert(new DataPoint(now + i, "cpu.usage", i, Map.of("host", "server" + (i % 3))));
+        }
+        List<DataPoint> all = store.query("cpu.usage", now, now + 3000, null);
+
+        try (QueryCursor cursor = store.queryCursor("cpu.usage", now, now + 3000, null, 1000, 5)) {
+            for (int i = 1000; i < 1005; i++) {
+                assertTrue(cursor.hasNext());
+                DataPoint dp = cursor.next();
+                assertEquals(all.get(i), dp);
+                assertEquals(now + i, dp.getTimestamp());
+            }
+            assertFalse(cursor.hasNext());
+        }
+
+        // Closing early ends the cursor
+        QueryCursor cursor = store.queryCursor("cpu.usage", now, now + 3000, Map.of("host", "server1"));
+        assertEquals(now + 1, cursor.next().getTimestamp());
+        cursor.close();
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testOutOfOrderToleranceRejectsLateSamples() throws Exception {
+        // Late samples within the tolerance are readable before and after they are merged and persisted
+        long now = System.currentTimeMillis();
+        StoreConfig config = new StoreConfig()
+                .setDataDirectory(folder.getRoot().toPath())
+                .setOutOfOrderToleranceMs(1000);
+        TimeSeriesStoreImpl impl = new TimeSeriesStoreImpl(config);
+        impl.initialize();
+        Map<String, String> tags = Map.of("host", "server1");
+        for (int i = 0; i < 2000; i += 2) assertTrue(impl.insert(new DataPoint(now + i, "cpu.usage", i, tags)));
+
+        assertFalse(impl.insert(new DataPoint(now + 997, "cpu.usage", 997, tags)));
+        for (int i = 1001; i < 2000; i += 100) assertTrue(impl.insert(new DataPoint(now + i, "cpu.usage", i, tags)));
+        long[] timestamps = {now + 1, now + 1003, now + 1005};
+        assertFalse(impl.insertBatch("cpu.usage", tags, timestamps, new double[]{1, 1003, 1005}));
+
+        List<DataPoint> results = impl.query("cpu.usage", now, now + 2000, tags);
+        assertEquals(1012, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).getTimestamp() - now, results.get(i).getValue(), 0.0);
+            if (i > 0) assertTrue(results.get(i - 1).getTimestamp() < results.get(i).getTimestamp());
+        }
+        impl.shutdown();
+
+        TimeSeriesStoreImpl reopened = new TimeSeriesStoreImpl(config);
+        reopened.initialize();
+        assertEquals(results, reopened.query("cpu.usage", now, now + 2000, tags));
+        reopened.shutdown();
+    }
+
+    @Test
+    public void testInOrderBatchLongerThanToleranceIsAccepted() {
+        long now = System.currentTimeMillis();
+        TimeSeriesStoreImpl impl = new TimeSeriesStoreImpl(new StoreConfig()
+                .setDataDirectory(folder.getRoot().toPath())
+                .setOutOfOrderToleranceMs(1000));
+        impl.initialize();
+        Map<String, String> tags = Map.of("host", "server1");
+        long[] timestamps = new long[20];
+        double[] values = new double[timestamps.length];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = now + i * 100L;
+            values[i] = i;
+        }
+
+        // Each sample is judged against the series' newest sample before it, as with one insert() each
+        assertTrue(impl.insertBatch("cpu.usage", tags, timestamps, values));
+        assertEquals(20, impl.query("cpu.usage", now, now + 2000, tags).size());
+        assertFalse(impl.insertBatch("cpu.usage", tags, new long[]{now + 800, now + 900, now + 2500},
+                new double[]{8, 9, 25}));
+        assertEquals(21, impl.query("cpu.usage", now, now + 3000, tags).size());
+        impl.shutdown();
+    }
+
     @Test
     public void testCleanupRemovesOldData() {
         // Insert old data and verify that cleanup removes it
@@ -142,4 +321,33 @@ public class TimeSeriesStoreTest {
         List<DataPoint> results = store.query("cpu.usage", oldTimestamp, now, Map.of("host", "server1"));
         assertTrue(results.isEmpty());
     }
+
+    @Test
+    public void testPerMetricRetention() throws Exception {
+        // A metric with a shorter retention expires on its own schedule, and is never queried past it
+        long hour = 60L * 60 * 1000;
+        long now = System.currentTimeMillis();
+        StoreConfig config = new StoreConfig()
+                .setDataDirectory(folder.getRoot().toPath())
+                .setBlockDurationMs(hour)
+                .setRetentionMs("debug.trace", hour);
+        TimeSeriesStoreImpl impl = new TimeSeriesStoreImpl(config);
+        impl.initialize();
+        Map<String, String> tags = Map.of("host", "server1");
+        impl.insert(new DataPoint(now - 3 * hour, "debug.trace", 1.0, tags));
+        impl.insert(new DataPoint(now - 3 * hour, "cpu.usage", 2.0, tags));
+        impl.insert(new DataPoint(now, "debug.trace", 3.0, tags));
+
+        assertEquals(1, impl.query("debug.trace", now - 4 * hour, now + 1, tags).size());
+        impl.runCleanupNow();
+        assertEquals(2, impl.pointCount());
+        assertEquals(1, impl.query("cpu.usage", now - 4 * hour, now, tags).size());
+        impl.shutdown();
+
+        TimeSeriesStoreImpl reopened = new TimeSeriesStoreImpl(config);
+        reopened.initialize();
+        assertEquals(2, reopened.pointCount());
+        assertEquals(3.0, reopened.query("debug.trace", now - 4 * hour, now + 1, tags).get(0).getValue(), 0.0);
+        reopened.shutdown();
+    }
 }
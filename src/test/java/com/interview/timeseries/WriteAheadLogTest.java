@@ -0,0 +1,136 @@
+package com.interview.timeseries;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Crash-recovery tests for the write-ahead log.
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInsertsSurviveCrashWithoutShutdown() throws IOException {
+        StoreConfig config = new StoreConfig().setDataDirectory(folder.getRoot().toPath());
+        long now = System.currentTimeMillis();
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        for (int i = 0; i < 1000; i++) {
+            store.insert(new DataPoint(now + i, "cpu.usage", i, Map.of("host", "server" + (i % 3))));
+        }
+        store.syncWal();
+        store.crash();
+
+        TimeSeriesStoreImpl recovered = new TimeSeriesStoreImpl(config);
+        assertTrue(recovered.initialize());
+        try {
+            assertEquals(1000, recovered.query("cpu.usage", now, now + 1000, null).size());
+            assertEquals(334, recovered.query("cpu.usage", now, now + 1000, Map.of("host", "server0")).size());
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplayAfterShardCountChange() throws IOException {
+        long now = System.currentTimeMillis();
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(
+                new StoreConfig().setDataDirectory(folder.getRoot().toPath()).setShardCount(8));
+        assertTrue(store.initialize());
+        for (int i = 0; i < 1000; i++) {
+            store.insert(new DataPoint(now + i, "cpu.usage", i, Map.of("host", "server" + (i % 10))));
+        }
+        store.syncWal();
+        store.crash();
+
+        // Logs of shards that no longer exist are replayed, then removed by the next checkpoint
+        StoreConfig config = new StoreConfig().setDataDirectory(folder.getRoot().toPath()).setShardCount(2);
+        TimeSeriesStoreImpl recovered = new TimeSeriesStoreImpl(config);
+        assertTrue(recovered.initialize());
+        assertEquals(1000, recovered.query("cpu.usage", now, now + 1000, null).size());
+        assertTrue(recovered.shutdown());
+        assertEquals(0, countWalSegments());
+
+        TimeSeriesStoreImpl restored = new TimeSeriesStoreImpl(config);
+        assertTrue(restored.initialize());
+        try {
+            assertEquals(100, restored.query("cpu.usage", now, now + 1000, Map.of("host", "server3")).size());
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplayStopsAtTornRecord() throws IOException {
+        StoreConfig config = new StoreConfig().setDataDirectory(folder.getRoot().toPath()).setShardCount(1);
+        long now = System.currentTimeMillis();
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        store.insert(new DataPoint(now, "cpu.usage", 1.0, Map.of("host", "server1")));
+        store.insert(new DataPoint(now + 1, "cpu.usage", 2.0, Map.of("host", "server1")));
+        store.crash();
+
+        // Simulate a write cut off mid-record
+        Path segment = lastSegment(folder.getRoot().toPath().resolve("wal").resolve("shard-0"));
+        Files.write(segment, new byte[]{0, 0, 0, 21, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        TimeSeriesStoreImpl recovered = new TimeSeriesStoreImpl(config);
+        assertTrue(recovered.initialize());
+        try {
+            List<DataPoint> results = recovered.query("cpu.usage", now, now + 2, null);
+            assertEquals(2, results.size());
+            assertEquals(2.0, results.get(1).getValue(), 0.001);
+        } finally {
+            recovered.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownCheckpointsAndRemovesLog() throws IOException {
+        StoreConfig config = new StoreConfig().setDataDirectory(folder.getRoot().toPath());
+        long now = System.currentTimeMillis();
+
+        TimeSeriesStoreImpl store = new TimeSeriesStoreImpl(config);
+        assertTrue(store.initialize());
+        store.insert(new DataPoint(now, "cpu.usage", 1.0, Map.of("host", "server1")));
+        assertTrue(store.shutdown());
+
+        assertEquals(0, countWalSegments());
+        TimeSeriesStoreImpl restored = new TimeSeriesStoreImpl(config);
+        assertTrue(restored.initialize());
+        try {
+            assertEquals(1, restored.query("cpu.usage", now, now + 1, null).size());
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    private long countWalSegments() throws IOException {
+        try (Stream<Path> files = Files.walk(folder.getRoot().toPath().resolve("wal"))) {
+            return files.filter(path -> path.toString().endsWith(".wal")).count();
+        }
+    }
+
+    private static Path lastSegment(Path walDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(walDirectory)) {
+            List<Path> segments = files.sorted().collect(Collectors.toList());
+            return segments.get(segments.size() - 1);
+        }
+    }
+}
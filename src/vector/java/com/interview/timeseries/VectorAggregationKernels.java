@@ -0,0 +1,61 @@
+package com.interview.timeseries;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Aggregation kernels on the incubating Vector API, one SIMD lane per value. Built only with
+ * {@code -Pvector} on JDK 17 or later, and selected at runtime with {@code -Dtimeseries.vectorKernels=true}
+ * and {@code --add-modules jdk.incubator.vector}.
+ *
+ * Min and max compare and blend rather than using the lanewise min/max, which would return a NaN found
+ * anywhere in the run; as with the scalar kernels, NaN is only returned if the first value is NaN.
+ */
+final class VectorAggregationKernels extends AggregationKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    double sum(double[] values, int from, int to) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            acc = acc.add(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) sum += values[i];
+        return sum;
+    }
+
+    @Override
+    double min(double[] values, int from, int to) {
+        if (to - from < SPECIES.length()) return super.min(values, from, to);
+        double min = values[from];
+        // Lanes start at the first value; v < acc is false for NaN on either side, so NaNs are never taken
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, min);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, values, i);
+            acc = acc.blend(v, v.lt(acc));
+        }
+        for (double lane : acc.toArray()) min = lane < min ? lane : min;
+        for (; i < to; i++) min = values[i] < min ? values[i] : min;
+        return min;
+    }
+
+    @Override
+    double max(double[] values, int from, int to) {
+        if (to - from < SPECIES.length()) return super.max(values, from, to);
+        double max = values[from];
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, max);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, values, i);
+            acc = acc.blend(v, v.compare(VectorOperators.GT, acc));
+        }
+        for (double lane : acc.toArray()) max = lane > max ? lane : max;
+        for (; i < to; i++) max = values[i] > max ? values[i] : max;
+        return max;
+    }
+}